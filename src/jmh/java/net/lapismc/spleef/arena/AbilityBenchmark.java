@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of a 20 player game, either every player breaks one block or every player uses an area ability
+ * The ability tick includes the end of tick flush, which is capped at Abilities.BlocksPerBreak blocks per player,
+ * so it should score close to the break tick. The floors are regenerated before each tick so every area is intact
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class AbilityBenchmark {
+
+    private static final int PLAYERS = 20;
+
+    @Param({"excavate", "blast", "crater"})
+    public ToolAbility ability;
+
+    private BenchmarkEnvironment environment;
+    private ArenaListener listener;
+    private Floor floor;
+    private final Block[] targets = new Block[PLAYERS];
+    private final Player[] players = new Player[PLAYERS];
+    private final UUID[] uuids = new UUID[PLAYERS];
+
+    @Setup
+    public void setup() {
+        //Without a cooldown every player can use their ability on every tick
+        environment = new BenchmarkEnvironment(2, 10000, PLAYERS, Map.of("Abilities.Cooldown", 0));
+        listener = ArenaFixtures.createListener(environment.plugin);
+        ArenaFixtures.setGameState(environment.arena, GameState.playing);
+        ArenaFixtures.setAllAlive(environment.arena);
+        floor = environment.arena.getFloors().get(0);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < PLAYERS; i++) {
+            targets[i] = floor.getBlock(random.nextInt(floor.getSize()));
+            players[i] = environment.players.get(i).getPlayer();
+            uuids[i] = players[i].getUniqueId();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        for (Floor f : environment.arena.getFloors()) {
+            f.regenerateFloor();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public void breakTick() {
+        for (int i = 0; i < PLAYERS; i++) {
+            listener.onBlockBreak(new BlockBreakEvent(targets[i], players[i]));
+        }
+        environment.server.getScheduler().tick();
+    }
+
+    @Benchmark
+    public void abilityTick() {
+        for (int i = 0; i < PLAYERS; i++) {
+            Block target = targets[i];
+            environment.arena.useAbility(uuids[i], ability, floor, target.getX(), target.getZ());
+        }
+        environment.server.getScheduler().tick();
+    }
+
+}
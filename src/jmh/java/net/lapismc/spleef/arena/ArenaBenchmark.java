@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arena wide operations that depend on the number of floors
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ArenaBenchmark {
+
+    @Param({"1", "5", "20"})
+    public int floors;
+
+    private BenchmarkEnvironment environment;
+
+    @Setup
+    public void setup() {
+        environment = new BenchmarkEnvironment(floors, 1000, 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public Arena sortFloors() {
+        environment.arena.sortFloors();
+        return environment.arena;
+    }
+
+    @Benchmark
+    public int lowestFloorMinY() {
+        //startGame checks the elimination height against the lowest floor
+        return environment.arena.getFloors().get(floors - 1).getMinY();
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.fixtures.FakePlayer;
+import net.lapismc.spleef.fixtures.FakePlugin;
+import net.lapismc.spleef.fixtures.FakeServer;
+import net.lapismc.spleef.fixtures.FakeWorld;
+import org.bukkit.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fake server with the plugin enabled and one arena, shared by the benchmarks that need the whole plugin
+ */
+class BenchmarkEnvironment {
+
+    final FakeServer server;
+    final FakeWorld world;
+    final LapisSpleef plugin;
+    final Arena arena;
+    final List<FakePlayer> players = new ArrayList<>();
+    final List<SpleefPlayer> members = new ArrayList<>();
+
+    /**
+     * Start the server and build an arena with players in it
+     *
+     * @param floors         The number of floors in the arena
+     * @param blocksPerFloor The number of blocks in each floor
+     * @param playerCount    The number of players in the arena, they stand on the top floor
+     */
+    BenchmarkEnvironment(int floors, int blocksPerFloor, int playerCount) {
+        this(floors, blocksPerFloor, playerCount, Map.of());
+    }
+
+    /**
+     * Start the server with some config values changed and build an arena with players in it
+     *
+     * @param floors         The number of floors in the arena
+     * @param blocksPerFloor The number of blocks in each floor
+     * @param playerCount    The number of players in the arena, they stand on the top floor
+     * @param overrides      Config values to use instead of the defaults, keyed by path
+     */
+    BenchmarkEnvironment(int floors, int blocksPerFloor, int playerCount, Map<String, Object> overrides) {
+        server = FakeServer.start();
+        world = server.createWorld("world");
+        File dataFolder;
+        try {
+            dataFolder = Files.createTempDirectory("lapisspleef-jmh").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        plugin = FakePlugin.create(dataFolder, overrides);
+        arena = ArenaFixtures.build(plugin, world, "arena", 0, 0, floors, blocksPerFloor);
+        List<Location> spawns = arena.getFloors().get(0).generateSpawnPoints(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            FakePlayer player = server.addPlayer("Player" + i, world, spawns.get(i));
+            players.add(player);
+            SpleefPlayer member = plugin.getSpleefPlayer(player.getUniqueId());
+            members.add(member);
+            ArenaFixtures.addMember(arena, member);
+        }
+        //Let the player cache and stats finish loading
+        server.getScheduler().tick();
+    }
+
+    /**
+     * Shut the plugin down so that background threads don't outlive the benchmark
+     */
+    void close() {
+        plugin.onDisable();
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A block break by an arena player, from the listener through floor lookup to the block being broken
+ * The scheduler is ticked every 64 breaks so that break effects are flushed at a realistic rate
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class BreakRoutingBenchmark {
+
+    private static final int PROBES = 1024;
+    private static final int BREAKS_PER_TICK = 64;
+
+    @Param({"1", "5", "20"})
+    public int floors;
+
+    @Param({"1000", "10000", "50000"})
+    public int blocksPerFloor;
+
+    @Param({"2", "16", "64"})
+    public int players;
+
+    private BenchmarkEnvironment environment;
+    private ArenaListener listener;
+    private final Block[] blocks = new Block[PROBES];
+    private final Player[] breakers = new Player[PROBES];
+    private int index;
+
+    @Setup
+    public void setup() {
+        environment = new BenchmarkEnvironment(floors, blocksPerFloor, players);
+        listener = ArenaFixtures.createListener(environment.plugin);
+        ArenaFixtures.setGameState(environment.arena, GameState.playing);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < PROBES; i++) {
+            Floor floor = environment.arena.getFloors().get(random.nextInt(floors));
+            blocks[i] = floor.getBlock(random.nextInt(floor.getSize()));
+            breakers[i] = environment.players.get(random.nextInt(players)).getPlayer();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public boolean breakFloorBlock() {
+        int i = index++;
+        BlockBreakEvent event = new BlockBreakEvent(blocks[i & (PROBES - 1)], breakers[i & (PROBES - 1)]);
+        listener.onBlockBreak(event);
+        if ((i & (BREAKS_PER_TICK - 1)) == 0)
+            environment.server.getScheduler().tick();
+        return event.isCancelled();
+    }
+
+}
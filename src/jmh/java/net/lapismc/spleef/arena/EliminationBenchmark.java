@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of checking one player move against the elimination height
+ * Each invocation is a move by the next player in the arena, so the score is the cost per player per move
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class EliminationBenchmark {
+
+    @Param({"2", "16", "64"})
+    public int players;
+
+    private BenchmarkEnvironment environment;
+    private EliminationDetector detector;
+    private Player[] bukkitPlayers;
+    private Location[] from;
+    private Location[] sameBlock;
+    private Location[] stepDown;
+    private Location[] fallen;
+    private int index;
+
+    @Setup
+    public void setup() {
+        environment = new BenchmarkEnvironment(1, 10000, players);
+        detector = environment.plugin.getArenaManager().getEliminationDetector();
+        ArenaFixtures.setGameState(environment.arena, GameState.playing);
+        bukkitPlayers = new Player[players];
+        from = new Location[players];
+        sameBlock = new Location[players];
+        stepDown = new Location[players];
+        fallen = new Location[players];
+        for (int i = 0; i < players; i++) {
+            bukkitPlayers[i] = environment.players.get(i).getPlayer();
+            from[i] = environment.players.get(i).getLocation();
+            sameBlock[i] = from[i].clone().add(.1, 0, .1);
+            stepDown[i] = from[i].clone().add(0, -1, 0);
+            fallen[i] = from[i].clone();
+            fallen[i].setY(environment.arena.getEliminationHeight() - 1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public PlayerMoveEvent moveWithinBlock() {
+        return move(sameBlock);
+    }
+
+    @Benchmark
+    public PlayerMoveEvent moveAcrossBlockY() {
+        return move(stepDown);
+    }
+
+    @Benchmark
+    public PlayerMoveEvent fallBelowEliminationHeight() {
+        //Eliminations are queued until the end of the tick, the scheduler isn't ticked so players stay queued
+        return move(fallen);
+    }
+
+    private PlayerMoveEvent move(Location[] to) {
+        int i = index++ % players;
+        PlayerMoveEvent event = new PlayerMoveEvent(bukkitPlayers[i], from[i], to[i]);
+        detector.onPlayerMove(event);
+        return event;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.fixtures.FakeServer;
+import net.lapismc.spleef.fixtures.FakeWorld;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Floor lookups at realistic floor sizes
+ * Probes are a fixed random mix of blocks on the floor, blocks just above it and blocks outside its bounding box
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class FloorBenchmark {
+
+    private static final int PROBES = 1024;
+
+    @Param({"1000", "10000", "50000"})
+    public int blocks;
+
+    private Floor floor;
+    private final int[][] hits = new int[PROBES][];
+    private final int[][] misses = new int[PROBES][];
+    private final Block[] hitBlocks = new Block[PROBES];
+    private int index;
+
+    @Setup
+    public void setup() {
+        FakeWorld world = FakeServer.start().createWorld("world");
+        long[] positions = world.fillSquare(0, 64, 0, blocks, Material.SNOW_BLOCK);
+        floor = new Floor(null, world.getWorld(), positions, Material.SNOW_BLOCK);
+        SplittableRandom random = new SplittableRandom(42);
+        int side = (int) Math.ceil(Math.sqrt(blocks));
+        for (int i = 0; i < PROBES; i++) {
+            int x = random.nextInt(side) - side / 2;
+            int z = random.nextInt(side) - side / 2;
+            hits[i] = new int[]{x, 64, z};
+            hitBlocks[i] = world.getBlock(x, 64, z);
+            //Half of the misses are inside the bounding box, one block above the floor, the rest are far outside it
+            misses[i] = i % 2 == 0 ? new int[]{x, 65, z} : new int[]{x + side * 4, 64, z};
+        }
+    }
+
+    @Benchmark
+    public boolean isBlockOnFloorHit() {
+        int[] probe = hits[index++ & (PROBES - 1)];
+        return floor.isBlockOnFloor(probe[0], probe[1], probe[2]);
+    }
+
+    @Benchmark
+    public boolean isBlockOnFloorMiss() {
+        int[] probe = misses[index++ & (PROBES - 1)];
+        return floor.isBlockOnFloor(probe[0], probe[1], probe[2]);
+    }
+
+    @Benchmark
+    public boolean isBlockOnFloorBlock() {
+        return floor.isBlockOnFloor(hitBlocks[index++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public int getYLevel() {
+        return floor.getYLevel();
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing a players inventory when they join an arena, measured on the calling thread
+ * This is the snapshot encoding, the journal append and its fsync happen on the journal thread so they are not part of the score
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class InventorySaveBenchmark {
+
+    @Param({"9", "41"})
+    public int filledSlots;
+
+    private BenchmarkEnvironment environment;
+    private SpleefPlayer player;
+
+    @Setup
+    public void setup() {
+        environment = new BenchmarkEnvironment(1, 1000, 1);
+        environment.players.get(0).fillInventory(filledSlots);
+        player = environment.members.get(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public CompletableFuture<Void> storeInventory() {
+        return player.storeInventory();
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of a 20 player game where every player breaks a block, with and without the game being recorded
+ * Recording only copies each break into the replay ring buffer, so both should score the same and the gc profiler
+ * should show the same gc.alloc.rate.norm for both, apart from the fake players proxy calls when positions are sampled
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ReplayBenchmark {
+
+    private static final int PLAYERS = 20;
+
+    @Param({"false", "true"})
+    public boolean recording;
+
+    private BenchmarkEnvironment environment;
+    private Floor floor;
+    private final int[] ordinals = new int[1024];
+    private int next;
+
+    @Setup
+    public void setup() {
+        environment = new BenchmarkEnvironment(2, 10000, PLAYERS, Map.of("Replays.Enabled", recording));
+        ArenaFixtures.setGameState(environment.arena, GameState.playing);
+        if (recording)
+            ArenaFixtures.startRecording(environment.arena);
+        floor = environment.arena.getFloors().get(0);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = random.nextInt(floor.getSize());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public void breakTick() {
+        for (int i = 0; i < PLAYERS; i++) {
+            floor.breakBlock(ordinals[next++ & (ordinals.length - 1)]);
+        }
+        environment.server.getScheduler().tick();
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.fixtures.FakeServer;
+import net.lapismc.spleef.fixtures.FakeWorld;
+import net.lapismc.spleef.util.BlockPositionSet;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spawn point generation, both the cached path used when a game starts and the planning done while players wait
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SpawnPointBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int blocks;
+
+    @Param({"2", "16", "64"})
+    public int players;
+
+    private Floor floor;
+    private BlockPositionSet positions;
+
+    @Setup
+    public void setup() {
+        FakeWorld world = FakeServer.start().createWorld("world");
+        long[] packed = world.fillSquare(0, 64, 0, blocks, Material.SNOW_BLOCK);
+        floor = new Floor(null, world.getWorld(), packed, Material.SNOW_BLOCK);
+        positions = new BlockPositionSet();
+        for (long position : packed)
+            positions.add(position);
+        floor.planSpawnPoints(players);
+    }
+
+    @Benchmark
+    public List<Location> generateSpawnPoints() {
+        return floor.generateSpawnPoints(players);
+    }
+
+    @Benchmark
+    public int[] planSpawnPointsUncached() {
+        return SpawnPlanner.plan(positions, players);
+    }
+
+}
@@ -17,33 +17,234 @@
 package net.lapismc.spleef;
 
 import net.lapismc.lapiscore.LapisCorePlugin;
+import net.lapismc.spleef.arena.AreaBreaker;
+import net.lapismc.spleef.arena.Arena;
+import net.lapismc.spleef.arena.ArenaInstancePool;
+import net.lapismc.spleef.arena.ArenaManager;
+import net.lapismc.spleef.arena.BreakEffects;
+import net.lapismc.spleef.arena.DecayEngine;
+import net.lapismc.spleef.arena.GameState;
+import net.lapismc.spleef.arena.MatchmakingService;
+import net.lapismc.spleef.arena.RegenerationScheduler;
 import net.lapismc.spleef.arena.SpleefPlayer;
+import net.lapismc.spleef.arena.SpleefPlayerCache;
+import net.lapismc.spleef.metrics.MetricsExporter;
+import net.lapismc.spleef.metrics.MetricsRegistry;
+import net.lapismc.spleef.replay.MatchRecorder;
+import net.lapismc.spleef.stats.StatsManager;
+import net.lapismc.spleef.util.AsyncFileWriter;
+import net.lapismc.spleef.util.CountdownService;
+import net.lapismc.spleef.util.GameLoop;
+import net.lapismc.spleef.util.InventoryJournal;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
 import java.util.UUID;
 
 public final class LapisSpleef extends LapisCorePlugin {
 
-    Map<UUID, SpleefPlayer> spleefPlayers = new HashMap<>();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private AsyncFileWriter fileWriter;
+    private InventoryJournal inventoryJournal;
+    private GameLoop gameLoop;
+    private CountdownService countdownService;
+    private SpleefPlayerCache spleefPlayers;
+    private StatsManager statsManager;
+    private ArenaManager arenaManager;
+    private RegenerationScheduler regenerationScheduler;
+    private BreakEffects breakEffects;
+    private AreaBreaker areaBreaker;
+    private DecayEngine decayEngine;
+    private MatchRecorder matchRecorder;
+    private ArenaInstancePool instancePool;
+    private MatchmakingService matchmaking;
 
     @Override
     public void onEnable() {
         // Plugin startup logic
+        saveDefaultConfig();
+        initComponents();
+        getCommand("spleef").setExecutor(new SpleefCommand(this));
+    }
 
+    /**
+     * Create every component of the plugin and load the arenas
+     * This is all of onEnable apart from the parts that need a real server, so the test fixtures can call it too
+     */
+    void initComponents() {
+        fileWriter = new AsyncFileWriter(getLogger());
+        inventoryJournal = new InventoryJournal(getLogger(), new File(getDataFolder(), "PlayerData" + File.separator + "inventories.journal"));
+        new MetricsExporter(this, metrics);
+        gameLoop = new GameLoop(this);
+        countdownService = new CountdownService(this);
+        arenaManager = new ArenaManager(this);
+        spleefPlayers = new SpleefPlayerCache(this);
+        statsManager = new StatsManager(this);
+        regenerationScheduler = new RegenerationScheduler(this);
+        breakEffects = new BreakEffects(this);
+        areaBreaker = new AreaBreaker(this);
+        decayEngine = new DecayEngine(this);
+        matchRecorder = new MatchRecorder(this);
+        instancePool = new ArenaInstancePool(this);
+        matchmaking = new MatchmakingService(this);
+        arenaManager.loadArenas();
     }
 
     @Override
     public void onDisable() {
         // Plugin shutdown logic
-
+        //Arenas that are mid game are put back now, their holes would otherwise stay in the world
+        if (arenaManager != null) {
+            for (Arena arena : arenaManager.getArenas()) {
+                GameState state = arena.getGameState();
+                if (arena.getTemplate() != null || (state != GameState.waiting && state != GameState.disabled))
+                    arena.restoreFloorsNow();
+            }
+        }
+        //Make sure all player data is on disk before the server stops
+        if (fileWriter != null)
+            fileWriter.shutdown();
+        if (inventoryJournal != null)
+            inventoryJournal.shutdown();
+        if (matchRecorder != null)
+            matchRecorder.shutdown();
+        if (statsManager != null)
+            statsManager.shutdown();
     }
 
+    /**
+     * Get the SpleefPlayer for a UUID, players are normally loaded asynchronously when they log in
+     *
+     * @param uuid The UUID of the player
+     * @return the SpleefPlayer for this UUID
+     */
     public SpleefPlayer getSpleefPlayer(UUID uuid) {
-        if (!spleefPlayers.containsKey(uuid)) {
-            spleefPlayers.put(uuid, new SpleefPlayer(this, uuid));
-        }
-        return spleefPlayers.get(uuid);
+        return spleefPlayers.getPlayer(uuid);
+    }
+
+    /**
+     * Get the metrics registry, this holds the counters and latency histograms recorded by the plugin
+     *
+     * @return the metrics registry
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the file writer, this saves data files on a background thread
+     *
+     * @return the async file writer
+     */
+    public AsyncFileWriter getFileWriter() {
+        return fileWriter;
+    }
+
+    /**
+     * Get the inventory journal, this keeps the inventories of players in arenas safe on disk
+     *
+     * @return the inventory journal
+     */
+    public InventoryJournal getInventoryJournal() {
+        return inventoryJournal;
+    }
+
+    /**
+     * Get the stats manager, this stores player statistics and answers leaderboard queries
+     *
+     * @return the stats manager
+     */
+    public StatsManager getStatsManager() {
+        return statsManager;
+    }
+
+    /**
+     * Get the game loop, this runs every timed arena state transition from a single timing wheel
+     *
+     * @return the game loop
+     */
+    public GameLoop getGameLoop() {
+        return gameLoop;
+    }
+
+    /**
+     * Get the countdown service, this refreshes every visible countdown boss bar from one game loop timer
+     *
+     * @return the countdown service
+     */
+    public CountdownService getCountdownService() {
+        return countdownService;
+    }
+
+    /**
+     * Get the arena manager, this tracks every arena and which players are in them
+     *
+     * @return the arena manager
+     */
+    public ArenaManager getArenaManager() {
+        return arenaManager;
+    }
+
+    /**
+     * Get the regeneration scheduler, this restores arena floors over multiple ticks
+     *
+     * @return the regeneration scheduler
+     */
+    public RegenerationScheduler getRegenerationScheduler() {
+        return regenerationScheduler;
+    }
+
+    /**
+     * Get the break effects pipeline, this plays grouped particles and sounds for broken floor blocks
+     *
+     * @return the break effects pipeline
+     */
+    public BreakEffects getBreakEffects() {
+        return breakEffects;
+    }
+
+    /**
+     * Get the area breaker, this breaks the floor areas hit by power-up tools in batches
+     *
+     * @return the area breaker
+     */
+    public AreaBreaker getAreaBreaker() {
+        return areaBreaker;
+    }
+
+    /**
+     * Get the decay engine, this breaks the blocks players stand on in arenas using the decay game mode
+     *
+     * @return the decay engine
+     */
+    public DecayEngine getDecayEngine() {
+        return decayEngine;
+    }
+
+    /**
+     * Get the match recorder, this writes a replay of every game for staff to review
+     *
+     * @return the match recorder
+     */
+    public MatchRecorder getMatchRecorder() {
+        return matchRecorder;
+    }
+
+    /**
+     * Get the instance pool, this creates and reuses copies of arenas for extra simultaneous games
+     *
+     * @return the arena instance pool
+     */
+    public ArenaInstancePool getInstancePool() {
+        return instancePool;
+    }
+
+    /**
+     * Get the matchmaking service, this puts queued players into any arena with room
+     *
+     * @return the matchmaking service
+     */
+    public MatchmakingService getMatchmaking() {
+        return matchmaking;
     }
 
 }
@@ -0,0 +1,318 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef;
+
+import net.lapismc.spleef.arena.MatchmakingService;
+import net.lapismc.spleef.metrics.Counter;
+import net.lapismc.spleef.metrics.LatencyHistogram;
+import net.lapismc.spleef.metrics.Metric;
+import net.lapismc.spleef.replay.MatchReplay;
+import net.lapismc.spleef.stats.LeaderboardManager;
+import net.lapismc.spleef.stats.LeaderboardType;
+import net.lapismc.spleef.stats.PlayerStats;
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The /spleef command
+ */
+public class SpleefCommand implements CommandExecutor {
+
+    //The number of players shown on each page of a leaderboard
+    private static final int PAGE_SIZE = 10;
+
+    private final LapisSpleef plugin;
+
+    /**
+     * Create the command executor
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public SpleefCommand(LapisSpleef plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) {
+            sender.sendMessage(plugin.config.getMessage("Command.Usage"));
+            return true;
+        }
+        switch (args[0].toLowerCase()) {
+            case "top":
+                top(sender, args);
+                break;
+            case "join":
+                join(sender);
+                break;
+            case "leave":
+                leave(sender);
+                break;
+            case "queue":
+                queue(sender);
+                break;
+            case "metrics":
+                metrics(sender);
+                break;
+            case "replay":
+                replay(sender, args);
+                break;
+            default:
+                sender.sendMessage(plugin.config.getMessage("Command.Usage"));
+        }
+        return true;
+    }
+
+    /**
+     * Add the sender to the matchmaking queue
+     * Usage: /spleef join
+     */
+    private void join(CommandSender sender) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(plugin.config.getMessage("Command.PlayerOnly"));
+            return;
+        }
+        Player player = (Player) sender;
+        if (plugin.getArenaManager().getPlayerArena(player.getUniqueId()) != null) {
+            sender.sendMessage(plugin.config.getMessage("Matchmaking.InArena"));
+        } else if (plugin.getSpleefPlayer(player.getUniqueId()).hasStoredInventory()) {
+            sender.sendMessage(plugin.config.getMessage("Lobby.InventoryNotRestored"));
+        } else if (plugin.getMatchmaking().enqueue(player.getUniqueId())) {
+            sender.sendMessage(plugin.config.getMessage("Matchmaking.Queued"));
+        } else {
+            sender.sendMessage(plugin.config.getMessage("Matchmaking.AlreadyQueued"));
+        }
+    }
+
+    /**
+     * Remove the sender from the matchmaking queue
+     * Usage: /spleef leave
+     */
+    private void leave(CommandSender sender) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(plugin.config.getMessage("Command.PlayerOnly"));
+            return;
+        }
+        if (plugin.getMatchmaking().dequeue(((Player) sender).getUniqueId())) {
+            sender.sendMessage(plugin.config.getMessage("Matchmaking.Left"));
+        } else {
+            sender.sendMessage(plugin.config.getMessage("Matchmaking.NotQueued"));
+        }
+    }
+
+    /**
+     * Show the size of the matchmaking queue and how long recent players waited in it
+     * Usage: /spleef queue
+     */
+    private void queue(CommandSender sender) {
+        MatchmakingService matchmaking = plugin.getMatchmaking();
+        sender.sendMessage(plugin.config.getMessage("Matchmaking.Status")
+                .replace("{Queued}", String.valueOf(matchmaking.getQueueSize()))
+                .replace("{P50}", formatWait(matchmaking.getWaitPercentile(50)))
+                .replace("{P90}", formatWait(matchmaking.getWaitPercentile(90)))
+                .replace("{P99}", formatWait(matchmaking.getWaitPercentile(99))));
+    }
+
+    private String formatWait(long millis) {
+        return millis < 0 ? "-" : String.format("%.1fs", millis / 1000d);
+    }
+
+    /**
+     * Show every metric, histograms show their count and latency percentiles in microseconds
+     * Usage: /spleef metrics
+     */
+    private void metrics(CommandSender sender) {
+        if (!sender.hasPermission("lapisspleef.metrics")) {
+            sender.sendMessage(plugin.config.getMessage("Command.NoPermission"));
+            return;
+        }
+        sender.sendMessage(plugin.config.getMessage("Metrics.Header"));
+        for (Metric metric : plugin.getMetrics().getMetrics()) {
+            String name = metric.getArena() == null ? metric.getName() : metric.getName() + " (" + metric.getArena() + ")";
+            if (metric instanceof LatencyHistogram) {
+                LatencyHistogram histogram = (LatencyHistogram) metric;
+                if (histogram.getCount() == 0)
+                    continue;
+                sender.sendMessage(plugin.config.getMessage("Metrics.Histogram").replace("{Name}", name)
+                        .replace("{Count}", String.valueOf(histogram.getCount()))
+                        .replace("{P50}", formatMicros(histogram.getPercentile(50)))
+                        .replace("{P99}", formatMicros(histogram.getPercentile(99)))
+                        .replace("{Max}", formatMicros(histogram.getMax())));
+            } else if (metric instanceof Counter) {
+                sender.sendMessage(plugin.config.getMessage("Metrics.Counter").replace("{Name}", name)
+                        .replace("{Value}", String.valueOf(((Counter) metric).get())));
+            }
+        }
+    }
+
+    private String formatMicros(long nanos) {
+        return String.format("%.1fus", nanos / 1000d);
+    }
+
+    /**
+     * List the most recent replays, or show the floors and players of a replay at a point in the game
+     * Replays are read off the main thread, the time defaults to the end of the game
+     * Usage: /spleef replay [replay] [seconds]
+     */
+    private void replay(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("lapisspleef.replay")) {
+            sender.sendMessage(plugin.config.getMessage("Command.NoPermission"));
+            return;
+        }
+        File folder = plugin.getMatchRecorder().getFolder();
+        if (args.length < 2) {
+            File[] files = folder.listFiles((dir, name) -> name.endsWith(".replay"));
+            if (files == null || files.length == 0) {
+                sender.sendMessage(plugin.config.getMessage("Replay.None"));
+                return;
+            }
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < Math.min(PAGE_SIZE, files.length); i++) {
+                String name = files[i].getName();
+                names.add(name.substring(0, name.length() - ".replay".length()));
+            }
+            sender.sendMessage(plugin.config.getMessage("Replay.List").replace("{Replays}", String.join(", ", names)));
+            return;
+        }
+        String name = args[1];
+        File file = new File(folder, name + ".replay");
+        if (name.contains("/") || name.contains("\\") || !file.isFile()) {
+            sender.sendMessage(plugin.config.getMessage("Replay.Unknown").replace("{Replay}", name));
+            return;
+        }
+        int tick = Integer.MAX_VALUE;
+        if (args.length > 2) {
+            try {
+                tick = (int) Math.max(0, Double.parseDouble(args[2]) * 20);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(plugin.config.getMessage("Command.Usage"));
+                return;
+            }
+        }
+        int requestedTick = tick;
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<String> lines = new ArrayList<>();
+            try {
+                describeReplay(MatchReplay.read(file), requestedTick, lines);
+            } catch (IOException | RuntimeException e) {
+                lines.add(plugin.config.getMessage("Replay.Unreadable").replace("{Replay}", name));
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                for (String line : lines)
+                    sender.sendMessage(line);
+            });
+        });
+    }
+
+    private void describeReplay(MatchReplay replay, int requestedTick, List<String> lines) {
+        int tick = Math.min(requestedTick, replay.getLength());
+        lines.add(plugin.config.getMessage("Replay.Header").replace("{Arena}", replay.getArenaName())
+                .replace("{Time}", formatTicks(tick)).replace("{Length}", formatTicks(replay.getLength()))
+                .replace("{State}", String.valueOf(replay.getState(tick))));
+        if (!replay.isComplete())
+            lines.add(plugin.config.getMessage("Replay.Incomplete"));
+        if (replay.isMissingEvents())
+            lines.add(plugin.config.getMessage("Replay.MissingEvents"));
+        for (int floor = 0; floor < replay.getFloorCount(); floor++) {
+            int total = replay.getFloorPositions(floor).length;
+            int remaining = total - replay.getBrokenBlocks(floor, tick).cardinality();
+            lines.add(plugin.config.getMessage("Replay.Floor").replace("{Floor}", String.valueOf(floor + 1))
+                    .replace("{Remaining}", String.valueOf(remaining)).replace("{Total}", String.valueOf(total)));
+        }
+        for (int player = 0; player < replay.getPlayerCount(); player++) {
+            int eliminated = replay.getEliminationTick(player);
+            String key;
+            int positionTick = tick;
+            if (eliminated >= 0 && eliminated <= tick) {
+                key = replay.hasLeft(player) ? "Replay.Left" : "Replay.Eliminated";
+                positionTick = eliminated;
+            } else if (player == replay.getWinner() && tick == replay.getLength()) {
+                key = "Replay.Winner";
+            } else {
+                key = "Replay.Alive";
+            }
+            MatchReplay.Position position = replay.getPosition(player, positionTick);
+            lines.add(plugin.config.getMessage(key).replace("{Player}", replay.getPlayerName(player))
+                    .replace("{Time}", formatTicks(positionTick)).replace("{Position}", position == null ? "-"
+                            : String.format("%.2f %.2f %.2f", position.getX(), position.getY(), position.getZ())));
+        }
+    }
+
+    private String formatTicks(int ticks) {
+        return String.format("%.1fs", ticks / 20d);
+    }
+
+    /**
+     * Show a page of a leaderboard, and the senders own rank if they are a player
+     * Usage: /spleef top [wins|winRate|gamesPlayed] [page]
+     */
+    private void top(CommandSender sender, String[] args) {
+        LeaderboardManager leaderboards = plugin.getStatsManager().getLeaderboards();
+        if (!leaderboards.isLoaded()) {
+            sender.sendMessage(plugin.config.getMessage("Leaderboard.Loading"));
+            return;
+        }
+        LeaderboardType type = args.length > 1 ? LeaderboardType.fromName(args[1]) : LeaderboardType.wins;
+        if (type == null) {
+            sender.sendMessage(plugin.config.getMessage("Leaderboard.Unknown").replace("{Leaderboard}", args[1]));
+            return;
+        }
+        int pages = leaderboards.getPageCount(type, PAGE_SIZE);
+        int page = 1;
+        if (args.length > 2) {
+            try {
+                page = Math.max(1, Math.min(pages, Integer.parseInt(args[2])));
+            } catch (NumberFormatException e) {
+                sender.sendMessage(plugin.config.getMessage("Command.Usage"));
+                return;
+            }
+        }
+        sender.sendMessage(plugin.config.getMessage("Leaderboard.Header").replace("{Leaderboard}", type.name())
+                .replace("{Page}", String.valueOf(page)).replace("{Pages}", String.valueOf(pages)));
+        List<PlayerStats> entries = leaderboards.getPage(type, page, PAGE_SIZE);
+        int rank = (page - 1) * PAGE_SIZE;
+        for (PlayerStats stats : entries) {
+            rank++;
+            sender.sendMessage(plugin.config.getMessage("Leaderboard.Entry").replace("{Rank}", String.valueOf(rank))
+                    .replace("{Player}", String.valueOf(stats.getUsername()))
+                    .replace("{Value}", type.format(type.getScore(stats))));
+        }
+        if (sender instanceof Player) {
+            Player player = (Player) sender;
+            int playerRank = leaderboards.getRank(type, player.getUniqueId());
+            if (playerRank < 0) {
+                sender.sendMessage(plugin.config.getMessage("Leaderboard.NotRanked"));
+            } else {
+                PlayerStats stats = leaderboards.getStats(player.getUniqueId());
+                sender.sendMessage(plugin.config.getMessage("Leaderboard.Rank").replace("{Rank}", String.valueOf(playerRank))
+                        .replace("{Value}", type.format(type.getScore(stats))));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.metrics.LatencyHistogram;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Breaks the areas hit by {@link ToolAbility} tools
+ * Areas are collected for a tick and merged per floor, so overlapping abilities only break each block once,
+ * then every floor is broken as one batch at the end of the tick
+ * Each arena can only break a few area blocks per player each tick, so however many abilities are used an arena never
+ * spends more than about one normal block break per player per tick on them, the rest of an area breaks over the next few ticks
+ */
+public class AreaBreaker {
+
+    private final LapisSpleef plugin;
+    //The number of batched area blocks that cost about the same as one block break event, see AbilityBenchmark
+    private final int blocksPerBreak;
+    private final LatencyHistogram flushTimer;
+    //The ordinals waiting to be broken on each floor
+    private final Map<Floor, BitSet> pending = new LinkedHashMap<>();
+    private BukkitTask flushTask;
+
+    /**
+     * Initialize the area breaker, the per player cap is read from Abilities.BlocksPerBreak in the config
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public AreaBreaker(LapisSpleef plugin) {
+        this.plugin = plugin;
+        blocksPerBreak = Math.max(1, plugin.getConfig().getInt("Abilities.BlocksPerBreak", 4));
+        flushTimer = plugin.getMetrics().histogram("spleef_area_break_seconds", "Time spent breaking ability areas each tick");
+    }
+
+    /**
+     * Queue an area of a floor to be broken at the end of the tick
+     *
+     * @param floor  The floor to break
+     * @param x      The X coordinate of the centre of the area
+     * @param z      The Z coordinate of the centre of the area
+     * @param radius The number of blocks the area reaches from its centre
+     * @param round  true to break a circle, false to break a square
+     * @return the number of intact blocks that were added to the batch
+     */
+    public int queue(Floor floor, int x, int z, int radius, boolean round) {
+        BitSet ordinals = pending.computeIfAbsent(floor, f -> new BitSet(f.getSize()));
+        int found = floor.findIntactBlocks(x, z, radius, round, ordinals);
+        if (flushTask == null && !pending.isEmpty())
+            flushTask = Bukkit.getScheduler().runTask(plugin, this::flush);
+        return found;
+    }
+
+    /**
+     * Get the number of floors with blocks waiting to be broken
+     *
+     * @return the number of floors in the batch
+     */
+    public int getPendingFloors() {
+        return pending.size();
+    }
+
+    private void flush() {
+        long start = System.nanoTime();
+        flushTask = null;
+        //The blocks each arena can still break this tick
+        Map<Arena, Integer> budgets = new HashMap<>();
+        Iterator<Map.Entry<Floor, BitSet>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Floor, BitSet> entry = it.next();
+            Floor floor = entry.getKey();
+            Arena arena = floor.getArena();
+            //The game may have ended since the area was queued, the floor might already be regenerating
+            if (arena == null || arena.getGameState() != GameState.playing) {
+                it.remove();
+                continue;
+            }
+            int budget = budgets.computeIfAbsent(arena, a -> Math.max(1, a.getPlayers().size()) * blocksPerBreak);
+            if (budget <= 0)
+                continue;
+            budgets.put(arena, budget - floor.breakBlocks(entry.getValue(), budget));
+            if (entry.getValue().isEmpty())
+                it.remove();
+        }
+        if (!pending.isEmpty())
+            flushTask = Bukkit.getScheduler().runTask(plugin, this::flush);
+        flushTimer.recordSince(start);
+    }
+
+}
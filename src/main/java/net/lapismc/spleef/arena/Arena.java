@@ -18,33 +18,49 @@ package net.lapismc.spleef.arena;
 
 import net.lapismc.lapiscore.utils.LapisItemBuilder;
 import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.metrics.ArenaMetrics;
+import net.lapismc.spleef.replay.MatchRecording;
+import net.lapismc.spleef.stats.PlayerStats;
 import net.lapismc.spleef.util.CountdownManager;
+import net.lapismc.spleef.util.TimingWheel;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.entity.Player;
 import org.bukkit.event.block.BlockBreakEvent;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is used to represent the arena that the spleef game will take place in
  * It handles most of the gameplay logic
  */
-public class Arena implements Listener {
+public class Arena {
 
     private final LapisSpleef plugin;
-    //List of floors in this arena
-    private List<Floor> floors = new ArrayList<>();
+    //Orders floors from the highest Y level to the lowest
+    private static final Comparator<Floor> HIGHEST_FIRST = Comparator.comparingInt(Floor::getYLevel).reversed();
+    //List of floors in this arena, kept sorted from highest to lowest
+    private final List<Floor> floors = new ArrayList<>();
     //The current state of the game in the arena
-    GameState gameState;
+    GameState gameState = GameState.disabled;
     //List of players in arena
     List<SpleefPlayer> players = new ArrayList<>();
+    //The live Player handles of the players in the arena, used for broadcasts
+    private final ArenaAudience audience = new ArenaAudience();
+    //Players who were in the arena when the current game started, used to record stats when it ends
+    private final List<SpleefPlayer> participants = new ArrayList<>();
+    //Players who are still on the floors in the current game
+    private final List<SpleefPlayer> alivePlayers = new ArrayList<>();
     //The name of the arena, must be unique
     private String name;
     //Where players should spawn when sent to the lobby
@@ -55,6 +71,31 @@ public class Arena implements Listener {
     private int eliminationHeight;
     //Countdown manager for displaying boss bars to players
     private final CountdownManager countdownManager;
+    //The arena this one was copied from if it is an instance, otherwise null
+    private Arena template;
+    //The number of players needed before matchmaking will start a game in this arena
+    private int minPlayers;
+    //The most players that matchmaking will put in this arena
+    private int maxPlayers;
+    //Latency histograms and counters labelled with this arenas name
+    private ArenaMetrics metrics;
+    //Locations and floors read from the arena file that are built when the arena is first enabled, null once built
+    private ArenaData pending;
+    //True while the floors are being built
+    private boolean enabling;
+    //Every game loop timer for this arena, cancelled together whenever the arena is reset
+    private final TimingWheel.TimerGroup timers = new TimingWheel.TimerGroup();
+    //The timer that will start the game once the arena has waited long enough, null if no start is scheduled
+    private TimingWheel.Timer startTimer;
+    //The chance that breaking a floor block gives the player a power-up tool
+    private final double powerUpChance;
+    //Nanoseconds a player has to wait between abilities, and when each player can next use one
+    private final long abilityCooldown;
+    private final Map<UUID, Long> abilityCooldowns = new HashMap<>();
+    //True if the block under each player crumbles shortly after they stand on it
+    private boolean decay;
+    //The replay recording of the current game, null when no game is being recorded
+    private MatchRecording recording;
 
     /**
      * Initialize an arena
@@ -65,8 +106,13 @@ public class Arena implements Listener {
     public Arena(LapisSpleef plugin, String name) {
         this.plugin = plugin;
         this.name = name;
-        Bukkit.getPluginManager().registerEvents(this, plugin);
         countdownManager = new CountdownManager(plugin);
+        countdownManager.setAudience(audience);
+        metrics = new ArenaMetrics(plugin.getMetrics(), name);
+        minPlayers = plugin.getConfig().getInt("Matchmaking.MinPlayers", 2);
+        maxPlayers = plugin.getConfig().getInt("Matchmaking.MaxPlayers", 16);
+        powerUpChance = plugin.getConfig().getDouble("Abilities.PowerUpChance", 0.01);
+        abilityCooldown = TimeUnit.MILLISECONDS.toNanos(plugin.getConfig().getLong("Abilities.Cooldown", 500));
     }
 
     /**
@@ -77,44 +123,109 @@ public class Arena implements Listener {
      * Start a count-down for game start
      */
     public void startGame() {
+        long start = System.nanoTime();
         //TODO: Implement below comments
+        cancelStart();
         gameState = GameState.starting;
-        //Sort the floors before we try to grab the highest
-        sortFloors();
-        //Get the spawn points from the highest floor
-        Queue<Location> spawnPoints = new PriorityQueue<>(floors.get(0).generateSpawnPoints(players.size()));
-        for (SpleefPlayer player : players) {
+        participants.clear();
+        participants.addAll(players);
+        alivePlayers.clear();
+        alivePlayers.addAll(players);
+        //Floors are kept sorted, so the highest floor is always first
+        if (eliminationHeight > floors.get(floors.size() - 1).getMinY())
+            plugin.getLogger().warning("The elimination height of arena " + name + " is above its lowest floor");
+        //Get the spawn points from the highest floor, these are normally planned while players wait in the lobby
+        List<Location> spawnPoints = floors.get(0).generateSpawnPoints(players.size());
+        for (int i = 0; i < players.size(); i++) {
+            SpleefPlayer player = players.get(i);
             //Teleport into game arena
-            //Evenly distribute the players by spreading them along the list of blocks evenly
-            player.teleport(spawnPoints.poll());
-            //Give players the tools they need
-            player.getBukkitPlayer().getInventory().addItem(new LapisItemBuilder(Material.IRON_SHOVEL)
-                    .setName(ChatColor.AQUA + "The Shovel of Destiny")
-                    .addLore("This shovel will bring you:", "Fun", "Pain", "Falling").build());
+            //Evenly distribute the players over the area of the floor
+            player.teleport(spawnPoints.get(i));
+            giveLoadout(player);
         }
+        recording = plugin.getMatchRecorder().start(this);
+        if (recording != null)
+            recording.stateChanged(gameState);
         //Start a 3-second count-down so that players can see where they are and get ready before block breaks are enabled
-        countdownManager.addPlayers(players);
         countdownManager.startCountdown(1000 * 3);
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+        plugin.getGameLoop().schedule(timers, 20 * 3, () -> {
             gameState = GameState.playing;
+            if (recording != null)
+                recording.stateChanged(gameState);
+            if (decay)
+                plugin.getDecayEngine().start(this);
             sendTitle(plugin.config.getMessage("Game.Begin"), "");
-        }, 20 * 3);
+            //Players may have left during the count-down
+            checkForWinner();
+        });
+        metrics.getGameStart().recordSince(start);
+    }
+
+    /**
+     * End the current game and record the results in every participants stats
+     * The arena stays in the ended state while its floors are regenerated, once they are fully restored
+     * the arena moves back to waiting and its players are sent to the lobby
+     *
+     * @param winner The player who won the game, or null if there was no winner
+     */
+    public void endGame(SpleefPlayer winner) {
+        //A game can end before it has finished starting, its pending transitions must not run
+        cancelTimers();
+        abilityCooldowns.clear();
+        plugin.getDecayEngine().stop(this);
+        gameState = GameState.ended;
+        if (recording != null) {
+            recording.end(winner);
+            recording = null;
+        }
+        List<PlayerStats> results = new ArrayList<>();
+        for (SpleefPlayer player : participants) {
+            boolean won = player.equals(winner);
+            results.add(new PlayerStats(player.getUniqueId(), player.getName(), 1, won ? 1 : 0, won ? 0 : 1, 0));
+        }
+        participants.clear();
+        alivePlayers.clear();
+        plugin.getStatsManager().recordGame(results);
+        countdownManager.setVisible(false);
+        plugin.getRegenerationScheduler().regenerate(this, () -> {
+            gameState = GameState.waiting;
+            for (SpleefPlayer player : players) {
+                sendToLobby(player);
+            }
+            releaseIfIdle();
+        });
     }
 
     /**
      * Add a player to the arena
      * This method handles sending them to spectator areas or the lobby depending on game state as well as storing their inventories
+     * Players with an inventory from an earlier game that couldn't be given back are refused, storing their current
+     * inventory would replace the only copy of the old one
      *
      * @param player The player being added
+     * @return false if the player wasn't added
      */
-    public void addPlayer(SpleefPlayer player) {
+    public boolean addPlayer(SpleefPlayer player) {
         //Don't add players if the arena is disabled
         if (gameState.equals(GameState.disabled))
-            return;
+            return false;
+        if (player.hasStoredInventory()) {
+            player.getBukkitPlayer().sendMessage(plugin.config.getMessage("Lobby.InventoryNotRestored"));
+            return false;
+        }
         //Add the player to the arenas list of players
         players.add(player);
+        audience.add(player.getBukkitPlayer());
+        plugin.getArenaManager().setPlayerArena(player.getUniqueId(), this);
         //Store the players inventory, this will be restored when they leave the arena
-        player.storeInventory();
+        //If it can't be made crash safe the player is taken back out of the arena rather than risking their items
+        //Once it is safe their inventory is emptied, so arena players only ever hold items the game has given them
+        player.storeInventory().whenComplete((result, error) -> Bukkit.getScheduler().runTask(plugin, () -> {
+            if (error != null)
+                refuseJoin(player, error);
+            else
+                clearInventory(player);
+        }));
 
         if (gameState.equals(GameState.playing)) {
             //Send the player to the spectator location
@@ -123,7 +234,109 @@ public class Arena implements Listener {
         if (gameState.equals(GameState.waiting)) {
             //Add the player to the lobby
             sendToLobby(player);
+            //Plan spawn points off the main thread so starting the game doesn't need to
+            if (!floors.isEmpty())
+                floors.get(0).planSpawnPointsAsync(players.size());
         }
+        return true;
+    }
+
+    /**
+     * Give a player the tools they need to play
+     *
+     * @param player The player to give the tools to
+     */
+    private void giveLoadout(SpleefPlayer player) {
+        player.getBukkitPlayer().getInventory().addItem(new LapisItemBuilder(Material.IRON_SHOVEL)
+                .setName(ChatColor.AQUA + "The Shovel of Destiny")
+                .addLore("This shovel will bring you:", "Fun", "Pain", "Falling").build());
+    }
+
+    /**
+     * Empty a players inventory once it has been stored, so their own items can't be used as ability tools
+     *
+     * @param player The player whose inventory has been stored
+     */
+    private void clearInventory(SpleefPlayer player) {
+        if (!players.contains(player))
+            return;
+        player.getBukkitPlayer().getInventory().clear();
+        //A game can start before the journal write finishes, the loadout it gave out is given back
+        if (alivePlayers.contains(player))
+            giveLoadout(player);
+    }
+
+    /**
+     * Take a player back out of the arena because their inventory couldn't be written to the inventory journal
+     *
+     * @param player The player whose inventory wasn't stored
+     * @param error  The reason the inventory wasn't stored
+     */
+    private void refuseJoin(SpleefPlayer player, Throwable error) {
+        if (!players.contains(player))
+            return;
+        plugin.getLogger().severe("The inventory of " + player.getName() + " couldn't be stored safely, they have been removed from " + name);
+        plugin.getLogger().severe(error.toString());
+        removePlayer(player);
+        player.sendMessage(plugin.config.getMessage("Lobby.InventoryNotStored"));
+    }
+
+    /**
+     * Remove a player from the arena and give them back the inventory they had when they joined
+     *
+     * @param player The player being removed
+     */
+    public void removePlayer(SpleefPlayer player) {
+        if (player == null || !players.remove(player))
+            return;
+        Player handle = audience.remove(player.getUniqueId());
+        if (handle != null)
+            countdownManager.removePlayer(handle);
+        //Leaving a game that is in progress counts as abandoning it
+        if (participants.remove(player))
+            plugin.getStatsManager().recordGame(List.of(new PlayerStats(player.getUniqueId(), player.getName(), 1, 0, 0, 1)));
+        if (alivePlayers.remove(player)) {
+            if (recording != null)
+                recording.eliminated(player, true);
+            checkForWinner();
+        }
+        if (players.size() < minPlayers)
+            cancelStart();
+        releaseIfIdle();
+        plugin.getArenaManager().removePlayerArena(player.getUniqueId());
+        player.restoreInventory();
+    }
+
+    /**
+     * Get the audience of this arena, the live handles of its players that broadcasts are sent to
+     *
+     * @return the arenas audience
+     */
+    public ArenaAudience getAudience() {
+        return audience;
+    }
+
+    /**
+     * Get the players that are currently in this arena
+     *
+     * @return an unmodifiable view of the arenas players
+     */
+    public List<SpleefPlayer> getPlayers() {
+        return Collections.unmodifiableList(players);
+    }
+
+    /**
+     * Get a member of this arena by their UUID
+     *
+     * @param uuid The UUID of the player
+     * @return the SpleefPlayer for this UUID, or null if they aren't in this arena
+     */
+    public SpleefPlayer getPlayer(UUID uuid) {
+        for (SpleefPlayer player : players) {
+            if (player.getUniqueId().equals(uuid))
+                return player;
+        }
+        return null;
     }
 
     /**
@@ -147,11 +360,22 @@ public class Arena implements Listener {
 
     /**
      * Send a player to the spectate area of this arena
-     * This method is used when a player is eliminated or joins an arena in progress
+     * This method is used when a player joins an arena in progress
      *
      * @param player The player who will spectate
      */
     public void sendToSpectate(SpleefPlayer player) {
+        sendToSpectate(player, "Spectate.GameInProgress");
+    }
+
+    /**
+     * Send a player to the spectate area of this arena
+     * This method is used when a player is eliminated or joins an arena in progress
+     *
+     * @param player     The player who will spectate
+     * @param messageKey The key of the message that tells the player why they are spectating
+     */
+    public void sendToSpectate(SpleefPlayer player, String messageKey) {
         //Make sure this player is a member of this arena
         if (!players.contains(player)) {
             plugin.getLogger().warning("Player " + player.getBukkitPlayer().getName() + " was sent to spectate the arena "
@@ -160,45 +384,235 @@ public class Arena implements Listener {
         }
         //Teleport to spectate location
         player.teleport(spectateLocation);
-        //Tell the player that the game is in progress, so they are now spectating
-        player.sendConfigMessage("Spectate.GameInProgress");
+        //Tell the player why they are now spectating
+        player.sendConfigMessage(messageKey);
     }
 
     /**
-     * Used to detect block breakage in this arena
+     * Eliminate players who have fallen below the elimination height
+     * The players are sent to spectate, and the game ends if only one player is left
      *
-     * @param e The block break event being fired
+     * @param uuids The UUIDs of the players who have been eliminated
      */
-    @EventHandler
-    public void onBlockBreak(BlockBreakEvent e) {
-        //Check if it's an arena player, if it isn't we return and ignore the event
-        if (!players.contains(plugin.getSpleefPlayer(e.getPlayer().getUniqueId())))
+    public void eliminatePlayers(Collection<UUID> uuids) {
+        if (gameState != GameState.playing)
             return;
-        //Check if it's a floor block
-        boolean isFloor = false;
-        Floor floor = null;
-        for (Floor f : floors) {
-            if (f.isBlockOnFloor(e.getBlock())) {
-                isFloor = true;
-                floor = f;
-            }
+        for (UUID uuid : uuids) {
+            SpleefPlayer player = getPlayer(uuid);
+            if (player == null || !alivePlayers.remove(player))
+                continue;
+            if (recording != null)
+                recording.eliminated(player, false);
+            sendToSpectate(player, "Spectate.Eliminated");
+        }
+        checkForWinner();
+    }
+
+    /**
+     * Start the game after a delay, this does nothing if a start is already scheduled or the arena isn't waiting
+     * The start is cancelled if the arena drops below its minimum players before the delay is over
+     *
+     * @param delay The number of ticks to wait before starting
+     */
+    public void scheduleStart(long delay) {
+        if (gameState != GameState.waiting || isStartScheduled())
+            return;
+        startTimer = plugin.getGameLoop().schedule(timers, delay, () -> {
+            startTimer = null;
+            if (gameState == GameState.waiting && players.size() >= minPlayers)
+                startGame();
+        });
+    }
+
+    /**
+     * Check if the game is waiting to be started by {@link #scheduleStart(long)}
+     *
+     * @return true if a start is scheduled
+     */
+    public boolean isStartScheduled() {
+        return startTimer != null && startTimer.isPending();
+    }
+
+    /**
+     * Cancel every pending game loop timer for this arena, this is O(1) however many timers there are
+     * This is used whenever the arena is reset so that no stray transitions run later
+     */
+    public void cancelTimers() {
+        timers.cancelAll();
+        startTimer = null;
+    }
+
+    private void cancelStart() {
+        if (startTimer != null) {
+            startTimer.cancel();
+            startTimer = null;
         }
+    }
+
+    /**
+     * End the game if there is one or no players left on the floors
+     */
+    private void checkForWinner() {
+        if (gameState != GameState.playing || alivePlayers.size() > 1)
+            return;
+        endGame(alivePlayers.isEmpty() ? null : alivePlayers.get(0));
+    }
+
+    /**
+     * Create an instance of this arena, a copy whose floors, lobby and spectate points are moved by an offset
+     * The instance starts disabled with every floor block marked as broken, regenerating it builds its floors in the world
+     *
+     * @param instanceName The unique name of the instance
+     * @param offsetX      The number of blocks to move the instance along the X axis
+     * @param offsetZ      The number of blocks to move the instance along the Z axis
+     * @return the new instance
+     */
+    Arena createInstance(String instanceName, int offsetX, int offsetZ) {
+        Arena instance = new Arena(plugin, instanceName);
+        instance.template = this;
+        for (Floor floor : floors) {
+            instance.addFloor(floor.copy(instance, offsetX, 0, offsetZ));
+        }
+        if (lobbySpawn != null)
+            instance.lobbySpawn = lobbySpawn.clone().add(offsetX, 0, offsetZ);
+        if (spectateLocation != null)
+            instance.spectateLocation = spectateLocation.clone().add(offsetX, 0, offsetZ);
+        instance.eliminationHeight = eliminationHeight;
+        instance.minPlayers = minPlayers;
+        instance.maxPlayers = maxPlayers;
+        instance.decay = decay;
+        return instance;
+    }
+
+    /**
+     * Get the arena that this arena was copied from
+     *
+     * @return the template of this instance, or null if this arena isn't an instance
+     */
+    public Arena getTemplate() {
+        return template;
+    }
+
+    /**
+     * Put this arenas floors back straight away, this is used when the plugin is disabled so a game that is still
+     * running doesn't leave holes in the world, instances are removed from the world instead since they aren't saved
+     */
+    public void restoreFloorsNow() {
+        plugin.getRegenerationScheduler().cancel(this);
+        for (Floor floor : floors) {
+            if (template != null)
+                floor.clearBlocks(Integer.MAX_VALUE);
+            else
+                floor.restoreBlocks(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Hand an instance back to the instance pool once nobody is using it
+     */
+    private void releaseIfIdle() {
+        if (template != null && players.isEmpty() && gameState == GameState.waiting)
+            plugin.getInstancePool().release(this);
+    }
+
+    /**
+     * Get the plugin that owns this arena
+     *
+     * @return the LapisSpleef main class
+     */
+    LapisSpleef getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * Get the metrics recorded for this arena
+     *
+     * @return the arenas metrics
+     */
+    public ArenaMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the current state of the game in this arena
+     *
+     * @return the arenas game state
+     */
+    public GameState getGameState() {
+        return gameState;
+    }
+
+    /**
+     * Used to handle block breakage by a player in this arena
+     * This is called by the {@link ArenaListener} once the event has been routed to this arena
+     *
+     * @param e     The block break event being fired
+     * @param floor The floor of this arena that contains the block, or null if it isn't a floor block
+     */
+    public void onBlockBreak(BlockBreakEvent e, Floor floor) {
+        long start = System.nanoTime();
         //If it isn't a floor block, we cancel the event since players shouldn't be able to damage the arena
-        if (!isFloor) {
+        if (floor == null) {
             e.setCancelled(true);
+            metrics.getBlockBreak().recordSince(start);
             return;
         }
         //Only allow block breaking if the game is in the playing state, otherwise cancel the event
         if (gameState.equals(GameState.playing)) {
             //Break the floor block
-            floor.breakBlock(e.getBlock());
+            Block b = e.getBlock();
+            floor.breakBlock(b);
             //Check if it's a tool being used
-
-            //Apply tool abilities
-
+            Player player = e.getPlayer();
+            ToolAbility ability = ToolAbility.fromTool(player.getInventory().getItemInMainHand());
+            //Apply tool abilities, only the excavator is used by breaking blocks
+            if (ability == ToolAbility.excavate)
+                useAbility(player.getUniqueId(), ability, floor, b.getX(), b.getZ());
+            //Occasionally reward the break with a power-up
+            if (powerUpChance > 0 && ThreadLocalRandom.current().nextDouble() < powerUpChance) {
+                ToolAbility powerUp = ToolAbility.byIndex(ThreadLocalRandom.current().nextInt(ToolAbility.count()));
+                player.getInventory().addItem(powerUp.createItem());
+                player.sendMessage(plugin.config.getMessage("Abilities.PowerUp").replace("{Ability}", powerUp.getDisplayName()));
+            }
         } else {
             e.setCancelled(true);
         }
+        metrics.getBlockBreak().recordSince(start);
+    }
+
+    /**
+     * Use a tool ability on a floor of this arena, the area is broken at the end of the tick along with every other
+     * ability used that tick
+     * Each player can only use an ability once per cooldown, set by Abilities.Cooldown in the config
+     *
+     * @param uuid    The UUID of the player using the ability
+     * @param ability The ability being used
+     * @param floor   The floor that was hit
+     * @param x       The X coordinate of the block that was hit
+     * @param z       The Z coordinate of the block that was hit
+     * @return true if the ability was used, false if the game isn't being played or the player is on cooldown
+     */
+    public boolean useAbility(UUID uuid, ToolAbility ability, Floor floor, int x, int z) {
+        if (gameState != GameState.playing || floor == null || floor.getArena() != this)
+            return false;
+        //Eliminated players and spectators can't break the floors under the players still in the game
+        SpleefPlayer player = getPlayer(uuid);
+        if (player == null || !alivePlayers.contains(player))
+            return false;
+        long now = System.nanoTime();
+        Long readyAt = abilityCooldowns.get(uuid);
+        if (readyAt != null && now - readyAt < 0)
+            return false;
+        abilityCooldowns.put(uuid, now + abilityCooldown);
+        //Floors are sorted highest first, so the floors below the hit floor follow it in the list
+        int index = floors.indexOf(floor);
+        for (int depth = 0; depth <= ability.getDepth() && index + depth < floors.size(); depth++) {
+            int radius = ability.getRadius() - depth;
+            if (radius < 0)
+                break;
+            plugin.getAreaBreaker().queue(floors.get(index + depth), x, z, radius, ability.isRound());
+        }
+        return true;
     }
 
     /**
@@ -221,9 +635,7 @@ public class Arena implements Listener {
      * @param fadeOut  Ticks to fade out for
      */
     public void sendTitle(String title, String subtitle, int fadeIn, int stay, int fadeOut) {
-        for (SpleefPlayer player : players) {
-            player.getBukkitPlayer().sendTitle(title, subtitle, fadeIn, stay, fadeOut);
-        }
+        audience.sendTitle(title, subtitle, fadeIn, stay, fadeOut);
     }
 
     /**
@@ -244,15 +656,19 @@ public class Arena implements Listener {
     public void setName(String name) {
         //TODO: Check its unique
         this.name = name;
+        metrics = new ArenaMetrics(plugin.getMetrics(), name);
     }
 
     /**
-     * Add a floor to this arena, new floors are added to the bottom by default
+     * Add a floor to this arena, floors are kept in order from highest to lowest
      *
      * @param floor The floor object to add
      */
     public void addFloor(Floor floor) {
-        floors.add(floor);
+        //Binary search for where the floor belongs so the list never needs to be re-sorted
+        int index = Collections.binarySearch(floors, floor, HIGHEST_FIRST);
+        floors.add(index < 0 ? -index - 1 : index, floor);
+        plugin.getArenaManager().indexFloor(floor);
     }
 
     /**
@@ -262,35 +678,24 @@ public class Arena implements Listener {
      */
     public void removeFloor(Floor floor) {
         floors.remove(floor);
+        plugin.getArenaManager().unindexFloor(floor);
     }
 
     /**
-     * Get the current list of floors stored for this arena
+     * Get the current list of floors stored for this arena, ordered from highest to lowest
      *
-     * @return a list of current floors
+     * @return an unmodifiable view of the current floors
      */
     public List<Floor> getFloors() {
-        return floors;
+        return Collections.unmodifiableList(floors);
     }
 
     /**
      * Sorts the floors from highest Y value at index 0 in the floors list to the lowest value in the last index
+     * Floors are kept sorted as they are added, so this only needs to be used if that order has somehow been lost
      */
     public void sortFloors() {
-        List<Floor> sortedList = new ArrayList<>();
-        int size = floors.size();
-        while (sortedList.size() != size) {
-            Floor highest = null;
-            for (Floor f : floors) {
-                int y = f.getYLevel();
-                if (highest == null || highest.getYLevel() < y) {
-                    highest = f;
-                }
-            }
-            sortedList.add(highest);
-            floors.remove(highest);
-        }
-        floors = sortedList;
+        floors.sort(HIGHEST_FIRST);
     }
 
     /**
@@ -348,20 +753,217 @@ public class Arena implements Listener {
         eliminationHeight = height;
     }
 
+    /**
+     * Get the number of players needed before matchmaking will start a game in this arena
+     *
+     * @return the minimum number of players
+     */
+    public int getMinPlayers() {
+        return minPlayers;
+    }
+
+    /**
+     * Set the number of players needed before matchmaking will start a game in this arena
+     *
+     * @param minPlayers The new minimum number of players, at least 1
+     */
+    public void setMinPlayers(int minPlayers) {
+        this.minPlayers = Math.max(1, minPlayers);
+    }
+
+    /**
+     * Get the most players that matchmaking will put in this arena
+     *
+     * @return the maximum number of players
+     */
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    /**
+     * Set the most players that matchmaking will put in this arena, a full arena starts its game straight away
+     *
+     * @param maxPlayers The new maximum number of players, this can't be less than the minimum
+     */
+    public void setMaxPlayers(int maxPlayers) {
+        this.maxPlayers = Math.max(minPlayers, maxPlayers);
+    }
+
+    /**
+     * Check if this arena uses the decay game mode, where blocks crumble shortly after players stand on them
+     *
+     * @return true if the floors decay during games
+     */
+    public boolean isDecayEnabled() {
+        return decay;
+    }
+
+    /**
+     * Set if this arena uses the decay game mode, this takes effect from the next game
+     *
+     * @param decay true if the floors should decay during games
+     */
+    public void setDecayEnabled(boolean decay) {
+        this.decay = decay;
+    }
+
+    /**
+     * Get the players who are still on the floors in the current game
+     *
+     * @return the alive players, this list must not be modified
+     */
+    List<SpleefPlayer> getAlivePlayers() {
+        return alivePlayers;
+    }
+
+    /**
+     * Get the replay recording of the current game
+     *
+     * @return the recording, or null if no game is being recorded
+     */
+    public MatchRecording getRecording() {
+        return recording;
+    }
+
+    /**
+     * Get the file that this arena is saved to
+     *
+     * @return the arena file in the Arenas folder
+     */
+    public File getConfigFile() {
+        return new File(plugin.getDataFolder(), "Arenas" + File.separator + name + ".yml");
+    }
+
     /**
      * Load the arenas details from a config file
-     * This should mainly be used when loading an exising arena
+     * This should mainly be used when loading an exising arena, the floors are built when the arena is next enabled
+     * Arenas are normally loaded in the background at startup by {@link ArenaManager#loadArenas()}
      */
     public void loadFromConfig() {
-        //TODO: load from config
+        try {
+            applyConfig(ArenaData.read(getConfigFile()));
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().severe("Failed to load arena " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Use the values read from an arena file
+     * Locations and floors need loaded worlds, so they are kept until the arena is enabled
+     *
+     * @param data The contents of the arena file
+     */
+    void applyConfig(ArenaData data) {
+        eliminationHeight = data.eliminationHeight;
+        minPlayers = Math.max(1, data.minPlayers);
+        maxPlayers = Math.max(minPlayers, data.maxPlayers);
+        decay = data.decay;
+        pending = data;
     }
 
     /**
      * Save arena data to config file
      * This should be used after edit the arenas details such that it can be loaded next time
+     * Instances are copies of another arena and are never saved
+     *
+     * @return a future that completes once the file is safely on disk
+     */
+    public CompletableFuture<Void> saveToConfig() {
+        if (template != null)
+            return CompletableFuture.completedFuture(null);
+        List<ArenaData.FloorData> floorData = new ArrayList<>();
+        ArenaData.LocationData lobby = ArenaData.LocationData.of(lobbySpawn);
+        ArenaData.LocationData spectate = ArenaData.LocationData.of(spectateLocation);
+        if (pending != null) {
+            //Floors that haven't been built yet are saved exactly as they were loaded
+            floorData.addAll(pending.floors);
+            if (lobby == null)
+                lobby = pending.lobbySpawn;
+            if (spectate == null)
+                spectate = pending.spectateLocation;
+        }
+        for (Floor floor : floors) {
+            floorData.add(new ArenaData.FloorData(floor));
+        }
+        boolean disabled = gameState == GameState.disabled && !enabling;
+        String contents = new ArenaData(name, lobby, spectate, eliminationHeight, minPlayers, maxPlayers, disabled,
+                decay, floorData).write();
+        return plugin.getFileWriter().write(getConfigFile(), contents);
+    }
+
+    /**
+     * Enable a disabled arena so that players can join it
+     * The first time an arena is enabled its floors are built from the arena file, the block data is decoded
+     * off the main thread and the arena stays disabled until its floors are ready
+     * Holes left by a game that was running when the server stopped aren't known about, so the whole floor is
+     * regenerated before the arena opens
+     */
+    public void enable() {
+        if (gameState != GameState.disabled || enabling)
+            return;
+        if (pending == null) {
+            gameState = GameState.waiting;
+            return;
+        }
+        ArenaData data = pending;
+        //Worlds can only be looked up on the main thread, the blocks are decoded and indexed in the background
+        List<World> worlds = new ArrayList<>();
+        for (ArenaData.FloorData floor : data.floors) {
+            World world = Bukkit.getWorld(floor.world);
+            if (world == null) {
+                plugin.getLogger().warning("Arena " + name + " can't be enabled, the world " + floor.world + " isn't loaded");
+                return;
+            }
+            worlds.add(world);
+        }
+        Location lobby = data.lobbySpawn == null ? null : data.lobbySpawn.toLocation();
+        Location spectate = data.spectateLocation == null ? null : data.spectateLocation.toLocation();
+        enabling = true;
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<Floor> built = new ArrayList<>();
+            try {
+                for (int i = 0; i < data.floors.size(); i++) {
+                    ArenaData.FloorData floor = data.floors.get(i);
+                    Floor loaded = new Floor(this, worlds.get(i), floor.decode(), floor.material);
+                    //What is left of the floor in the world isn't known, so every block is restored
+                    loaded.markAllBroken();
+                    built.add(loaded);
+                }
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().severe("Arena " + name + " has invalid floor data: " + e.getMessage());
+                Bukkit.getScheduler().runTask(plugin, () -> enabling = false);
+                return;
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                //The arena may have been loaded again while the floors were being built
+                if (pending != data) {
+                    enabling = false;
+                    return;
+                }
+                pending = null;
+                if (lobbySpawn == null)
+                    lobbySpawn = lobby;
+                if (spectateLocation == null)
+                    spectateLocation = spectate;
+                for (Floor floor : built) {
+                    addFloor(floor);
+                }
+                //The arena stays disabled until the floors are whole again
+                plugin.getRegenerationScheduler().regenerate(this, () -> {
+                    enabling = false;
+                    gameState = GameState.waiting;
+                });
+            });
+        });
+    }
+
+    /**
+     * Check if this arenas floors have been built
+     *
+     * @return false if the arena was loaded from a file and has not been enabled yet
      */
-    public void saveToConfig() {
-        //TODO: save to config
+    public boolean isLoaded() {
+        return pending == null;
     }
 
 }
@@ -0,0 +1,158 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.bukkit.boss.BossBar;
+import org.bukkit.entity.Player;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The online players of an arena, kept as live Player handles so that broadcasts don't look each player up
+ * Handles are swapped when the arena listener sees a player change world and are dropped as soon as a player
+ * leaves the arena, which always happens before they leave the server, so a broadcast never reaches a stale handle
+ * The handles are flattened into an array that is only rebuilt after the audience changes
+ */
+public class ArenaAudience {
+
+    private final Map<UUID, Player> members = new LinkedHashMap<>();
+    private Player[] handles = new Player[0];
+    private boolean dirty;
+
+    /**
+     * Add a player to the audience
+     *
+     * @param player The player, nothing is added if they are offline
+     */
+    void add(Player player) {
+        if (player == null)
+            return;
+        members.put(player.getUniqueId(), player);
+        dirty = true;
+    }
+
+    /**
+     * Remove a player from the audience
+     *
+     * @param uuid The UUID of the player
+     * @return the handle that was removed, or null if the player wasn't in the audience
+     */
+    Player remove(UUID uuid) {
+        Player removed = members.remove(uuid);
+        if (removed != null)
+            dirty = true;
+        return removed;
+    }
+
+    /**
+     * Replace the handle of a player who is in the audience, e.g. after they change world
+     *
+     * @param player The new handle for the player
+     */
+    void update(Player player) {
+        if (members.replace(player.getUniqueId(), player) != null)
+            dirty = true;
+    }
+
+    /**
+     * Check if a player is in the audience
+     *
+     * @param uuid The UUID of the player
+     * @return true if the player will receive broadcasts
+     */
+    public boolean contains(UUID uuid) {
+        return members.containsKey(uuid);
+    }
+
+    /**
+     * Get the number of players in the audience
+     *
+     * @return the audience size
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Get the players in the audience
+     *
+     * @return the live handles of every player, this array is shared and must not be modified
+     */
+    public Player[] getPlayers() {
+        if (dirty) {
+            handles = members.values().toArray(new Player[0]);
+            dirty = false;
+        }
+        return handles;
+    }
+
+    /**
+     * Send a raw message to everyone in the audience
+     *
+     * @param message The message to send
+     */
+    public void sendMessage(String message) {
+        for (Player player : getPlayers()) {
+            player.sendMessage(message);
+        }
+    }
+
+    /**
+     * Send a title to everyone in the audience
+     *
+     * @param title    The title to be shown
+     * @param subtitle The subtitle to be shown
+     * @param fadeIn   Ticks to fade in for
+     * @param stay     Ticks to stay for
+     * @param fadeOut  Ticks to fade out for
+     */
+    public void sendTitle(String title, String subtitle, int fadeIn, int stay, int fadeOut) {
+        for (Player player : getPlayers()) {
+            player.sendTitle(title, subtitle, fadeIn, stay, fadeOut);
+        }
+    }
+
+    /**
+     * Play a sound to everyone in the audience at a location
+     *
+     * @param location Where the sound is played
+     * @param sound    The sound to play
+     * @param volume   The volume of the sound
+     * @param pitch    The pitch of the sound
+     */
+    public void playSound(Location location, Sound sound, float volume, float pitch) {
+        for (Player player : getPlayers()) {
+            player.playSound(location, sound, volume, pitch);
+        }
+    }
+
+    /**
+     * Show a boss bar to everyone in the audience
+     *
+     * @param bar The boss bar to show
+     */
+    public void showBossBar(BossBar bar) {
+        for (Player player : getPlayers()) {
+            bar.addPlayer(player);
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.util.BlockPositionSet;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The contents of an arena file, read without touching any worlds so that it is safe to do off the main thread
+ * Floor blocks are kept in their encoded form until the arena is enabled, see {@link FloorData#decode()}
+ */
+class ArenaData {
+
+    final String name;
+    final LocationData lobbySpawn;
+    final LocationData spectateLocation;
+    final int eliminationHeight;
+    final int minPlayers;
+    final int maxPlayers;
+    final boolean disabled;
+    final boolean decay;
+    final List<FloorData> floors;
+
+    ArenaData(String name, LocationData lobbySpawn, LocationData spectateLocation, int eliminationHeight,
+              int minPlayers, int maxPlayers, boolean disabled, boolean decay, List<FloorData> floors) {
+        this.name = name;
+        this.lobbySpawn = lobbySpawn;
+        this.spectateLocation = spectateLocation;
+        this.eliminationHeight = eliminationHeight;
+        this.minPlayers = minPlayers;
+        this.maxPlayers = maxPlayers;
+        this.disabled = disabled;
+        this.decay = decay;
+        this.floors = floors;
+    }
+
+    /**
+     * Read an arena file, this does not need the main thread
+     *
+     * @param file The arena file
+     * @return the contents of the file
+     * @throws IOException                   if the file can't be read
+     * @throws InvalidConfigurationException if the file isn't valid YAML or is missing a required value
+     */
+    static ArenaData read(File file) throws IOException, InvalidConfigurationException {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.load(file);
+        String fileName = file.getName();
+        String name = yaml.getString("Name", fileName.substring(0, fileName.length() - ".yml".length()));
+        List<FloorData> floors = new ArrayList<>();
+        ConfigurationSection floorsSection = yaml.getConfigurationSection("Floors");
+        if (floorsSection != null) {
+            for (String key : floorsSection.getKeys(false)) {
+                ConfigurationSection floor = floorsSection.getConfigurationSection(key);
+                if (floor == null)
+                    throw new InvalidConfigurationException("Floor " + key + " of arena " + name + " is not a section");
+                Material material = Material.getMaterial(floor.getString("Material", ""));
+                if (material == null)
+                    throw new InvalidConfigurationException("Floor " + key + " of arena " + name + " has an unknown material");
+                floors.add(new FloorData(floor.getString("World"), material, floor.getString("Blocks", "")));
+            }
+        }
+        return new ArenaData(name, LocationData.read(yaml.getConfigurationSection("LobbySpawn")),
+                LocationData.read(yaml.getConfigurationSection("SpectatorSpawn")), yaml.getInt("EliminationHeight"),
+                yaml.getInt("MinPlayers", 2), yaml.getInt("MaxPlayers", 16), yaml.getBoolean("IsDisabled"),
+                yaml.getBoolean("Decay"), floors);
+    }
+
+    /**
+     * Write an arena to YAML in the format read by {@link #read(File)}
+     *
+     * @return the YAML contents of the arena file
+     */
+    String write() {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("Name", name);
+        if (lobbySpawn != null)
+            lobbySpawn.write(yaml.createSection("LobbySpawn"));
+        if (spectateLocation != null)
+            spectateLocation.write(yaml.createSection("SpectatorSpawn"));
+        yaml.set("EliminationHeight", eliminationHeight);
+        yaml.set("MinPlayers", minPlayers);
+        yaml.set("MaxPlayers", maxPlayers);
+        yaml.set("IsDisabled", disabled);
+        yaml.set("Decay", decay);
+        for (int i = 0; i < floors.size(); i++) {
+            FloorData floor = floors.get(i);
+            ConfigurationSection section = yaml.createSection("Floors." + i);
+            section.set("World", floor.world);
+            section.set("Material", floor.material.name());
+            section.set("Blocks", floor.blocks);
+        }
+        return yaml.saveToString();
+    }
+
+    /**
+     * A floor whose blocks have not been decoded yet
+     */
+    static class FloorData {
+
+        final String world;
+        final Material material;
+        //The packed block positions, encoded with BlockPositionSet#encode
+        final String blocks;
+
+        FloorData(String world, Material material, String blocks) {
+            this.world = world;
+            this.material = material;
+            this.blocks = blocks;
+        }
+
+        /**
+         * Store an existing floor
+         *
+         * @param floor The floor to store
+         */
+        FloorData(Floor floor) {
+            this(floor.getWorld() == null ? null : floor.getWorld().getName(), floor.getMaterial(),
+                    BlockPositionSet.encode(floor.getPositions()));
+        }
+
+        /**
+         * Decode the blocks of this floor, this is the expensive part of loading an arena and can be done off the main thread
+         *
+         * @return the packed positions of the floors blocks
+         */
+        long[] decode() {
+            return blocks.isEmpty() ? new long[0] : BlockPositionSet.decode(blocks);
+        }
+
+    }
+
+    /**
+     * A location whose world is only looked up once it is needed
+     */
+    static class LocationData {
+
+        final String world;
+        final double x, y, z;
+        final float yaw, pitch;
+
+        LocationData(String world, double x, double y, double z, float yaw, float pitch) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.yaw = yaw;
+            this.pitch = pitch;
+        }
+
+        /**
+         * Store an existing location
+         *
+         * @param location The location to store, may be null
+         * @return the stored location, or null if the location was null or has no world
+         */
+        static LocationData of(Location location) {
+            if (location == null || location.getWorld() == null)
+                return null;
+            return new LocationData(location.getWorld().getName(), location.getX(), location.getY(), location.getZ(),
+                    location.getYaw(), location.getPitch());
+        }
+
+        private static LocationData read(ConfigurationSection section) {
+            if (section == null)
+                return null;
+            return new LocationData(section.getString("World"), section.getDouble("X"), section.getDouble("Y"),
+                    section.getDouble("Z"), (float) section.getDouble("Yaw"), (float) section.getDouble("Pitch"));
+        }
+
+        private void write(ConfigurationSection section) {
+            section.set("World", world);
+            section.set("X", x);
+            section.set("Y", y);
+            section.set("Z", z);
+            section.set("Yaw", yaw);
+            section.set("Pitch", pitch);
+        }
+
+        /**
+         * Create the Bukkit location, this must be done on the main thread
+         *
+         * @return the location, or null if its world isn't loaded
+         */
+        Location toLocation() {
+            World bukkitWorld = Bukkit.getWorld(world);
+            return bukkitWorld == null ? null : new Location(bukkitWorld, x, y, z, yaw, pitch);
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Creates copies of arenas on demand so that one arena layout can host many games at once
+ * Instances are placed in a row along the X axis from their template, built and torn down a slice at a time
+ * by the {@link RegenerationScheduler}, and kept in a pool so that idle instances can be reused
+ */
+public class ArenaInstancePool {
+
+    private final LapisSpleef plugin;
+    //Blocks between the template and each instance along the X axis
+    private final int spacing;
+    //The number of idle instances kept per template before extra instances are torn down
+    private final int maxIdle;
+    //The most instances that can exist per template
+    private final int maxInstances;
+    private final Map<Arena, TemplatePool> pools = new HashMap<>();
+
+    /**
+     * Initialize the instance pool, limits are read from the Instances section of the config
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public ArenaInstancePool(LapisSpleef plugin) {
+        this.plugin = plugin;
+        spacing = plugin.getConfig().getInt("Instances.Spacing", 512);
+        maxIdle = plugin.getConfig().getInt("Instances.MaxIdle", 2);
+        maxInstances = plugin.getConfig().getInt("Instances.MaxInstances", 16);
+    }
+
+    /**
+     * Get an instance of a template that players can join
+     * An idle instance is reused if there is one, otherwise a new instance is built over the next few ticks
+     *
+     * @param template The arena to copy
+     * @param onReady  Called with the instance once it is in the waiting state
+     * @return false if the template already has the maximum number of instances
+     */
+    public boolean acquire(Arena template, Consumer<Arena> onReady) {
+        TemplatePool pool = pools.computeIfAbsent(template, t -> new TemplatePool());
+        Arena idle;
+        while ((idle = pool.idle.poll()) != null) {
+            //Idle instances are still joinable, skip any that players have joined directly since they were released
+            if (idle.getPlayers().isEmpty() && idle.getGameState() == GameState.waiting) {
+                onReady.accept(idle);
+                return true;
+            }
+        }
+        //A real arena can have the same name as an instance, those slots are skipped rather than replacing the arena
+        int slot = pool.slots.nextClearBit(0);
+        while (slot < maxInstances && plugin.getArenaManager().getArena(instanceName(template, slot)) != null)
+            slot = pool.slots.nextClearBit(slot + 1);
+        if (slot >= maxInstances)
+            return false;
+        Arena instance = template.createInstance(instanceName(template, slot), (slot + 1) * spacing, 0);
+        if (!plugin.getArenaManager().addArena(instance))
+            return false;
+        pool.slots.set(slot);
+        pool.instances.put(instance, slot);
+        //Every block of a new instance is marked as broken, so regenerating it copies the floors into the world
+        plugin.getRegenerationScheduler().regenerate(instance, () -> {
+            instance.gameState = GameState.waiting;
+            onReady.accept(instance);
+        });
+        return true;
+    }
+
+    /**
+     * Return an instance that has no players, it will be reused or torn down if there are already enough idle instances
+     *
+     * @param instance The instance to return
+     */
+    public void release(Arena instance) {
+        TemplatePool pool = pools.get(instance.getTemplate());
+        if (pool == null || !pool.instances.containsKey(instance) || pool.idle.contains(instance))
+            return;
+        pruneIdle(pool);
+        if (pool.idle.size() < maxIdle) {
+            pool.idle.add(instance);
+            return;
+        }
+        //Tear the instance down, its slot is only freed once the floors have been removed from the world
+        instance.gameState = GameState.disabled;
+        plugin.getArenaManager().removeArena(instance);
+        plugin.getRegenerationScheduler().clear(instance, () -> pool.slots.clear(pool.instances.remove(instance)));
+    }
+
+    /**
+     * Get the instances of a template that currently exist
+     *
+     * @param template The template arena
+     * @return the instances of the template, including idle ones and ones still being built
+     */
+    public Collection<Arena> getInstances(Arena template) {
+        TemplatePool pool = pools.get(template);
+        return pool == null ? Collections.emptyList() : Collections.unmodifiableSet(pool.instances.keySet());
+    }
+
+    /**
+     * Get the idle instances of a template, these are ready for players to join
+     *
+     * @param template The template arena
+     * @return the number of idle instances
+     */
+    public int getIdleCount(Arena template) {
+        TemplatePool pool = pools.get(template);
+        if (pool == null)
+            return 0;
+        pruneIdle(pool);
+        return pool.idle.size();
+    }
+
+    private String instanceName(Arena template, int slot) {
+        return template.getName() + "-" + (slot + 1);
+    }
+
+    /**
+     * Forget idle instances that players have joined directly since they were released
+     * They are released again once they are empty, so only instances that are really idle count towards MaxIdle
+     */
+    private void pruneIdle(TemplatePool pool) {
+        pool.idle.removeIf(instance -> !instance.getPlayers().isEmpty() || instance.getGameState() != GameState.waiting);
+    }
+
+    private static class TemplatePool {
+
+        //Every instance of the template and the slot it occupies
+        private final Map<Arena, Integer> instances = new HashMap<>();
+        private final Deque<Arena> idle = new ArrayDeque<>();
+        private final BitSet slots = new BitSet();
+
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Snowball;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.ProjectileHitEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * The single listener that routes server events to the arena they belong to
+ * Events from players who aren't in an arena are ignored after one map lookup
+ */
+public class ArenaListener implements Listener {
+
+    private final ArenaManager manager;
+
+    /**
+     * Create the listener, this is registered by the arena manager
+     *
+     * @param manager The arena manager used to look up arenas and floors
+     */
+    ArenaListener(ArenaManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Route block breaks by arena players to their arena
+     *
+     * @param e The block break event being fired
+     */
+    @EventHandler
+    public void onBlockBreak(BlockBreakEvent e) {
+        //Check if it's an arena player, if it isn't we return and ignore the event
+        Arena arena = manager.getPlayerArena(e.getPlayer().getUniqueId());
+        if (arena == null)
+            return;
+        //Find the floor this block belongs to, blocks on other arenas floors are treated as non-floor blocks
+        Block b = e.getBlock();
+        Floor floor = manager.getFloorAt(b.getWorld(), b.getX(), b.getY(), b.getZ());
+        if (floor != null && floor.getArena() != arena)
+            floor = null;
+        arena.onBlockBreak(e, floor);
+    }
+
+    /**
+     * Blast the floor when an arena player's snowball lands on it
+     *
+     * @param e The projectile hit event being fired
+     */
+    @EventHandler
+    public void onProjectileHit(ProjectileHitEvent e) {
+        if (!(e.getEntity() instanceof Snowball) || !(e.getEntity().getShooter() instanceof Player) || e.getHitBlock() == null)
+            return;
+        Player player = (Player) e.getEntity().getShooter();
+        Arena arena = manager.getPlayerArena(player.getUniqueId());
+        if (arena == null)
+            return;
+        Block b = e.getHitBlock();
+        arena.useAbility(player.getUniqueId(), ToolAbility.blast, manager.getFloorAt(b.getWorld(), b.getX(), b.getY(), b.getZ()),
+                b.getX(), b.getZ());
+    }
+
+    /**
+     * Turn crater charges placed on a floor into a crater, arena players can't place the charge as a block
+     *
+     * @param e The block place event being fired
+     */
+    @EventHandler
+    public void onBlockPlace(BlockPlaceEvent e) {
+        Player player = e.getPlayer();
+        Arena arena = manager.getPlayerArena(player.getUniqueId());
+        if (arena == null || ToolAbility.fromTool(e.getItemInHand()) != ToolAbility.crater)
+            return;
+        e.setCancelled(true);
+        Block b = e.getBlockAgainst();
+        Floor floor = manager.getFloorAt(b.getWorld(), b.getX(), b.getY(), b.getZ());
+        //The charge is used up, cancelling the place means the server won't take it from the players hand
+        if (arena.useAbility(player.getUniqueId(), ToolAbility.crater, floor, b.getX(), b.getZ()))
+            e.getItemInHand().setAmount(e.getItemInHand().getAmount() - 1);
+    }
+
+    /**
+     * Keep arena audiences pointing at the current handle of players who change world
+     *
+     * @param e The changed world event being fired
+     */
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent e) {
+        Arena arena = manager.getPlayerArena(e.getPlayer().getUniqueId());
+        if (arena != null)
+            arena.getAudience().update(e.getPlayer());
+    }
+
+    /**
+     * Remove players from their arena when they leave the server so that their inventory is restored
+     *
+     * @param e The player quit event being fired
+     */
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent e) {
+        Arena arena = manager.getPlayerArena(e.getPlayer().getUniqueId());
+        if (arena == null)
+            return;
+        arena.removePlayer(arena.getPlayer(e.getPlayer().getUniqueId()));
+    }
+
+}
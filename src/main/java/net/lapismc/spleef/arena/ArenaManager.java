@@ -0,0 +1,262 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.util.BlockPositionSet;
+import net.lapismc.spleef.util.LongObjectMap;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps track of every arena on the server
+ * This class indexes players and floor blocks so that events can be routed straight to the arena they belong to
+ */
+public class ArenaManager {
+
+    private final LapisSpleef plugin;
+    //All arenas by name
+    private final Map<String, Arena> arenas = new HashMap<>();
+    //The arena each player is currently a member of
+    private final Map<UUID, Arena> playerArenas = new HashMap<>();
+    //The floors overlapping each 16x16x16 chunk section, per world
+    private final Map<World, LongObjectMap<Floor[]>> sectionIndex = new HashMap<>();
+    private final EliminationDetector eliminationDetector;
+
+    /**
+     * Initialize the arena manager and register the listener that routes events to arenas
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public ArenaManager(LapisSpleef plugin) {
+        this.plugin = plugin;
+        Bukkit.getPluginManager().registerEvents(new ArenaListener(this), plugin);
+        eliminationDetector = new EliminationDetector(plugin, this);
+    }
+
+    /**
+     * Get the detector that eliminates players who fall below their arenas elimination height
+     *
+     * @return the elimination detector
+     */
+    public EliminationDetector getEliminationDetector() {
+        return eliminationDetector;
+    }
+
+    /**
+     * Register an arena with the manager, this also indexes all of its floors
+     * Arena names must be unique, an arena with the same name as one that is already registered is rejected
+     *
+     * @param arena The arena to add
+     * @return false if another arena already has this name
+     */
+    public boolean addArena(Arena arena) {
+        if (arenas.putIfAbsent(arena.getName(), arena) != null)
+            return false;
+        for (Floor floor : arena.getFloors()) {
+            indexFloor(floor);
+        }
+        return true;
+    }
+
+    /**
+     * Load every arena in the Arenas folder
+     * The files are parsed in parallel off the main thread, then the arenas are registered on the main thread
+     * Arenas start disabled and are enabled once their floors are built, unless their file marks them as disabled
+     *
+     * @return a future that completes on the main thread once every arena has been registered
+     */
+    public CompletableFuture<Void> loadArenas() {
+        File[] files = new File(plugin.getDataFolder(), "Arenas").listFiles((dir, name) -> name.endsWith(".yml"));
+        if (files == null || files.length == 0)
+            return CompletableFuture.completedFuture(null);
+        int threads = Math.min(files.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> new Thread(r, "LapisSpleef Arena Loader"));
+        List<CompletableFuture<ArenaData>> parsing = new ArrayList<>();
+        for (File file : files) {
+            parsing.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return ArenaData.read(file);
+                } catch (IOException | InvalidConfigurationException e) {
+                    plugin.getLogger().severe("Failed to load arena file " + file.getName() + ": " + e.getMessage());
+                    return null;
+                }
+            }, executor));
+        }
+        executor.shutdown();
+        CompletableFuture<Void> loaded = new CompletableFuture<>();
+        CompletableFuture.allOf(parsing.toArray(new CompletableFuture[0])).thenRun(() ->
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    for (CompletableFuture<ArenaData> future : parsing) {
+                        ArenaData data = future.join();
+                        if (data == null)
+                            continue;
+                        if (arenas.containsKey(data.name)) {
+                            plugin.getLogger().warning("Skipped a second arena named " + data.name);
+                            continue;
+                        }
+                        Arena arena = new Arena(plugin, data.name);
+                        arena.applyConfig(data);
+                        addArena(arena);
+                        if (!data.disabled)
+                            arena.enable();
+                    }
+                    loaded.complete(null);
+                }));
+        return loaded;
+    }
+
+    /**
+     * Remove an arena from the manager, its floors and players will no longer be indexed and its timers are cancelled
+     *
+     * @param arena The arena to remove
+     */
+    public void removeArena(Arena arena) {
+        arenas.remove(arena.getName());
+        arena.cancelTimers();
+        for (Floor floor : arena.getFloors()) {
+            unindexFloor(floor);
+        }
+        playerArenas.values().removeIf(a -> a == arena);
+    }
+
+    /**
+     * Get an arena by its name
+     *
+     * @param name The name of the arena
+     * @return the arena with that name, or null if there isn't one
+     */
+    public Arena getArena(String name) {
+        return arenas.get(name);
+    }
+
+    /**
+     * Get all registered arenas
+     *
+     * @return an unmodifiable view of the registered arenas
+     */
+    public Collection<Arena> getArenas() {
+        return Collections.unmodifiableCollection(arenas.values());
+    }
+
+    /**
+     * Get the arena that a player is currently in
+     *
+     * @param uuid The UUID of the player
+     * @return the arena the player is in, or null if they aren't in an arena
+     */
+    public Arena getPlayerArena(UUID uuid) {
+        return playerArenas.get(uuid);
+    }
+
+    /**
+     * Record that a player is now a member of an arena
+     * This is called by the arena when a player is added
+     *
+     * @param uuid  The UUID of the player
+     * @param arena The arena they have joined
+     */
+    void setPlayerArena(UUID uuid, Arena arena) {
+        playerArenas.put(uuid, arena);
+    }
+
+    /**
+     * Record that a player is no longer in an arena
+     * This is called by the arena when a player is removed
+     *
+     * @param uuid The UUID of the player
+     */
+    void removePlayerArena(UUID uuid) {
+        playerArenas.remove(uuid);
+    }
+
+    /**
+     * Add a floor to the block index so that breaks on it can be routed to its arena
+     *
+     * @param floor The floor to index
+     */
+    void indexFloor(Floor floor) {
+        World world = floor.getWorld();
+        if (world == null)
+            return;
+        LongObjectMap<Floor[]> sections = sectionIndex.computeIfAbsent(world, w -> new LongObjectMap<>());
+        for (long section : floor.getSections()) {
+            Floor[] existing = sections.get(section);
+            if (existing == null) {
+                sections.put(section, new Floor[]{floor});
+            } else if (!Arrays.asList(existing).contains(floor)) {
+                Floor[] updated = Arrays.copyOf(existing, existing.length + 1);
+                updated[existing.length] = floor;
+                sections.put(section, updated);
+            }
+        }
+    }
+
+    /**
+     * Remove a floor from the block index
+     *
+     * @param floor The floor to remove
+     */
+    void unindexFloor(Floor floor) {
+        LongObjectMap<Floor[]> sections = sectionIndex.get(floor.getWorld());
+        if (sections == null)
+            return;
+        for (long section : floor.getSections()) {
+            Floor[] existing = sections.get(section);
+            if (existing == null)
+                continue;
+            Floor[] updated = Arrays.stream(existing).filter(f -> f != floor).toArray(Floor[]::new);
+            if (updated.length == 0) {
+                sections.remove(section);
+            } else {
+                sections.put(section, updated);
+            }
+        }
+    }
+
+    /**
+     * Find the floor that contains the block at the given coordinates
+     *
+     * @param world The world the block is in
+     * @param x     The X coordinate of the block
+     * @param y     The Y coordinate of the block
+     * @param z     The Z coordinate of the block
+     * @return the floor containing this block, or null if the block isn't part of any floor
+     */
+    public Floor getFloorAt(World world, int x, int y, int z) {
+        LongObjectMap<Floor[]> sections = sectionIndex.get(world);
+        if (sections == null)
+            return null;
+        Floor[] floors = sections.get(BlockPositionSet.pack(x >> 4, y >> 4, z >> 4));
+        if (floors == null)
+            return null;
+        for (Floor floor : floors) {
+            if (floor.isBlockOnFloor(x, y, z))
+                return floor;
+        }
+        return null;
+    }
+
+}
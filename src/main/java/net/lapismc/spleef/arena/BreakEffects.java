@@ -0,0 +1,163 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.util.BlockPositionSet;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+
+/**
+ * Plays the particles and sounds for broken floor blocks
+ * Breaks are collected for a tick and then grouped into one burst per 4x4 area of each floor,
+ * bursts are only sent to players near the floor and the number of effect packets per tick is capped
+ */
+public class BreakEffects {
+
+    //Breaks are grouped into cells of 2^CELL_SHIFT blocks along X and Z
+    private static final int CELL_SHIFT = 2;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+    //Particles spawned for each block broken in a cell, and the most particles one burst can have
+    private static final int PARTICLES_PER_BLOCK = 4, MAX_PARTICLES_PER_BURST = 48;
+
+    private final LapisSpleef plugin;
+    //How far from a floor a player can be and still see its effects
+    private final double radius;
+    //The most particle and sound packets that can be sent in one tick
+    private final int maxPacketsPerTick;
+    private final Map<Floor, PendingBreaks> pending = new LinkedHashMap<>();
+    //Reused between flushes to avoid allocating a new list every tick
+    private final List<Player> viewers = new ArrayList<>();
+    private BukkitTask flushTask;
+
+    /**
+     * Initialize the effects pipeline, the radius and packet cap are read from the Effects section of the config
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public BreakEffects(LapisSpleef plugin) {
+        this.plugin = plugin;
+        radius = plugin.getConfig().getDouble("Effects.Radius", 48);
+        maxPacketsPerTick = plugin.getConfig().getInt("Effects.MaxPacketsPerTick", 400);
+    }
+
+    /**
+     * Queue the effects for a broken block, they will be played at the end of the tick
+     *
+     * @param floor    The floor the block was broken on
+     * @param position The packed position of the broken block
+     */
+    public void queue(Floor floor, long position) {
+        pending.computeIfAbsent(floor, f -> new PendingBreaks()).add(position);
+        if (flushTask == null)
+            flushTask = Bukkit.getScheduler().runTask(plugin, this::flush);
+    }
+
+    private void flush() {
+        flushTask = null;
+        int budget = maxPacketsPerTick;
+        for (Map.Entry<Floor, PendingBreaks> entry : pending.entrySet()) {
+            Floor floor = entry.getKey();
+            PendingBreaks breaks = entry.getValue();
+            if (breaks.size == 0)
+                continue;
+            findViewers(floor);
+            if (!viewers.isEmpty())
+                budget = playBursts(floor, breaks, budget);
+            breaks.size = 0;
+        }
+        //Keep the buffers of floors that had breaks this tick, they are likely to have more next tick
+        pending.values().removeIf(breaks -> breaks.idleFlushes++ > 20);
+        viewers.clear();
+    }
+
+    /**
+     * Group the breaks of a floor into cells and send one burst per cell to every viewer
+     *
+     * @return the packet budget left for this tick
+     */
+    private int playBursts(Floor floor, PendingBreaks breaks, int budget) {
+        breaks.idleFlushes = 0;
+        long[] cells = breaks.positions;
+        for (int i = 0; i < breaks.size; i++) {
+            long position = cells[i];
+            cells[i] = BlockPositionSet.pack(BlockPositionSet.unpackX(position) >> CELL_SHIFT,
+                    BlockPositionSet.unpackY(position), BlockPositionSet.unpackZ(position) >> CELL_SHIFT);
+        }
+        Arrays.sort(cells, 0, breaks.size);
+        int packetsPerBurst = viewers.size() * 2;
+        int runStart = 0;
+        for (int i = 1; i <= breaks.size; i++) {
+            if (i < breaks.size && cells[i] == cells[runStart])
+                continue;
+            if (budget < packetsPerBurst)
+                return budget;
+            long cell = cells[runStart];
+            int count = Math.min((i - runStart) * PARTICLES_PER_BLOCK, MAX_PARTICLES_PER_BURST);
+            double x = (BlockPositionSet.unpackX(cell) << CELL_SHIFT) + CELL_SIZE / 2d;
+            double y = BlockPositionSet.unpackY(cell) + .5;
+            double z = (BlockPositionSet.unpackZ(cell) << CELL_SHIFT) + CELL_SIZE / 2d;
+            Location location = new Location(floor.getWorld(), x, y, z);
+            for (Player viewer : viewers) {
+                viewer.spawnParticle(Particle.BLOCK_CRACK, x, y, z, count, CELL_SIZE / 4d, .1, CELL_SIZE / 4d, .1, floor.getBreakData());
+                viewer.playSound(location, floor.getBreakSound(), 1, 1);
+            }
+            budget -= packetsPerBurst;
+            runStart = i;
+        }
+        return budget;
+    }
+
+    /**
+     * Fill the viewers list with the players within the effect radius of the floors bounding box
+     */
+    private void findViewers(Floor floor) {
+        viewers.clear();
+        World world = floor.getWorld();
+        double radiusSquared = radius * radius;
+        for (Player player : world.getPlayers()) {
+            Location location = player.getLocation();
+            double dx = Math.max(0, Math.max(floor.getMinX() - location.getX(), location.getX() - floor.getMaxX() - 1));
+            double dy = Math.max(0, Math.max(floor.getMinY() - location.getY(), location.getY() - floor.getYLevel() - 1));
+            double dz = Math.max(0, Math.max(floor.getMinZ() - location.getZ(), location.getZ() - floor.getMaxZ() - 1));
+            if (dx * dx + dy * dy + dz * dz <= radiusSquared)
+                viewers.add(player);
+        }
+    }
+
+    private static class PendingBreaks {
+
+        private long[] positions = new long[64];
+        private int size;
+        //The number of flushes since this floor last had a break, unused buffers are dropped
+        private int idleFlushes;
+
+        private void add(long position) {
+            if (size == positions.length)
+                positions = Arrays.copyOf(positions, size * 2);
+            positions[size++] = position;
+        }
+
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.metrics.LatencyHistogram;
+import net.lapismc.spleef.util.TimingWheel;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+/**
+ * Runs the decay game mode, where the block under a player crumbles a short time after they first stand on it
+ * Each tick the engine looks at where the alive players of every decaying arena are standing, and adds the block
+ * under them to its floors {@link FloorDecay}, then breaks the blocks that are due
+ * Decayed blocks are broken with {@link Floor#breakBlock(int)}, so they look and sound like any other break
+ */
+public class DecayEngine {
+
+    private final LapisSpleef plugin;
+    //Ticks between a block first being stood on and it breaking
+    private final int decayTicks;
+    //The most blocks each arena can decay in one tick, extra blocks wait for the next tick
+    private final int blocksPerTick;
+    private final LatencyHistogram tickTimer;
+    //The pending decays of each floor, by arena
+    private final Map<Arena, Map<Floor, FloorDecay>> arenas = new LinkedHashMap<>();
+    private TimingWheel.Timer timer;
+    private long currentTick;
+
+    /**
+     * Initialize the decay engine, timings are read from the Decay section of the config
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public DecayEngine(LapisSpleef plugin) {
+        this.plugin = plugin;
+        decayTicks = Math.max(1, plugin.getConfig().getInt("Decay.Ticks", 20));
+        blocksPerTick = Math.max(1, plugin.getConfig().getInt("Decay.BlocksPerTick", 64));
+        tickTimer = plugin.getMetrics().histogram("spleef_decay_tick_seconds", "Time spent decaying floor blocks each tick");
+    }
+
+    /**
+     * Start decaying the floors of an arena, this is called when a game in a decay arena begins
+     *
+     * @param arena The arena whose floors should decay
+     */
+    public void start(Arena arena) {
+        arenas.computeIfAbsent(arena, a -> new HashMap<>());
+        if (timer == null)
+            timer = plugin.getGameLoop().scheduleRepeating(null, 1, 1, this::tick);
+    }
+
+    /**
+     * Stop decaying the floors of an arena and forget its pending blocks, this is called when its game ends
+     *
+     * @param arena The arena to stop
+     */
+    public void stop(Arena arena) {
+        arenas.remove(arena);
+        if (arenas.isEmpty() && timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Get the number of blocks waiting to decay in an arena
+     *
+     * @param arena The arena to check
+     * @return the number of pending blocks
+     */
+    public int getPendingBlocks(Arena arena) {
+        Map<Floor, FloorDecay> floors = arenas.get(arena);
+        if (floors == null)
+            return 0;
+        int pending = 0;
+        for (FloorDecay decay : floors.values()) {
+            pending += decay.size();
+        }
+        return pending;
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        currentTick++;
+        Iterator<Map.Entry<Arena, Map<Floor, FloorDecay>>> it = arenas.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Arena, Map<Floor, FloorDecay>> entry = it.next();
+            Arena arena = entry.getKey();
+            if (arena.getGameState() != GameState.playing) {
+                it.remove();
+                continue;
+            }
+            Map<Floor, FloorDecay> floors = entry.getValue();
+            feed(arena, floors);
+            int budget = blocksPerTick;
+            for (FloorDecay decay : floors.values()) {
+                budget -= decay.breakDue(currentTick, budget);
+                if (budget <= 0)
+                    break;
+            }
+            //Floors with nothing left to decay are dropped until a player stands on them again
+            floors.values().removeIf(FloorDecay::isEmpty);
+        }
+        if (arenas.isEmpty() && timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        tickTimer.recordSince(start);
+    }
+
+    /**
+     * Start the blocks under the alive players of an arena decaying
+     */
+    private void feed(Arena arena, Map<Floor, FloorDecay> floors) {
+        ArenaManager manager = plugin.getArenaManager();
+        for (SpleefPlayer player : arena.getAlivePlayers()) {
+            Player handle = player.getBukkitPlayer();
+            if (handle == null)
+                continue;
+            Location location = handle.getLocation();
+            int x = location.getBlockX(), y = location.getBlockY() - 1, z = location.getBlockZ();
+            Floor floor = manager.getFloorAt(location.getWorld(), x, y, z);
+            if (floor == null || floor.getArena() != arena)
+                continue;
+            int ordinal = floor.getOrdinal(x, y, z);
+            if (ordinal >= 0)
+                floors.computeIfAbsent(floor, FloorDecay::new).add(ordinal, currentTick + decayTicks);
+        }
+    }
+
+}
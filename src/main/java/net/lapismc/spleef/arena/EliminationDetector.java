@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+
+/**
+ * Detects players falling below the elimination height of their arena
+ * Only moves that change a players block Y are looked at, and only players in a playing arena are checked,
+ * so the cost for everyone else on the server is a single comparison
+ * Eliminations are collected and handed to each arena once per tick
+ */
+public class EliminationDetector implements Listener {
+
+    private final LapisSpleef plugin;
+    private final ArenaManager manager;
+    //Players who have fallen this tick, by arena
+    private final Map<Arena, Set<UUID>> pending = new HashMap<>();
+    private BukkitTask flushTask;
+
+    /**
+     * Initialize the detector and register its listener
+     *
+     * @param plugin  The LapisSpleef main class
+     * @param manager The arena manager used to find which arena a player is in
+     */
+    public EliminationDetector(LapisSpleef plugin, ArenaManager manager) {
+        this.plugin = plugin;
+        this.manager = manager;
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Check moves that change a players block Y against the elimination height of their arena
+     *
+     * @param e The player move event being fired
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent e) {
+        Location to = e.getTo();
+        //Most moves don't change block Y, so they can't have crossed the elimination height
+        if (to == null || e.getFrom().getBlockY() == to.getBlockY())
+            return;
+        Arena arena = manager.getPlayerArena(e.getPlayer().getUniqueId());
+        if (arena == null || arena.getGameState() != GameState.playing)
+            return;
+        if (to.getY() < arena.getEliminationHeight())
+            eliminate(arena, e.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Queue a player to be eliminated at the end of this tick
+     *
+     * @param arena The arena the player is in
+     * @param uuid  The UUID of the player
+     */
+    public void eliminate(Arena arena, UUID uuid) {
+        pending.computeIfAbsent(arena, a -> new HashSet<>()).add(uuid);
+        if (flushTask == null)
+            flushTask = Bukkit.getScheduler().runTask(plugin, this::flush);
+    }
+
+    /**
+     * Get the number of players waiting to be eliminated
+     *
+     * @return the number of queued eliminations
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (Set<UUID> uuids : pending.values()) {
+            count += uuids.size();
+        }
+        return count;
+    }
+
+    private void flush() {
+        flushTask = null;
+        Map<Arena, Set<UUID>> eliminations = new HashMap<>(pending);
+        pending.clear();
+        eliminations.forEach(Arena::eliminatePlayers);
+    }
+
+}
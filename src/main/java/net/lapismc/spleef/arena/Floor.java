@@ -16,13 +16,19 @@
 
 package net.lapismc.spleef.arena;
 
+import net.lapismc.spleef.util.BlockPositionSet;
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A class to represent the floors of a spleef arena
@@ -32,12 +38,31 @@ import java.util.List;
  */
 public class Floor {
 
+    //The number of spawn points planned when a floor is first asked for them
+    private static final int DEFAULT_SPAWN_PLAN_SIZE = 64;
+
     //The arena that this floor belongs too
     private final Arena arena;
-    //The block contained in this floor
-    private final List<Block> blocks;
+    //The world that the blocks of this floor are in
+    private final World world;
+    //The positions of the blocks contained in this floor, Block objects are only created when they are needed
+    private final BlockPositionSet blocks;
     //The material that the blocks of the floor are made from
     private final Material material;
+    //The ordinals of blocks that have been broken since the floor was last regenerated
+    private final BitSet brokenBlocks;
+    private int brokenCount;
+    //The bounding box of the floor, calculated once when the floor is built
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+    //The packed keys of every chunk and 16x16x16 chunk section that contains a block of this floor
+    private final long[] chunks, sections;
+    //Block data and break sound of the floor material, created once when the first block breaks
+    private BlockData breakData;
+    private Sound breakSound;
+    //Cached spawn plan, the first N entries are the spawn points for N players, see SpawnPlanner
+    private volatile int[] spawnPlan = new int[0];
+    //Set while an async task is planning spawn points, so players joining together only start one plan
+    private final AtomicBoolean planning = new AtomicBoolean();
 
     /**
      * @param arena    The arena that this floor belongs too
@@ -45,9 +70,58 @@ public class Floor {
      * @param material The material that the floor should regenerate too
      */
     public Floor(Arena arena, List<Block> blocks, Material material) {
+        this(arena, blocks.isEmpty() ? null : blocks.get(0).getWorld(), packBlocks(blocks), material);
+    }
+
+    /**
+     * @param arena     The arena that this floor belongs too
+     * @param world     The world that the blocks of this floor are in
+     * @param positions The packed positions of the blocks contained by this floor, see {@link BlockPositionSet#pack(int, int, int)}
+     * @param material  The material that the floor should regenerate too
+     */
+    public Floor(Arena arena, World world, long[] positions, Material material) {
         this.arena = arena;
-        this.blocks = blocks;
+        this.world = world;
+        this.blocks = new BlockPositionSet(positions.length);
+        for (long position : positions) {
+            this.blocks.add(position);
+        }
         this.material = material;
+        this.brokenBlocks = new BitSet(this.blocks.size());
+        //Work out the geometry of the floor once so that it never needs to be scanned again
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        BlockPositionSet chunkSet = new BlockPositionSet();
+        BlockPositionSet sectionSet = new BlockPositionSet();
+        for (int i = 0; i < blocks.size(); i++) {
+            long packed = blocks.get(i);
+            int x = BlockPositionSet.unpackX(packed), y = BlockPositionSet.unpackY(packed), z = BlockPositionSet.unpackZ(packed);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+            chunkSet.add(BlockPositionSet.pack(x >> 4, 0, z >> 4));
+            sectionSet.add(BlockPositionSet.pack(x >> 4, y >> 4, z >> 4));
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.chunks = chunkSet.toArray();
+        this.sections = sectionSet.toArray();
+    }
+
+    private static long[] packBlocks(List<Block> blocks) {
+        long[] positions = new long[blocks.size()];
+        for (int i = 0; i < positions.length; i++) {
+            Block b = blocks.get(i);
+            positions[i] = BlockPositionSet.pack(b.getX(), b.getY(), b.getZ());
+        }
+        return positions;
     }
 
     /**
@@ -57,7 +131,112 @@ public class Floor {
      * @return True if the block is on this floor, otherwise false
      */
     public boolean isBlockOnFloor(Block b) {
-        return blocks.contains(b);
+        return b.getWorld().equals(world) && isBlockOnFloor(b.getX(), b.getY(), b.getZ());
+    }
+
+    /**
+     * Check if the block at the given coordinates is contained on this floor
+     * This doesn't check the world, so it should only be used once you know the coordinates are in this floors world
+     *
+     * @param x The X coordinate of the block
+     * @param y The Y coordinate of the block
+     * @param z The Z coordinate of the block
+     * @return True if the block is on this floor, otherwise false
+     */
+    public boolean isBlockOnFloor(int x, int y, int z) {
+        //Reject anything outside the bounding box before probing the block set
+        return isInBounds(x, y, z) && blocks.contains(BlockPositionSet.pack(x, y, z));
+    }
+
+    /**
+     * Get the ordinal of the block at the given coordinates, the world isn't checked
+     *
+     * @param x The X coordinate of the block
+     * @param y The Y coordinate of the block
+     * @param z The Z coordinate of the block
+     * @return the index of the block within this floor, or -1 if it isn't on this floor
+     */
+    public int getOrdinal(int x, int y, int z) {
+        return isInBounds(x, y, z) ? blocks.indexOf(BlockPositionSet.pack(x, y, z)) : -1;
+    }
+
+    /**
+     * Check if the given coordinates are inside the bounding box of this floor
+     *
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @param z The Z coordinate
+     * @return true if the coordinates are within the floors bounding box
+     */
+    public boolean isInBounds(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * Get the Bukkit block for a block on this floor
+     *
+     * @param ordinal The index of the block within this floor
+     * @return the Block at that position in the world
+     */
+    public Block getBlock(int ordinal) {
+        long packed = blocks.get(ordinal);
+        return world.getBlockAt(BlockPositionSet.unpackX(packed), BlockPositionSet.unpackY(packed),
+                BlockPositionSet.unpackZ(packed));
+    }
+
+    /**
+     * Get the packed position of a block on this floor, see {@link BlockPositionSet#pack(int, int, int)}
+     *
+     * @param ordinal The index of the block within this floor
+     * @return the packed position of the block
+     */
+    public long getPosition(int ordinal) {
+        return blocks.get(ordinal);
+    }
+
+    /**
+     * Get the packed positions of every block in this floor
+     *
+     * @return a copy of the packed positions in ordinal order
+     */
+    public long[] getPositions() {
+        return blocks.toArray();
+    }
+
+    /**
+     * Get the number of blocks in this floor
+     *
+     * @return the number of blocks contained by this floor
+     */
+    public int getSize() {
+        return blocks.size();
+    }
+
+    /**
+     * Get the arena that this floor belongs to
+     *
+     * @return the arena this floor is part of
+     */
+    public Arena getArena() {
+        return arena;
+    }
+
+    /**
+     * Get the material that this floor regenerates to
+     *
+     * @return the material of the floor
+     */
+    public Material getMaterial() {
+        return material;
+    }
+
+    /**
+     * Get the world that this floor is in
+     *
+     * @return the world containing the blocks of this floor, or null if the floor has no blocks
+     */
+    public World getWorld() {
+        return world;
     }
 
     /**
@@ -68,60 +247,388 @@ public class Floor {
      */
     public void breakBlock(Block b) {
         //Don't break it if it isn't on our floor
-        if (!isBlockOnFloor(b))
+        if (!b.getWorld().equals(world))
+            return;
+        int ordinal = blocks.indexOf(BlockPositionSet.pack(b.getX(), b.getY(), b.getZ()));
+        if (ordinal < 0)
             return;
+        breakBlock(ordinal, b);
+    }
+
+    /**
+     * Break a block on this floor by its ordinal
+     * Spawns particles and plays sound like it was naturally broken
+     *
+     * @param ordinal The index of the block within this floor
+     */
+    public void breakBlock(int ordinal) {
+        breakBlock(ordinal, getBlock(ordinal));
+    }
+
+    private void breakBlock(int ordinal, Block b) {
+        long start = System.nanoTime();
+        //Record the break so that regeneration only needs to restore this block
+        markBroken(ordinal);
         //Set block to air
         b.setType(Material.AIR);
-        //Display the block break particles
-        b.getWorld().spawnParticle(Particle.BLOCK_CRACK, b.getLocation().add(.5, .5, .5), 1, 1, .1, .1, .1, material.createBlockData());
-        //Play block break sound
-        b.getWorld().playSound(b.getLocation(), material.createBlockData().getSoundGroup().getBreakSound(), 1, 1);
+        //Queue the particles and sound, these are grouped with other breaks at the end of the tick
+        if (arena != null) {
+            arena.getPlugin().getBreakEffects().queue(this, blocks.get(ordinal));
+            if (arena.getRecording() != null)
+                arena.getRecording().blockBreak(this, ordinal);
+            arena.getMetrics().getBlocksBroken().increment();
+            arena.getMetrics().getFloorBreak().recordSince(start);
+        }
     }
 
     /**
-     * Set all block on this floor back to the default material
+     * Find the intact blocks of this floor within a radius of a column, the area is clipped to the floors bounding box
+     * and each candidate is a single probe of the block index, so the cost depends on the radius and not the floor size
+     *
+     * @param x      The X coordinate of the centre of the area
+     * @param z      The Z coordinate of the centre of the area
+     * @param radius The number of blocks the area reaches from its centre
+     * @param round  true to find a circle, false to find a square
+     * @param out    The set that the ordinals of intact blocks are added to
+     * @return the number of blocks added
+     */
+    public int findIntactBlocks(int x, int z, int radius, boolean round, BitSet out) {
+        int radiusSquared = radius * radius + radius;
+        int found = 0;
+        for (int bx = Math.max(minX, x - radius); bx <= Math.min(maxX, x + radius); bx++) {
+            int dx = bx - x;
+            for (int bz = Math.max(minZ, z - radius); bz <= Math.min(maxZ, z + radius); bz++) {
+                int dz = bz - z;
+                if (round && dx * dx + dz * dz > radiusSquared)
+                    continue;
+                for (int by = minY; by <= maxY; by++) {
+                    int ordinal = blocks.indexOf(BlockPositionSet.pack(bx, by, bz));
+                    if (ordinal >= 0 && !brokenBlocks.get(ordinal) && !out.get(ordinal)) {
+                        out.set(ordinal);
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Break a batch of blocks on this floor as one change
+     * Physics updates are skipped and the break effects are queued together, so they are grouped into bursts
+     * Blocks that are already broken are skipped
+     *
+     * @param ordinals The ordinals of the blocks to break, they are cleared from the set as they are broken
+     * @param limit    The most blocks to break, the rest are left in the set
+     * @return the number of blocks that were broken
+     */
+    public int breakBlocks(BitSet ordinals, int limit) {
+        long start = System.nanoTime();
+        int broken = 0;
+        int ordinal = ordinals.nextSetBit(0);
+        while (ordinal >= 0 && broken < limit) {
+            ordinals.clear(ordinal);
+            if (!brokenBlocks.get(ordinal)) {
+                markBroken(ordinal);
+                getBlock(ordinal).setType(Material.AIR, false);
+                if (arena != null) {
+                    arena.getPlugin().getBreakEffects().queue(this, blocks.get(ordinal));
+                    if (arena.getRecording() != null)
+                        arena.getRecording().blockBreak(this, ordinal);
+                }
+                broken++;
+            }
+            ordinal = ordinals.nextSetBit(ordinal + 1);
+        }
+        if (arena != null && broken > 0) {
+            arena.getMetrics().getBlocksBroken().add(broken);
+            arena.getMetrics().getFloorBreak().recordSince(start);
+        }
+        return broken;
+    }
+
+    /**
+     * Get the block data of this floors material, used for break particles
+     *
+     * @return the cached block data of the floor material
+     */
+    public BlockData getBreakData() {
+        if (breakData == null)
+            breakData = material.createBlockData();
+        return breakData;
+    }
+
+    /**
+     * Get the sound played when a block of this floor breaks
+     *
+     * @return the cached break sound of the floor material
+     */
+    public Sound getBreakSound() {
+        if (breakSound == null)
+            breakSound = getBreakData().getSoundGroup().getBreakSound();
+        return breakSound;
+    }
+
+    /**
+     * Set all broken blocks on this floor back to the default material
+     * This restores the whole floor in one go, large floors should be queued with the {@link RegenerationScheduler} instead
      */
     public void regenerateFloor() {
-        for (Block b : blocks) {
+        restoreBlocks(brokenCount);
+    }
+
+    /**
+     * Set some of the broken blocks on this floor back to the default material
+     * This is used by the {@link RegenerationScheduler} to restore a floor a slice at a time
+     *
+     * @param limit The maximum number of blocks to restore
+     * @return the number of blocks that were restored
+     */
+    public int restoreBlocks(int limit) {
+        long start = System.nanoTime();
+        int restored = 0;
+        int ordinal = brokenBlocks.nextSetBit(0);
+        while (ordinal >= 0 && restored < limit) {
             //Set each block back to the original material
-            b.setType(material);
+            getBlock(ordinal).setType(material);
             //TODO: might be cool to spawn particles in here
+            brokenBlocks.clear(ordinal);
+            restored++;
+            ordinal = brokenBlocks.nextSetBit(ordinal + 1);
+        }
+        brokenCount -= restored;
+        if (arena != null) {
+            arena.getMetrics().getBlocksRestored().add(restored);
+            arena.getMetrics().getFloorRegenerate().recordSince(start);
+        }
+        return restored;
+    }
+
+    /**
+     * Set some of the intact blocks on this floor to air, this is used to tear down arena instances a slice at a time
+     * Cleared blocks are marked as broken, so the floor is fully cleared once every block is broken
+     *
+     * @param limit The maximum number of blocks to clear
+     * @return the number of blocks that were cleared
+     */
+    public int clearBlocks(int limit) {
+        int cleared = 0;
+        int ordinal = brokenBlocks.nextClearBit(0);
+        while (ordinal < blocks.size() && cleared < limit) {
+            getBlock(ordinal).setType(Material.AIR);
+            markBroken(ordinal);
+            cleared++;
+            ordinal = brokenBlocks.nextClearBit(ordinal + 1);
+        }
+        return cleared;
+    }
+
+    /**
+     * Create a copy of this floor moved by an offset, used to stamp out arena instances
+     * Every block of the copy starts marked as broken, so regenerating it builds the floor in the world
+     *
+     * @param arena   The arena the copy belongs to
+     * @param offsetX The number of blocks to move the copy along the X axis
+     * @param offsetY The number of blocks to move the copy along the Y axis
+     * @param offsetZ The number of blocks to move the copy along the Z axis
+     * @return the new floor
+     */
+    public Floor copy(Arena arena, int offsetX, int offsetY, int offsetZ) {
+        long[] positions = new long[blocks.size()];
+        for (int i = 0; i < positions.length; i++) {
+            long packed = blocks.get(i);
+            positions[i] = BlockPositionSet.pack(BlockPositionSet.unpackX(packed) + offsetX,
+                    BlockPositionSet.unpackY(packed) + offsetY, BlockPositionSet.unpackZ(packed) + offsetZ);
         }
+        Floor copy = new Floor(arena, world, positions, material);
+        copy.markAllBroken();
+        return copy;
     }
 
     /**
-     * Generate evenly spaced spawn points along the blocks of this floor
+     * Record that a block on this floor has been broken and needs to be restored
+     *
+     * @param ordinal The index of the block within this floor
+     */
+    public void markBroken(int ordinal) {
+        if (!brokenBlocks.get(ordinal)) {
+            brokenBlocks.set(ordinal);
+            brokenCount++;
+        }
+    }
+
+    /**
+     * Mark every block on this floor as broken, so that the next regeneration restores the entire floor
+     * This should be used when the state of the blocks in the world isn't known, e.g. when a floor is first loaded
+     */
+    public void markAllBroken() {
+        brokenBlocks.set(0, blocks.size());
+        brokenCount = blocks.size();
+    }
+
+    /**
+     * Check if a block on this floor has been broken since the floor was last regenerated
+     *
+     * @param ordinal The index of the block within this floor
+     * @return true if the block has been broken
+     */
+    public boolean isBroken(int ordinal) {
+        return brokenBlocks.get(ordinal);
+    }
+
+    /**
+     * Get the number of blocks that have been broken since the floor was last regenerated
+     *
+     * @return the number of broken blocks
+     */
+    public int getBrokenCount() {
+        return brokenCount;
+    }
+
+    /**
+     * Get the percentage of this floor that is still intact, this is cheap enough to be used for scoreboards
+     *
+     * @return a value between 0 and 100 for how much of the floor remains
+     */
+    public double getRemainingPercentage() {
+        if (blocks.isEmpty())
+            return 0;
+        return (blocks.size() - brokenCount) * 100d / blocks.size();
+    }
+
+    /**
+     * Generate evenly spaced spawn points over the area of this floor
+     * The layout is cached, so this only does geometry work the first time a floor needs this many spawn points
      *
      * @param numberOfPlayers The number of players who need spawn points
-     * @return a list of locations evenly spaced over the entirety of the blocks in the floor
+     * @return a list of locations evenly spaced over the entirety of the blocks in the floor, one per player
      */
     public List<Location> generateSpawnPoints(int numberOfPlayers) {
         List<Location> spawnPoints = new ArrayList<>();
-        //Calculate the number of blocks between players
-        int gap = blocks.size() / numberOfPlayers;
-        //Calculate a spawn point per player
-        for (int i = 1; i < numberOfPlayers; i++) {
-            //Get the block spaced for this player by multiplying the gap by this players index
-            //Then add 1 in the y-axis to get a location above the block
-            spawnPoints.add(blocks.get(gap * i).getLocation().add(0, 1, 0));
+        int[] plan = planSpawnPoints(numberOfPlayers);
+        if (plan.length == 0)
+            return spawnPoints;
+        for (int i = 0; i < numberOfPlayers; i++) {
+            //If there are more players than blocks then players will have to share
+            long packed = blocks.get(plan[i % plan.length]);
+            //Spawn in the middle of the block, 1 block above it
+            spawnPoints.add(new Location(world, BlockPositionSet.unpackX(packed) + .5, BlockPositionSet.unpackY(packed) + 1,
+                    BlockPositionSet.unpackZ(packed) + .5));
         }
         return spawnPoints;
     }
 
+    /**
+     * Make sure a spawn plan for the given number of players is cached
+     * This only reads the floors block positions, so it can be called from an async task to prepare for a game in advance
+     *
+     * @param numberOfPlayers The number of players to plan for
+     * @return the ordinals of the spawn blocks, the first numberOfPlayers entries are the plan for that many players
+     */
+    public int[] planSpawnPoints(int numberOfPlayers) {
+        int[] plan = spawnPlan;
+        int needed = Math.min(numberOfPlayers, blocks.size());
+        if (plan.length < needed) {
+            //Plan for at least a full lobby so that small changes in player count don't need a new plan
+            plan = SpawnPlanner.plan(blocks, Math.max(needed, DEFAULT_SPAWN_PLAN_SIZE));
+            spawnPlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Plan spawn points for the given number of players in an async task so starting the game doesn't need to
+     * Nothing is scheduled if the cached plan already covers that many players or another task is already planning
+     *
+     * @param numberOfPlayers The number of players to plan for
+     */
+    void planSpawnPointsAsync(int numberOfPlayers) {
+        if (spawnPlan.length >= Math.min(numberOfPlayers, blocks.size()) || !planning.compareAndSet(false, true))
+            return;
+        try {
+            Bukkit.getScheduler().runTaskAsynchronously(arena.getPlugin(), () -> {
+                try {
+                    planSpawnPoints(numberOfPlayers);
+                } finally {
+                    planning.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            planning.set(false);
+            throw e;
+        }
+    }
+
     /**
      * Get the Y level of this floor, returns the highest Y level on the floor
      *
      * @return the highest Y level of a block on the floor
      */
     public int getYLevel() {
-        int highestY = 0;
-        for (Block b : blocks) {
-            int y = b.getY();
-            if (highestY < y) {
-                highestY = y;
-            }
-        }
-        return highestY;
+        return maxY;
+    }
+
+    /**
+     * Get the lowest Y level of a block on this floor
+     *
+     * @return the lowest Y level of a block on the floor
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Get the smallest X coordinate of a block on this floor
+     *
+     * @return the minimum X of the floors bounding box
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Get the smallest Z coordinate of a block on this floor
+     *
+     * @return the minimum Z of the floors bounding box
+     */
+    public int getMinZ() {
+        return minZ;
+    }
+
+    /**
+     * Get the largest X coordinate of a block on this floor
+     *
+     * @return the maximum X of the floors bounding box
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the largest Z coordinate of a block on this floor
+     *
+     * @return the maximum Z of the floors bounding box
+     */
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    /**
+     * Get the chunks that contain blocks of this floor
+     *
+     * @return the packed chunk X and Z of each chunk, unpack with {@link BlockPositionSet#unpackX(long)} and {@link BlockPositionSet#unpackZ(long)}
+     */
+    public long[] getChunks() {
+        return chunks.clone();
+    }
+
+    /**
+     * Get the 16x16x16 chunk sections that contain blocks of this floor
+     *
+     * @return the packed section coordinates of each section
+     */
+    public long[] getSections() {
+        return sections.clone();
     }
 
 }
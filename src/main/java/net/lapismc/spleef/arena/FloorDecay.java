@@ -0,0 +1,115 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import java.util.BitSet;
+
+/**
+ * The blocks of one floor that are waiting to decay
+ * Every block decays the same number of ticks after it is first stood on, so entries are due in the order they were added
+ * and a ring buffer of ordinals and deadlines works as the timing structure, adding and taking entries are both O(1)
+ * A block can only be pending once, standing on it again doesn't reset its timer
+ */
+class FloorDecay {
+
+    private final Floor floor;
+    //Ring buffer of block ordinals and the tick each one decays on
+    private int[] ordinals = new int[16];
+    private long[] deadlines = new long[16];
+    private int head, size;
+    //The ordinals that are in the ring buffer, used to ignore blocks that are already decaying
+    private final BitSet pending;
+
+    FloorDecay(Floor floor) {
+        this.floor = floor;
+        pending = new BitSet(floor.getSize());
+    }
+
+    /**
+     * Start a block decaying, nothing happens if it is already decaying or broken
+     *
+     * @param ordinal  The ordinal of the block
+     * @param deadline The tick the block should break on
+     */
+    void add(int ordinal, long deadline) {
+        if (pending.get(ordinal) || floor.isBroken(ordinal))
+            return;
+        pending.set(ordinal);
+        if (size == ordinals.length)
+            grow();
+        int tail = (head + size) & (ordinals.length - 1);
+        ordinals[tail] = ordinal;
+        deadlines[tail] = deadline;
+        size++;
+    }
+
+    /**
+     * Break the blocks that are due, oldest first
+     *
+     * @param now    The current tick
+     * @param budget The most blocks that can be broken
+     * @return the number of blocks that were broken
+     */
+    int breakDue(long now, int budget) {
+        int broken = 0;
+        while (size > 0 && broken < budget && deadlines[head] <= now) {
+            int ordinal = ordinals[head];
+            head = (head + 1) & (ordinals.length - 1);
+            size--;
+            pending.clear(ordinal);
+            //The block may have been broken by a player while it was decaying
+            if (!floor.isBroken(ordinal)) {
+                floor.breakBlock(ordinal);
+                broken++;
+            }
+        }
+        return broken;
+    }
+
+    /**
+     * Check if any block is waiting to decay
+     *
+     * @return true if nothing is pending
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the number of blocks waiting to decay
+     *
+     * @return the number of pending blocks
+     */
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        //Unroll the ring so the oldest entry is first again
+        int[] newOrdinals = new int[ordinals.length * 2];
+        long[] newDeadlines = new long[deadlines.length * 2];
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) & (ordinals.length - 1);
+            newOrdinals[i] = ordinals[index];
+            newDeadlines[i] = deadlines[index];
+        }
+        ordinals = newOrdinals;
+        deadlines = newDeadlines;
+        head = 0;
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.util.TimingWheel;
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts queued players into any arena with room for them
+ * Join requests are collected in a queue and assigned once per tick, each tick ranks the open arenas once
+ * so the cost of a tick grows with the number of assignments rather than queued players multiplied by arenas
+ * When every open arena is full, extra instances are requested from the {@link ArenaInstancePool}
+ * The tick only runs on the game loop while players are queued or instances are being built for them
+ */
+public class MatchmakingService implements Listener {
+
+    //The number of recent queue wait times kept for percentiles
+    private static final int WAIT_SAMPLES = 1024;
+    //Arenas closest to full first so that games start as soon as possible, then the arena with the most players
+    private static final Comparator<Arena> MOST_FULL_FIRST = Comparator
+            .comparingDouble((Arena arena) -> (double) arena.getPlayers().size() / arena.getMaxPlayers()).reversed()
+            .thenComparing(Comparator.comparingInt((Arena arena) -> arena.getPlayers().size()).reversed());
+
+    private final LapisSpleef plugin;
+    //How many ticks an arena waits after reaching its minimum players before the game starts
+    private final long startDelay;
+    //Join requests in the order they were made, requests that have been cancelled are skipped when they reach the front
+    private final ArrayDeque<QueuedPlayer> queue = new ArrayDeque<>();
+    //The current request of each queued player
+    private final Map<UUID, QueuedPlayer> queued = new HashMap<>();
+    //Player slots in instances that have been requested but aren't ready yet
+    private int pendingCapacity;
+    //Ring buffer of recent wait times in nanoseconds
+    private final long[] waitTimes = new long[WAIT_SAMPLES];
+    private int waitIndex;
+    private int waitCount;
+    //The game loop timer that runs the matchmaking tick, null while there is nothing to match
+    private TimingWheel.Timer timer;
+
+    /**
+     * Start the matchmaking service, the start delay is read from Matchmaking.StartDelay in the config
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public MatchmakingService(LapisSpleef plugin) {
+        this.plugin = plugin;
+        startDelay = 20L * plugin.getConfig().getInt("Matchmaking.StartDelay", 10);
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Add a player to the queue, they will be put in an arena on the next tick that one has room
+     *
+     * @param uuid The UUID of the player
+     * @return false if the player is already queued, in an arena or has a stored inventory that couldn't be given back
+     */
+    public boolean enqueue(UUID uuid) {
+        if (queued.containsKey(uuid) || plugin.getArenaManager().getPlayerArena(uuid) != null
+                || plugin.getSpleefPlayer(uuid).hasStoredInventory())
+            return false;
+        QueuedPlayer request = new QueuedPlayer(uuid, System.nanoTime());
+        queued.put(uuid, request);
+        queue.add(request);
+        if (timer == null)
+            timer = plugin.getGameLoop().scheduleRepeating(null, 1, 1, this::tick);
+        return true;
+    }
+
+    /**
+     * Remove a player from the queue
+     *
+     * @param uuid The UUID of the player
+     * @return false if the player wasn't queued
+     */
+    public boolean dequeue(UUID uuid) {
+        //The request is left in the queue and skipped when it reaches the front
+        return queued.remove(uuid) != null;
+    }
+
+    /**
+     * Check if a player is waiting in the queue
+     *
+     * @param uuid The UUID of the player
+     * @return true if the player is queued
+     */
+    public boolean isQueued(UUID uuid) {
+        return queued.containsKey(uuid);
+    }
+
+    /**
+     * Get the number of players waiting in the queue
+     *
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return queued.size();
+    }
+
+    /**
+     * Get a percentile of the time recent players spent in the queue before being put in an arena
+     *
+     * @param percentile The percentile to get, between 0 and 100
+     * @return the wait time in milliseconds, or -1 if nobody has been through the queue yet
+     */
+    public long getWaitPercentile(double percentile) {
+        if (waitCount == 0)
+            return -1;
+        long[] sorted = Arrays.copyOf(waitTimes, waitCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * waitCount) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, Math.min(waitCount - 1, index))]);
+    }
+
+    /**
+     * Remove players from the queue when they leave the server
+     *
+     * @param e The player quit event being fired
+     */
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent e) {
+        dequeue(e.getPlayer().getUniqueId());
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        if (!queued.isEmpty())
+            assign(now);
+        //Stop ticking until someone queues again, instances still being built only need ticks while players wait for them
+        if (queued.isEmpty() && pendingCapacity == 0 && timer != null) {
+            queue.clear();
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Put as many queued players as possible into open arenas, then request instances for the players left over
+     */
+    private void assign(long now) {
+        PriorityQueue<Arena> open = new PriorityQueue<>(MOST_FULL_FIRST);
+        for (Arena arena : plugin.getArenaManager().getArenas()) {
+            if (isOpen(arena))
+                open.add(arena);
+        }
+        while (!open.isEmpty() && !queue.isEmpty()) {
+            QueuedPlayer request = queue.poll();
+            //Skip requests that were cancelled, or replaced by the player queueing again
+            if (queued.get(request.uuid) != request)
+                continue;
+            queued.remove(request.uuid);
+            if (Bukkit.getPlayer(request.uuid) == null || plugin.getArenaManager().getPlayerArena(request.uuid) != null)
+                continue;
+            Arena arena = open.poll();
+            if (!arena.addPlayer(plugin.getSpleefPlayer(request.uuid))) {
+                open.add(arena);
+                continue;
+            }
+            recordWait(now - request.queuedAt);
+            //Full arenas start straight away, otherwise the arena starts its game once the delay is over
+            if (arena.getPlayers().size() >= arena.getMaxPlayers()) {
+                arena.startGame();
+            } else if (arena.getPlayers().size() >= arena.getMinPlayers()) {
+                arena.scheduleStart(startDelay);
+            }
+            //Its fill level has changed, so it is re-ranked if there is still room
+            if (isOpen(arena))
+                open.add(arena);
+        }
+        //Drop cancelled requests from the front so the queue doesn't hold onto them
+        while (!queue.isEmpty() && queued.get(queue.peek().uuid) != queue.peek())
+            queue.poll();
+        int unassigned = queued.size() - pendingCapacity;
+        if (unassigned > 0)
+            requestInstances(unassigned);
+    }
+
+    /**
+     * Request enough instances to fit the players who couldn't be put in an arena
+     */
+    private void requestInstances(int players) {
+        for (Arena template : plugin.getArenaManager().getArenas()) {
+            if (template.getTemplate() != null || template.getFloors().isEmpty() || template.getLobbySpawn() == null)
+                continue;
+            int capacity = template.getMaxPlayers();
+            while (players > 0) {
+                pendingCapacity += capacity;
+                //Instances are picked up by the next tick once they are open, so there is nothing to do with them here
+                if (!plugin.getInstancePool().acquire(template, instance -> pendingCapacity -= capacity)) {
+                    pendingCapacity -= capacity;
+                    break;
+                }
+                players -= capacity;
+            }
+            if (players <= 0)
+                return;
+        }
+    }
+
+    private boolean isOpen(Arena arena) {
+        return arena.getGameState() == GameState.waiting && arena.getPlayers().size() < arena.getMaxPlayers();
+    }
+
+    private void recordWait(long nanos) {
+        waitTimes[waitIndex] = nanos;
+        waitIndex = (waitIndex + 1) % WAIT_SAMPLES;
+        if (waitCount < WAIT_SAMPLES)
+            waitCount++;
+    }
+
+    private static class QueuedPlayer {
+
+        private final UUID uuid;
+        private final long queuedAt;
+
+        private QueuedPlayer(UUID uuid, long queuedAt) {
+            this.uuid = uuid;
+            this.queuedAt = queuedAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regenerates the broken blocks of arena floors a slice at a time so that large floors don't cause lag spikes
+ * Each tick blocks are restored until the configured time budget has been used, arenas with players waiting
+ * in their lobby are served first and arenas with the same priority take turns
+ */
+public class RegenerationScheduler {
+
+    //The number of blocks restored before the time budget is checked again
+    private static final int SLICE_SIZE = 64;
+
+    private final LapisSpleef plugin;
+    private final List<Job> jobs = new ArrayList<>();
+    //Nanoseconds per tick that can be spent restoring blocks
+    private final long tickBudget;
+    private BukkitTask task;
+    //Incremented every time a job is served, used to give arenas turns in a round-robin order
+    private long serveCount;
+
+    /**
+     * Initialize the scheduler, the tick budget is read from the Regeneration.TickBudget config value
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public RegenerationScheduler(LapisSpleef plugin) {
+        this.plugin = plugin;
+        tickBudget = plugin.getConfig().getLong("Regeneration.TickBudget", 2_000_000L);
+        plugin.tasks.addShutdownTask(this::finishAll);
+    }
+
+    /**
+     * Queue all floors of an arena for regeneration, any regeneration already queued for the arena is replaced
+     *
+     * @param arena      The arena whose floors should be restored
+     * @param onComplete A task to run once every floor has been fully restored
+     */
+    public void regenerate(Arena arena, Runnable onComplete) {
+        schedule(new Job(arena, onComplete, false));
+    }
+
+    /**
+     * Queue all floors of an arena to be cleared to air, this is used to tear down arena instances
+     * Any regeneration already queued for the arena is replaced
+     *
+     * @param arena      The arena whose floors should be removed from the world
+     * @param onComplete A task to run once every floor has been cleared
+     */
+    public void clear(Arena arena, Runnable onComplete) {
+        schedule(new Job(arena, onComplete, true));
+    }
+
+    private void schedule(Job job) {
+        cancel(job.arena);
+        jobs.add(job);
+        if (task == null)
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+    }
+
+    /**
+     * Check if an arena still has floors waiting to be restored
+     *
+     * @param arena The arena to check
+     * @return true if the arena is queued for regeneration
+     */
+    public boolean isRegenerating(Arena arena) {
+        for (Job job : jobs) {
+            if (job.arena == arena)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stop regenerating an arena, the completion task will not be run
+     *
+     * @param arena The arena to stop regenerating
+     */
+    public void cancel(Arena arena) {
+        jobs.removeIf(job -> job.arena == arena);
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        while (!jobs.isEmpty() && System.nanoTime() - start < tickBudget) {
+            Job job = nextJob();
+            job.lastServed = ++serveCount;
+            if (job.restore(SLICE_SIZE)) {
+                jobs.remove(job);
+                job.onComplete.run();
+            }
+        }
+        if (jobs.isEmpty() && task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Pick the job to serve next, arenas with more players waiting go first,
+     * then the arena that has waited longest since its last slice
+     */
+    private Job nextJob() {
+        Job best = null;
+        int bestPriority = 0;
+        for (Job job : jobs) {
+            int priority = job.arena.getPlayers().size();
+            if (best == null || priority > bestPriority || (priority == bestPriority && job.lastServed < best.lastServed)) {
+                best = job;
+                bestPriority = priority;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Restore everything that is still queued, used on shutdown so that arenas aren't left broken
+     */
+    private void finishAll() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        List<Job> remaining = new ArrayList<>(jobs);
+        jobs.clear();
+        for (Job job : remaining) {
+            job.restore(Integer.MAX_VALUE);
+        }
+    }
+
+    private static class Job {
+
+        private final Arena arena;
+        private final List<Floor> floors;
+        private final Runnable onComplete;
+        //True if the floors are being cleared to air rather than restored
+        private final boolean clear;
+        private int floorIndex;
+        private long lastServed;
+
+        private Job(Arena arena, Runnable onComplete, boolean clear) {
+            this.arena = arena;
+            this.floors = new ArrayList<>(arena.getFloors());
+            this.onComplete = onComplete;
+            this.clear = clear;
+        }
+
+        /**
+         * Restore, or clear, up to the given number of blocks
+         *
+         * @return true once every floor of the arena has been restored or cleared
+         */
+        private boolean restore(int limit) {
+            while (limit > 0 && floorIndex < floors.size()) {
+                Floor floor = floors.get(floorIndex);
+                if (clear) {
+                    limit -= floor.clearBlocks(limit);
+                    if (floor.getBrokenCount() == floor.getSize())
+                        floorIndex++;
+                } else {
+                    limit -= floor.restoreBlocks(limit);
+                    if (floor.getBrokenCount() == 0)
+                        floorIndex++;
+                }
+            }
+            return floorIndex >= floors.size();
+        }
+
+    }
+
+}
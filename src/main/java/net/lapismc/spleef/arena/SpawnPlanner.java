@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.util.BlockPositionSet;
+
+import java.util.Arrays;
+
+/**
+ * Plans spawn points that are spread evenly over the area of a floor
+ * Points are picked with farthest point sampling, each new point is the block furthest from every point already picked
+ * Because of this the first N points of a plan are always the best plan for N players,
+ * so a single plan can be cached per floor and used for any number of players up to its length
+ */
+public final class SpawnPlanner {
+
+    private SpawnPlanner() {
+    }
+
+    /**
+     * Plan spawn points over a set of blocks
+     * This only reads the given set, so it is safe to run off the main thread as long as the set isn't being changed
+     *
+     * @param blocks The blocks that players can spawn on
+     * @param count  The number of spawn points to plan
+     * @return the ordinals of the chosen blocks, in the order they were picked
+     */
+    public static int[] plan(BlockPositionSet blocks, int count) {
+        int size = blocks.size();
+        count = Math.min(count, size);
+        if (count <= 0)
+            return new int[0];
+        int[] xs = new int[size], ys = new int[size], zs = new int[size];
+        long sumX = 0, sumY = 0, sumZ = 0;
+        for (int i = 0; i < size; i++) {
+            long packed = blocks.get(i);
+            xs[i] = BlockPositionSet.unpackX(packed);
+            ys[i] = BlockPositionSet.unpackY(packed);
+            zs[i] = BlockPositionSet.unpackZ(packed);
+            sumX += xs[i];
+            sumY += ys[i];
+            sumZ += zs[i];
+        }
+        //Start from the block furthest from the middle of the floor, this puts the first players at the edges
+        double centreX = (double) sumX / size, centreY = (double) sumY / size, centreZ = (double) sumZ / size;
+        int first = 0;
+        double furthest = -1;
+        for (int i = 0; i < size; i++) {
+            double dx = xs[i] - centreX, dy = ys[i] - centreY, dz = zs[i] - centreZ;
+            double distance = dx * dx + dy * dy + dz * dz;
+            if (distance > furthest) {
+                furthest = distance;
+                first = i;
+            }
+        }
+        int[] plan = new int[count];
+        //The squared distance from each block to the nearest point picked so far
+        long[] nearest = new long[size];
+        Arrays.fill(nearest, Long.MAX_VALUE);
+        int picked = first;
+        for (int p = 0; p < count; p++) {
+            plan[p] = picked;
+            int next = -1;
+            long best = -1;
+            for (int i = 0; i < size; i++) {
+                long dx = xs[i] - xs[picked], dy = ys[i] - ys[picked], dz = zs[i] - zs[picked];
+                long distance = dx * dx + dy * dy + dz * dz;
+                if (distance < nearest[i])
+                    nearest[i] = distance;
+                if (nearest[i] > best) {
+                    best = nearest[i];
+                    next = i;
+                }
+            }
+            picked = next;
+        }
+        return plan;
+    }
+
+}
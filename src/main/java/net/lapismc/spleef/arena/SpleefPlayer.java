@@ -18,15 +18,21 @@ package net.lapismc.spleef.arena;
 
 import net.lapismc.lapiscore.utils.LapisItemStackStorage;
 import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.metrics.LatencyHistogram;
+import net.lapismc.spleef.util.InventorySnapshot;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A class to store basic player info and methods, this is extended by Lobby and Arena players
@@ -36,8 +42,14 @@ public class SpleefPlayer {
     private final LapisSpleef plugin;
     private final UUID uuid;
     private final File playerDataFile;
+    //The players name, used when creating their data file
+    private final String username;
+    private final LatencyHistogram loadTimer;
+    private final LatencyHistogram saveTimer;
     private YamlConfiguration playerDataYaml;
     private ItemStack[] inventoryContents;
+    //The live handle of the player while they are online, kept up to date by the player cache
+    private volatile Player handle;
 
     /**
      * Initialize a SpleefPlayer object
@@ -46,19 +58,65 @@ public class SpleefPlayer {
      * @param uuid   The UUID of the player this class should represent
      */
     public SpleefPlayer(LapisSpleef plugin, UUID uuid) {
+        this(plugin, uuid, Bukkit.getPlayer(uuid) == null ? null : Bukkit.getPlayer(uuid).getName());
+    }
+
+    /**
+     * Initialize a SpleefPlayer object for a player who may not be online yet
+     * This does disk I/O and is safe to call from an async thread, e.g. during pre-login
+     *
+     * @param plugin   The LapisSpleef main class
+     * @param uuid     The UUID of the player this class should represent
+     * @param username The name of the player
+     */
+    public SpleefPlayer(LapisSpleef plugin, UUID uuid, String username) {
         this.plugin = plugin;
         this.uuid = uuid;
+        this.username = username;
         playerDataFile = new File(plugin.getDataFolder(), "PlayerData" + File.separator + uuid.toString() + ".yml");
+        loadTimer = plugin.getMetrics().histogram("spleef_player_load_seconds", "Time spent loading player data");
+        saveTimer = plugin.getMetrics().histogram("spleef_player_save_seconds",
+                "Time spent serializing player data before it is written in the background");
         loadPlayerData();
     }
 
+    /**
+     * Get the UUID of the player this SpleefPlayer represents
+     *
+     * @return the players UUID
+     */
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    /**
+     * Get the name of this player
+     *
+     * @return the players name, or null if they haven't been online since they were loaded
+     */
+    public String getName() {
+        Player player = getBukkitPlayer();
+        return player != null ? player.getName() : username;
+    }
+
     /**
      * Get the Bukkit Player object for this SpleefPlayer
+     * The handle is cached while the player is online, so this only looks the player up if they haven't joined yet
      *
-     * @return the Bukkit Player object for this player
+     * @return the Bukkit Player object for this player, or null if they are offline
      */
     public Player getBukkitPlayer() {
-        return Bukkit.getPlayer(uuid);
+        Player cached = handle;
+        return cached != null ? cached : Bukkit.getPlayer(uuid);
+    }
+
+    /**
+     * Set the cached handle of this player, this is called by the player cache on join, world change and quit
+     *
+     * @param player The players current handle, or null once they have left the server
+     */
+    void setBukkitPlayer(Player player) {
+        handle = player;
     }
 
     /**
@@ -91,26 +149,53 @@ public class SpleefPlayer {
 
     /**
      * Store the players inventory to be restored later
-     * This will be stored in memory and the players data file so that it can be restored even after a server crash
+     * This is kept in memory and appended to the inventory journal so that it can be restored even after a server crash
+     * The journal is written in the background, the players inventory shouldn't be cleared until the returned future completes
+     *
+     * @return a future that completes once the stored inventory is safely on disk
      */
-    public void storeInventory() {
+    public CompletableFuture<Void> storeInventory() {
         inventoryContents = getBukkitPlayer().getInventory().getContents();
-        //save inventory to file for emergency restore should the server crash
-        new LapisItemStackStorage().saveItems(playerDataYaml, "StoredInventory", inventoryContents);
-        savePlayerData();
+        long start = System.nanoTime();
+        byte[] snapshot;
+        try {
+            snapshot = InventorySnapshot.encode(inventoryContents);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to store the inventory of " + getName() + ", it won't survive a crash");
+            plugin.getLogger().severe(e.toString());
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            saveTimer.recordSince(start);
+        }
+        return plugin.getInventoryJournal().append(uuid, snapshot);
+    }
+
+    /**
+     * Check if this player has an inventory stored on disk that hasn't been given back yet
+     * This is only the case if the server stopped while they were in a game
+     *
+     * @return true if there is a stored inventory to restore
+     */
+    public boolean hasStoredInventory() {
+        return plugin.getInventoryJournal().hasRecovered(uuid) || playerDataYaml.contains("StoredInventory");
     }
 
     /**
      * Restore the players inventory from memory
-     * This also deletes the stored inventory from memory and the player data file
+     * This also clears the stored inventory from memory and the journal
      * This is to attempt to reduce the ability to use inventory storage to dupe items
      */
     public void restoreInventory() {
         //Set the players inventory contents to the stored contents
         getBukkitPlayer().getInventory().setContents(inventoryContents);
-        //Delete the inventory from our file so that it cant be used to dupe items
-        playerDataYaml.set("StoredInventory", null);
-        savePlayerData();
+        inventoryContents = null;
+        //Clear the inventory from the journal so that it cant be used to dupe items
+        plugin.getInventoryJournal().clear(uuid);
+        //Inventories stored by older versions are kept in the player data file
+        if (playerDataYaml.contains("StoredInventory")) {
+            playerDataYaml.set("StoredInventory", null);
+            savePlayerData();
+        }
     }
 
     /**
@@ -118,46 +203,75 @@ public class SpleefPlayer {
      * leaves mid-game
      */
     public void restoreInventoryFromFile() {
-        //Set the stored inventory contents to the loaded contents
-        inventoryContents = new LapisItemStackStorage().loadItems(playerDataYaml, "StoredInventory");
-        //Use the restore inventory method to save the new inventory contents
+        //Set the stored inventory contents to the recovered contents
+        byte[] snapshot = plugin.getInventoryJournal().getRecovered(uuid);
+        if (snapshot != null) {
+            List<String> missing = new ArrayList<>();
+            try {
+                inventoryContents = InventorySnapshot.decode(snapshot, missing);
+            } catch (IOException | RuntimeException e) {
+                //Item deserialization can throw for items from other versions or plugins
+                //Leave the snapshot in the journal so that it can be recovered by hand
+                plugin.getLogger().severe("Failed to read the stored inventory of " + getName());
+                plugin.getLogger().severe(e.toString());
+                return;
+            }
+            if (!missing.isEmpty()) {
+                //Giving back the rest would let the snapshot be restored again, so it is all kept for recovery by hand
+                plugin.getLogger().warning("The stored inventory of " + getName() + " contains materials that no longer exist "
+                        + missing + ", it has been kept in the inventory journal instead of being restored");
+                inventoryContents = null;
+                return;
+            }
+        } else if (playerDataYaml.contains("StoredInventory")) {
+            inventoryContents = new LapisItemStackStorage().loadItems(playerDataYaml, "StoredInventory");
+        }
+        if (inventoryContents == null)
+            return;
+        //Use the restore inventory method to clear the stored inventory
         restoreInventory();
     }
 
     /**
      * Load the players data file from disk
+     * Data that is still waiting to be written is used in preference to the file so that recent changes aren't lost
      */
     public void loadPlayerData() {
-        if (!playerDataFile.exists()) {
+        long start = System.nanoTime();
+        readPlayerData();
+        loadTimer.recordSince(start);
+    }
+
+    private void readPlayerData() {
+        playerDataYaml = new YamlConfiguration();
+        String pendingContents = plugin.getFileWriter().getPendingContents(playerDataFile);
+        if (pendingContents != null) {
             try {
-                playerDataFile.createNewFile();
-                YamlConfiguration yaml = YamlConfiguration.loadConfiguration(playerDataFile);
-                yaml.set("Username", getBukkitPlayer().getName());
-                yaml.set("Stats.GamesPlayed", 0);
-                yaml.set("Stats.Wins", 0);
-                yaml.set("Stats.Losses", 0);
-                yaml.set("Stats.Abandoned", 0);
-                yaml.save(playerDataFile);
-            } catch (IOException e) {
-                plugin.getLogger().severe("Failed to create a player data file for " + getBukkitPlayer().getName());
-                plugin.getLogger().severe(e.toString());
-                plugin.getLogger().severe(e.fillInStackTrace().toString());
+                playerDataYaml.loadFromString(pendingContents);
+                return;
+            } catch (InvalidConfigurationException e) {
+                plugin.getLogger().warning("Unsaved player data for " + uuid + " is invalid, loading from disk instead");
             }
         }
+        if (!playerDataFile.exists()) {
+            playerDataYaml.set("Username", username);
+            savePlayerData();
+            return;
+        }
         playerDataYaml = YamlConfiguration.loadConfiguration(playerDataFile);
     }
 
     /**
-     * Save changes to the players data file to the disk
+     * Queue changes to the players data file to be saved to the disk
+     * The file is written on a background thread, repeated saves before it is written are combined into one write
+     *
+     * @return a future that completes once the data is safely on disk
      */
-    public void savePlayerData() {
-        try {
-            playerDataYaml.save(playerDataFile);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Failed to save player data for " + getBukkitPlayer().getName());
-            plugin.getLogger().severe(e.toString());
-            plugin.getLogger().severe(e.fillInStackTrace().toString());
-        }
+    public CompletableFuture<Void> savePlayerData() {
+        long start = System.nanoTime();
+        String contents = playerDataYaml.saveToString();
+        saveTimer.recordSince(start);
+        return plugin.getFileWriter().write(playerDataFile, contents);
     }
 
 }
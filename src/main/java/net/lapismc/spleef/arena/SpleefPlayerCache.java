@@ -0,0 +1,221 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of SpleefPlayer objects
+ * Players are loaded asynchronously while they log in, so gameplay code never has to wait for the disk,
+ * and are evicted once they have left the server or have been idle for too long
+ */
+public class SpleefPlayerCache implements Listener {
+
+    private final LapisSpleef plugin;
+    private final Map<UUID, CachedPlayer> players = new ConcurrentHashMap<>();
+    //The number of players to keep before offline players are evicted early
+    private final int maximumSize;
+    //Milliseconds an offline player can go without being used before they are evicted
+    private final long idleTime;
+
+    /**
+     * Initialize the cache, register its listeners and start the eviction task
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public SpleefPlayerCache(LapisSpleef plugin) {
+        this.plugin = plugin;
+        maximumSize = plugin.getConfig().getInt("PlayerCache.MaximumSize", 1000);
+        idleTime = TimeUnit.MINUTES.toMillis(plugin.getConfig().getLong("PlayerCache.IdleMinutes", 10));
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        Bukkit.getScheduler().runTaskTimer(plugin, this::evict, 20 * 60, 20 * 60);
+        //Load anyone who is already online, e.g. after a reload
+        Map<UUID, String> online = new HashMap<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            online.put(player.getUniqueId(), player.getName());
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            online.forEach(this::load);
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                for (UUID uuid : online.keySet()) {
+                    Player player = Bukkit.getPlayer(uuid);
+                    if (player != null)
+                        getPlayer(uuid).setBukkitPlayer(player);
+                    restoreStoredInventory(uuid);
+                }
+            });
+        });
+    }
+
+    /**
+     * Get the SpleefPlayer for a UUID
+     * Online players will have been loaded during login, anyone else is loaded from disk on this thread
+     *
+     * @param uuid The UUID of the player
+     * @return the SpleefPlayer for this UUID
+     */
+    public SpleefPlayer getPlayer(UUID uuid) {
+        CachedPlayer cached = players.get(uuid);
+        if (cached == null)
+            cached = load(uuid, null);
+        cached.lastAccess = System.currentTimeMillis();
+        return cached.player;
+    }
+
+    /**
+     * Check if a player has already been loaded
+     *
+     * @param uuid The UUID of the player
+     * @return true if the player is in the cache
+     */
+    public boolean isLoaded(UUID uuid) {
+        return players.containsKey(uuid);
+    }
+
+    /**
+     * Get the number of players currently cached
+     *
+     * @return the size of the cache
+     */
+    public int size() {
+        return players.size();
+    }
+
+    /**
+     * Load players data off the main thread while they log in
+     *
+     * @param e The pre-login event being fired
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED)
+            return;
+        load(e.getUniqueId(), e.getName());
+    }
+
+    /**
+     * Cache the handle of joining players, and give them back any inventory that was stored when the server stopped
+     * while they were in a game
+     *
+     * @param e The player join event being fired
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent e) {
+        Player player = e.getPlayer();
+        getPlayer(player.getUniqueId()).setBukkitPlayer(player);
+        restoreStoredInventory(player.getUniqueId());
+    }
+
+    /**
+     * Refresh the cached handle of players who change world
+     *
+     * @param e The changed world event being fired
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent e) {
+        CachedPlayer cached = players.get(e.getPlayer().getUniqueId());
+        if (cached != null)
+            cached.player.setBukkitPlayer(e.getPlayer());
+    }
+
+    /**
+     * Clear the cached handle and evict players when they leave, this runs after the arena has had a chance to remove them
+     *
+     * @param e The player quit event being fired
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent e) {
+        UUID uuid = e.getPlayer().getUniqueId();
+        //The handle is invalid once the player has left, later lookups will find them offline
+        CachedPlayer cached = players.get(uuid);
+        if (cached != null)
+            cached.player.setBukkitPlayer(null);
+        if (plugin.getArenaManager().getPlayerArena(uuid) == null)
+            players.remove(uuid);
+    }
+
+    private void restoreStoredInventory(UUID uuid) {
+        if (Bukkit.getPlayer(uuid) == null || plugin.getArenaManager().getPlayerArena(uuid) != null)
+            return;
+        SpleefPlayer player = getPlayer(uuid);
+        if (player.hasStoredInventory())
+            player.restoreInventoryFromFile();
+    }
+
+    private CachedPlayer load(UUID uuid, String username) {
+        CachedPlayer existing = players.get(uuid);
+        if (existing != null)
+            return existing;
+        //The load is done outside the map so that a slow disk doesn't block lookups of other players
+        CachedPlayer loaded = new CachedPlayer(username == null ? new SpleefPlayer(plugin, uuid)
+                : new SpleefPlayer(plugin, uuid, username));
+        existing = players.putIfAbsent(uuid, loaded);
+        return existing == null ? loaded : existing;
+    }
+
+    /**
+     * Remove offline players who have been idle for too long, and the least recently used offline players
+     * if the cache is over its maximum size
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<UUID, CachedPlayer>> offline = new ArrayList<>();
+        for (Map.Entry<UUID, CachedPlayer> entry : players.entrySet()) {
+            UUID uuid = entry.getKey();
+            //Online players and players in an arena are always kept
+            if (Bukkit.getPlayer(uuid) != null || plugin.getArenaManager().getPlayerArena(uuid) != null)
+                continue;
+            if (now - entry.getValue().lastAccess > idleTime) {
+                players.remove(uuid);
+            } else {
+                offline.add(entry);
+            }
+        }
+        int excess = players.size() - maximumSize;
+        if (excess <= 0)
+            return;
+        offline.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        for (int i = 0; i < excess && i < offline.size(); i++) {
+            players.remove(offline.get(i).getKey());
+        }
+    }
+
+    private static class CachedPlayer {
+
+        private final SpleefPlayer player;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private CachedPlayer(SpleefPlayer player) {
+            this.player = player;
+        }
+
+    }
+
+}
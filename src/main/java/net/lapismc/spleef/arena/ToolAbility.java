@@ -0,0 +1,135 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.lapiscore.utils.LapisItemBuilder;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Power-up tools that break an area of floor blocks at once
+ * Arena players only hold items the game has given them, their own inventory is stored and emptied when they join,
+ * so tools are recognised by their material
+ * Each ability breaks a square or circle around the block it hits, and can reach through to the floors below it
+ * with a radius that shrinks by one for each floor
+ */
+public enum ToolAbility {
+
+    /**
+     * A shovel that digs out the 3x3 square around every block it breaks
+     */
+    excavate(Material.DIAMOND_SHOVEL, ChatColor.AQUA + "Excavator", 1, false, 0),
+    /**
+     * A snowball that blasts a circle out of the floor it lands on
+     */
+    blast(Material.SNOWBALL, ChatColor.WHITE + "Blast Ball", 2, true, 0),
+    /**
+     * TNT that leaves a crater when placed on a floor, the crater also opens a smaller hole in the floor below
+     */
+    crater(Material.TNT, ChatColor.RED + "Crater Charge", 3, true, 1);
+
+    private static final ToolAbility[] VALUES = values();
+
+    private final Material tool;
+    private final String displayName;
+    private final int radius;
+    private final boolean round;
+    private final int depth;
+
+    ToolAbility(Material tool, String displayName, int radius, boolean round, int depth) {
+        this.tool = tool;
+        this.displayName = displayName;
+        this.radius = radius;
+        this.round = round;
+        this.depth = depth;
+    }
+
+    /**
+     * Find the ability of a tool
+     *
+     * @param item The item being used, may be null
+     * @return the ability of the item, or null if it isn't an ability tool
+     */
+    public static ToolAbility fromTool(ItemStack item) {
+        if (item == null)
+            return null;
+        Material material = item.getType();
+        for (ToolAbility ability : VALUES) {
+            if (ability.tool == material)
+                return ability;
+        }
+        return null;
+    }
+
+    /**
+     * Get an ability by its index, used to hand out random power-ups
+     *
+     * @param index The index of the ability, wrapped to the number of abilities
+     * @return the ability at that index
+     */
+    static ToolAbility byIndex(int index) {
+        return VALUES[Math.floorMod(index, VALUES.length)];
+    }
+
+    /**
+     * Get the number of abilities
+     *
+     * @return the number of abilities
+     */
+    static int count() {
+        return VALUES.length;
+    }
+
+    /**
+     * Create the item that gives a player this ability
+     *
+     * @return the tool item
+     */
+    public ItemStack createItem() {
+        return new LapisItemBuilder(tool).setName(displayName).build();
+    }
+
+    /**
+     * @return the name shown on the tool
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return the number of blocks the ability reaches from the block it hits
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return true if the ability breaks a circle, false for a square
+     */
+    public boolean isRound() {
+        return round;
+    }
+
+    /**
+     * @return the number of floors below the hit floor that the ability also breaks
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.metrics;
+
+/**
+ * The metrics recorded for a single arena, labelled with the arena name so per-arena cost can be graphed
+ */
+public class ArenaMetrics {
+
+    private final LatencyHistogram blockBreak;
+    private final LatencyHistogram floorBreak;
+    private final LatencyHistogram floorRegenerate;
+    private final LatencyHistogram gameStart;
+    private final Counter blocksBroken;
+    private final Counter blocksRestored;
+
+    /**
+     * Get or create the metrics of an arena
+     *
+     * @param registry The registry to create the metrics in
+     * @param arena    The name of the arena
+     */
+    public ArenaMetrics(MetricsRegistry registry, String arena) {
+        blockBreak = registry.histogram("spleef_block_break_seconds",
+                "Time spent handling block break events from arena players", arena);
+        floorBreak = registry.histogram("spleef_floor_break_seconds",
+                "Time spent breaking a floor block", arena);
+        floorRegenerate = registry.histogram("spleef_floor_regenerate_seconds",
+                "Time spent on each pass restoring broken floor blocks", arena);
+        gameStart = registry.histogram("spleef_game_start_seconds",
+                "Time spent starting a game", arena);
+        blocksBroken = registry.counter("spleef_blocks_broken_total",
+                "Floor blocks broken", arena);
+        blocksRestored = registry.counter("spleef_blocks_restored_total",
+                "Floor blocks restored by regeneration", arena);
+    }
+
+    /**
+     * @return the time spent in Arena#onBlockBreak
+     */
+    public LatencyHistogram getBlockBreak() {
+        return blockBreak;
+    }
+
+    /**
+     * @return the time spent in Floor#breakBlock
+     */
+    public LatencyHistogram getFloorBreak() {
+        return floorBreak;
+    }
+
+    /**
+     * @return the time spent in each call to Floor#restoreBlocks, this includes Floor#regenerateFloor
+     */
+    public LatencyHistogram getFloorRegenerate() {
+        return floorRegenerate;
+    }
+
+    /**
+     * @return the time spent in Arena#startGame
+     */
+    public LatencyHistogram getGameStart() {
+        return gameStart;
+    }
+
+    /**
+     * @return the number of floor blocks broken
+     */
+    public Counter getBlocksBroken() {
+        return blocksBroken;
+    }
+
+    /**
+     * @return the number of floor blocks restored
+     */
+    public Counter getBlocksRestored() {
+        return blocksRestored;
+    }
+
+}
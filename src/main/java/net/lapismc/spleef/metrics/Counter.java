@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, incrementing it doesn't allocate and is safe from any thread
+ */
+public class Counter extends Metric {
+
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name, String help, String arena) {
+        super(name, help, arena);
+    }
+
+    /**
+     * Add one to the counter
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Add to the counter
+     *
+     * @param amount The amount to add, this should not be negative
+     */
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    /**
+     * Get the current count
+     *
+     * @return the total of everything added to this counter
+     */
+    public long get() {
+        return count.sum();
+    }
+
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        writeSampleName(out, "", null);
+        out.append(' ').append(get()).append('\n');
+    }
+
+}
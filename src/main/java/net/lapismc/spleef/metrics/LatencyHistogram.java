@@ -0,0 +1,159 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records durations in nanoseconds into fixed log-linear buckets so that percentiles can be read back
+ * Each power of two is split into 8 buckets, so percentiles are accurate to within 12.5%
+ * Recording doesn't allocate and is safe from any thread
+ */
+public class LatencyHistogram extends Metric {
+
+    //Bits of each value used to pick a bucket within its power of two
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name, String help, String arena) {
+        super(name, help, arena);
+    }
+
+    /**
+     * Record the time since an operation started
+     *
+     * @param startNanos The value of {@link System#nanoTime()} when the operation started
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param nanos The duration in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long currentMax;
+        while (nanos > (currentMax = max.get()) && !max.compareAndSet(currentMax, nanos)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Get the number of durations recorded
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the total of all recorded durations
+     *
+     * @return the sum in nanoseconds
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Get the longest recorded duration
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get a percentile of the recorded durations
+     * The value is the upper edge of the bucket the percentile falls in, capped to the maximum
+     *
+     * @param percentile The percentile to get, between 0 and 100
+     * @return the duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (SUB_BUCKETS + bucket % SUB_BUCKETS) * width;
+        return lower + width - 1;
+    }
+
+    @Override
+    String getType() {
+        return "summary";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        //Prometheus expects durations in seconds
+        writeSampleName(out, "", "0.5");
+        out.append(' ').append(getPercentile(50) / 1e9).append('\n');
+        writeSampleName(out, "", "0.99");
+        out.append(' ').append(getPercentile(99) / 1e9).append('\n');
+        writeSampleName(out, "", "1");
+        out.append(' ').append(getMax() / 1e9).append('\n');
+        writeSampleName(out, "_sum", null);
+        out.append(' ').append(getSum() / 1e9).append('\n');
+        writeSampleName(out, "_count", null);
+        out.append(' ').append(getCount()).append('\n');
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.metrics;
+
+/**
+ * A named value tracked by the {@link MetricsRegistry}, optionally labelled with the arena it belongs to
+ */
+public abstract class Metric {
+
+    private final String name;
+    private final String help;
+    private final String arena;
+
+    Metric(String name, String help, String arena) {
+        this.name = name;
+        this.help = help;
+        this.arena = arena;
+    }
+
+    /**
+     * Get the name of this metric, metrics for different arenas share a name
+     *
+     * @return the metric name in Prometheus format
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the description of this metric
+     *
+     * @return the help text
+     */
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * Get the arena this metric is labelled with
+     *
+     * @return the arena name, or null if this metric covers the whole plugin
+     */
+    public String getArena() {
+        return arena;
+    }
+
+    /**
+     * Get the Prometheus type of this metric
+     *
+     * @return the type name used in the TYPE line of the export
+     */
+    abstract String getType();
+
+    /**
+     * Append this metrics samples to a Prometheus text export
+     *
+     * @param out The export being built
+     */
+    abstract void writeSamples(StringBuilder out);
+
+    /**
+     * Write the name and label set of a sample
+     *
+     * @param out      The export being built
+     * @param suffix   Appended to the metric name, e.g. _sum
+     * @param quantile The quantile label value, or null for no quantile label
+     */
+    void writeSampleName(StringBuilder out, String suffix, String quantile) {
+        out.append(name).append(suffix);
+        if (arena == null && quantile == null)
+            return;
+        out.append('{');
+        if (arena != null)
+            out.append("arena=\"").append(arena.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        if (quantile != null)
+            out.append(arena != null ? "," : "").append("quantile=\"").append(quantile).append('"');
+        out.append('}');
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import net.lapismc.spleef.LapisSpleef;
+import org.bukkit.Bukkit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Makes the metrics available to Prometheus, either from an HTTP endpoint bound to localhost or by dumping them to a file
+ * Both are configured in the Metrics section of the config and are off by default
+ */
+public class MetricsExporter {
+
+    private final LapisSpleef plugin;
+    private final MetricsRegistry registry;
+    private HttpServer server;
+
+    /**
+     * Start the exporters that are enabled in the config
+     *
+     * @param plugin   The LapisSpleef main class
+     * @param registry The metrics to export
+     */
+    public MetricsExporter(LapisSpleef plugin, MetricsRegistry registry) {
+        this.plugin = plugin;
+        this.registry = registry;
+        int port = plugin.getConfig().getInt("Metrics.Port", 0);
+        if (port > 0)
+            startServer(port);
+        int dumpInterval = plugin.getConfig().getInt("Metrics.DumpInterval", 0);
+        if (dumpInterval > 0) {
+            File dumpFile = new File(plugin.getDataFolder(), "metrics.prom");
+            //The text is built on the main thread so the dump is a consistent snapshot, the write happens in the background
+            Bukkit.getScheduler().runTaskTimer(plugin, () -> plugin.getFileWriter().write(dumpFile, registry.toPrometheus()),
+                    dumpInterval * 20L, dumpInterval * 20L);
+        }
+        plugin.tasks.addShutdownTask(this::stop);
+    }
+
+    private void startServer(int port) {
+        try {
+            //Only bind to localhost, the metrics shouldn't be reachable from outside the machine
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to start the metrics endpoint on port " + port + ": " + e.getMessage());
+            return;
+        }
+        server.createContext("/metrics", exchange -> {
+            byte[] body = registry.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        plugin.getLogger().info("Metrics are available at http://localhost:" + port + "/metrics");
+    }
+
+    /**
+     * Stop the HTTP endpoint if it is running
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Holds every metric the plugin records
+ * Metrics are looked up once and kept by the code that records them, so the registry is never touched on a hot path
+ */
+public class MetricsRegistry {
+
+    //Metrics keyed by name and arena label
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Get or create a counter that covers the whole plugin
+     *
+     * @param name The metric name, counters should end in _total
+     * @param help A description of what is counted
+     * @return the counter
+     */
+    public Counter counter(String name, String help) {
+        return counter(name, help, null);
+    }
+
+    /**
+     * Get or create a counter for an arena
+     *
+     * @param name  The metric name, counters should end in _total
+     * @param help  A description of what is counted
+     * @param arena The arena name, or null for a counter that covers the whole plugin
+     * @return the counter
+     */
+    public Counter counter(String name, String help, String arena) {
+        return get(name, arena, Counter.class, n -> new Counter(name, help, arena));
+    }
+
+    /**
+     * Get or create a latency histogram that covers the whole plugin
+     *
+     * @param name The metric name, histograms should end in _seconds
+     * @param help A description of what is timed
+     * @return the histogram
+     */
+    public LatencyHistogram histogram(String name, String help) {
+        return histogram(name, help, null);
+    }
+
+    /**
+     * Get or create a latency histogram for an arena
+     *
+     * @param name  The metric name, histograms should end in _seconds
+     * @param help  A description of what is timed
+     * @param arena The arena name, or null for a histogram that covers the whole plugin
+     * @return the histogram
+     */
+    public LatencyHistogram histogram(String name, String help, String arena) {
+        return get(name, arena, LatencyHistogram.class, n -> new LatencyHistogram(name, help, arena));
+    }
+
+    private <T extends Metric> T get(String name, String arena, Class<T> type, Function<String, Metric> create) {
+        Metric metric = metrics.computeIfAbsent(arena == null ? name : name + "{" + arena + "}", create);
+        if (!type.isInstance(metric))
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + metric.getType());
+        return type.cast(metric);
+    }
+
+    /**
+     * Get every metric, sorted by name and then arena
+     *
+     * @return a sorted copy of the registered metrics
+     */
+    public List<Metric> getMetrics() {
+        List<Metric> sorted = new ArrayList<>(metrics.values());
+        sorted.sort(Comparator.comparing(Metric::getName)
+                .thenComparing(Metric::getArena, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return sorted;
+    }
+
+    /**
+     * Export every metric in the Prometheus text format
+     *
+     * @return the metrics as Prometheus text
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        String family = null;
+        for (Metric metric : getMetrics()) {
+            //Metrics for different arenas share one HELP and TYPE line
+            if (!metric.getName().equals(family)) {
+                family = metric.getName();
+                out.append("# HELP ").append(family).append(' ').append(metric.getHelp()).append('\n');
+                out.append("# TYPE ").append(family).append(' ').append(metric.getType()).append('\n');
+            }
+            metric.writeSamples(out);
+        }
+        return out.toString();
+    }
+
+}
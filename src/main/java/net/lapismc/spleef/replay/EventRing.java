@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.replay;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size ring buffer of replay events, written by the main thread and read by the replay writer thread
+ * Each event is three longs in a preallocated array, so recording an event never allocates
+ * There is exactly one producer and one consumer, which only need ordered writes of the head and tail to stay in step
+ */
+class EventRing {
+
+    private static final int WORDS = 3;
+
+    private final long[] slots;
+    private final int mask;
+    //The number of events ever written, only advanced by the main thread
+    private final AtomicLong tail = new AtomicLong();
+    //The number of events ever read, only advanced by the writer thread
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Create a ring buffer
+     *
+     * @param capacity The number of events it can hold, rounded up to a power of two
+     */
+    EventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new long[size * WORDS];
+        mask = size - 1;
+    }
+
+    /**
+     * Add an event, this must only be called from the main thread
+     * The event is packed as [recording id:32][arg0:24][type:8], [tick:32][arg1:32], [arg2:32][arg3:32]
+     *
+     * @return false if the buffer is full and the event was dropped
+     */
+    boolean offer(int recording, int type, int tick, int arg0, int arg1, int arg2, int arg3) {
+        long t = tail.get();
+        if (t - head.get() > mask)
+            return false;
+        int index = (int) (t & mask) * WORDS;
+        slots[index] = (long) recording << 32 | (arg0 & 0xFFFFFFL) << 8 | (type & 0xFF);
+        slots[index + 1] = (long) tick << 32 | (arg1 & 0xFFFFFFFFL);
+        slots[index + 2] = (long) arg2 << 32 | (arg3 & 0xFFFFFFFFL);
+        //Publish the event, the writer thread won't read the slot until it sees the new tail
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Pass every waiting event to a consumer, this must only be called from the writer thread
+     *
+     * @param consumer Receives each event in the order they were added
+     * @return the number of events consumed
+     */
+    int drain(Consumer consumer) {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++) {
+            int index = (int) (i & mask) * WORDS;
+            long first = slots[index], second = slots[index + 1], third = slots[index + 2];
+            consumer.accept((int) (first >>> 32), (int) first & 0xFF, (int) (second >>> 32),
+                    (int) first >> 8, (int) second, (int) (third >>> 32), (int) third);
+            //Free the slot once it has been copied out
+            head.lazySet(i + 1);
+        }
+        return (int) (t - h);
+    }
+
+    /**
+     * Check if there are events waiting to be drained
+     *
+     * @return true if the buffer is empty
+     */
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * Receives the events drained from the ring buffer
+     */
+    interface Consumer {
+        void accept(int recording, int type, int tick, int arg0, int arg1, int arg2, int arg3);
+    }
+
+}
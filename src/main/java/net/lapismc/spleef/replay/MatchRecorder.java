@@ -0,0 +1,176 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.replay;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.arena.Arena;
+import net.lapismc.spleef.arena.Floor;
+import net.lapismc.spleef.arena.SpleefPlayer;
+import net.lapismc.spleef.metrics.Counter;
+import net.lapismc.spleef.util.TimingWheel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records games so that staff can replay them when a player disputes an elimination
+ * Block breaks, eliminations, state changes and sampled player positions are added to a preallocated ring buffer on the
+ * main thread, and a background thread streams them to a delta encoded file per game in the Replays folder
+ * The Replays.MaxFiles and Replays.MaxAgeDays settings limit how many of those files are kept
+ * If the writer falls so far behind that the ring buffer fills up, new events are dropped and counted in
+ * spleef_replay_events_dropped_total rather than making the main thread wait, the replay file is then marked as missing
+ * events once there is room again, see {@link MatchReplay} for reading replays
+ */
+public class MatchRecorder {
+
+    private final LapisSpleef plugin;
+    private final boolean enabled;
+    //Ticks between samples of every players position
+    private final int positionInterval;
+    private final File folder;
+    private final EventRing ring;
+    private final ReplayWriter writer;
+    private final Counter dropped;
+    private final List<MatchRecording> recordings = new ArrayList<>();
+    private TimingWheel.Timer timer;
+    private long currentTick;
+    private int nextId;
+
+    /**
+     * Initialize the match recorder, settings are read from the Replays section of the config
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public MatchRecorder(LapisSpleef plugin) {
+        this.plugin = plugin;
+        enabled = plugin.getConfig().getBoolean("Replays.Enabled", true);
+        positionInterval = Math.max(1, plugin.getConfig().getInt("Replays.PositionInterval", 5));
+        folder = new File(plugin.getDataFolder(), "Replays");
+        ring = new EventRing(Math.max(1024, plugin.getConfig().getInt("Replays.BufferSize", 65536)));
+        int maxFiles = Math.max(0, plugin.getConfig().getInt("Replays.MaxFiles", 500));
+        long maxAge = TimeUnit.DAYS.toMillis(Math.max(0, plugin.getConfig().getInt("Replays.MaxAgeDays", 30)));
+        writer = enabled ? new ReplayWriter(plugin.getLogger(), ring, folder, maxFiles, maxAge) : null;
+        dropped = plugin.getMetrics().counter("spleef_replay_events_dropped_total",
+                "Replay events dropped because the replay writer had fallen behind");
+    }
+
+    /**
+     * Start recording a game, this is called once the players have been sent to their spawn points
+     *
+     * @param arena The arena the game is in
+     * @return the recording, or null if replays are disabled
+     */
+    public MatchRecording start(Arena arena) {
+        if (!enabled)
+            return null;
+        int id = nextId++;
+        long startedAt = System.currentTimeMillis();
+        List<SpleefPlayer> players = new ArrayList<>(arena.getPlayers());
+        List<Floor> floors = arena.getFloors();
+        UUID[] uuids = new UUID[players.size()];
+        String[] names = new String[players.size()];
+        for (int i = 0; i < players.size(); i++) {
+            uuids[i] = players.get(i).getUniqueId();
+            names[i] = String.valueOf(players.get(i).getName());
+        }
+        String[] worlds = new String[floors.size()];
+        String[] materials = new String[floors.size()];
+        long[][] positions = new long[floors.size()][];
+        for (int i = 0; i < floors.size(); i++) {
+            Floor floor = floors.get(i);
+            worlds[i] = floor.getWorld() == null ? "" : floor.getWorld().getName();
+            materials[i] = floor.getMaterial().name();
+            positions[i] = floor.getPositions();
+        }
+        File file = new File(folder, arena.getName() + "-" + startedAt + ".replay");
+        writer.open(new ReplayWriter.Header(id, file, startedAt, arena.getName(), uuids, names, worlds, materials, positions));
+        MatchRecording recording = new MatchRecording(this, id, currentTick, floors, players);
+        recordings.add(recording);
+        if (timer == null)
+            timer = plugin.getGameLoop().scheduleRepeating(null, 1, 1, this::tick);
+        return recording;
+    }
+
+    /**
+     * Get the folder replay files are written to
+     *
+     * @return the Replays folder
+     */
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * Get the number of games being recorded
+     *
+     * @return the number of active recordings
+     */
+    public int getActiveRecordings() {
+        return recordings.size();
+    }
+
+    /**
+     * Write the events of every recording and close their files, games still running are left without an end record
+     */
+    public void shutdown() {
+        recordings.clear();
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        if (writer != null)
+            writer.shutdown();
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    void record(MatchRecording recording, int type, int tick, int arg0, int arg1, int arg2, int arg3) {
+        //Once the writer has caught up the file is marked as missing events, so staff know the replay has gaps
+        if (recording.hasDropped() && ring.offer(recording.getId(), ReplayFormat.DROPPED, tick, 0, 0, 0, 0))
+            recording.setDropped(false);
+        if (!ring.offer(recording.getId(), type, tick, arg0, arg1, arg2, arg3)) {
+            dropped.increment();
+            recording.setDropped(true);
+            //A lost end record would leave the file open, so the writer is asked to close it directly
+            if (type == ReplayFormat.END)
+                writer.close(recording.getId());
+        }
+    }
+
+    void finish(MatchRecording recording) {
+        recordings.remove(recording);
+        if (recordings.isEmpty() && timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    private void tick() {
+        currentTick++;
+        if (currentTick % positionInterval != 0)
+            return;
+        for (int i = 0; i < recordings.size(); i++) {
+            recordings.get(i).samplePositions();
+        }
+    }
+
+}
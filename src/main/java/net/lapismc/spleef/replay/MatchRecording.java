@@ -0,0 +1,166 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.replay;
+
+import net.lapismc.spleef.arena.Floor;
+import net.lapismc.spleef.arena.GameState;
+import net.lapismc.spleef.arena.SpleefPlayer;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static net.lapismc.spleef.replay.ReplayFormat.*;
+
+/**
+ * The recording of one game, created by {@link MatchRecorder#start(net.lapismc.spleef.arena.Arena)}
+ * Every method is called on the main thread and only copies a few numbers into the recorders ring buffer,
+ * floors and players are found by their index in arrays taken when the game started, so nothing is allocated
+ */
+public class MatchRecording {
+
+    private final MatchRecorder recorder;
+    private final int id;
+    private final long startTick;
+    private final Floor[] floors;
+    private final SpleefPlayer[] players;
+    private final boolean[] alive;
+    //Reused for every position sample
+    private final Location location = new Location(null, 0, 0, 0);
+    private boolean ended;
+    //Set when an event was dropped and the replay file hasn't been marked as missing events yet
+    private boolean dropped;
+
+    MatchRecording(MatchRecorder recorder, int id, long startTick, List<Floor> floors, List<SpleefPlayer> players) {
+        this.recorder = recorder;
+        this.id = id;
+        this.startTick = startTick;
+        this.floors = floors.toArray(new Floor[0]);
+        this.players = players.toArray(new SpleefPlayer[0]);
+        alive = new boolean[this.players.length];
+        Arrays.fill(alive, true);
+    }
+
+    /**
+     * Record a block being broken
+     *
+     * @param floor   The floor the block is on
+     * @param ordinal The ordinal of the block within the floor
+     */
+    public void blockBreak(Floor floor, int ordinal) {
+        int index = indexOf(floor);
+        if (index >= 0)
+            record(BLOCK_BREAK, index, ordinal, 0, 0);
+    }
+
+    /**
+     * Record a player being eliminated, their last position is recorded with it
+     *
+     * @param player The player who was eliminated
+     * @param left   true if the player left the arena rather than falling
+     */
+    public void eliminated(SpleefPlayer player, boolean left) {
+        int index = indexOf(player.getUniqueId());
+        if (index < 0 || !alive[index])
+            return;
+        samplePosition(index);
+        alive[index] = false;
+        record(ELIMINATED, index, left ? 1 : 0, 0, 0);
+    }
+
+    /**
+     * Record the arena changing state
+     *
+     * @param state The new state of the arena
+     */
+    public void stateChanged(GameState state) {
+        record(STATE, state.ordinal(), 0, 0, 0);
+    }
+
+    /**
+     * Record the end of the game and finish the replay file
+     *
+     * @param winner The player who won, or null if there was no winner
+     */
+    public void end(SpleefPlayer winner) {
+        if (ended)
+            return;
+        ended = true;
+        record(END, winner == null ? 0 : indexOf(winner.getUniqueId()) + 1, 0, 0, 0);
+        recorder.finish(this);
+    }
+
+    /**
+     * Record the position of every player who is still in the game
+     */
+    void samplePositions() {
+        for (int i = 0; i < players.length; i++) {
+            if (alive[i])
+                samplePosition(i);
+        }
+    }
+
+    int getId() {
+        return id;
+    }
+
+    boolean isEnded() {
+        return ended;
+    }
+
+    boolean hasDropped() {
+        return dropped;
+    }
+
+    void setDropped(boolean dropped) {
+        this.dropped = dropped;
+    }
+
+    private void samplePosition(int index) {
+        Player handle = players[index].getBukkitPlayer();
+        if (handle == null)
+            return;
+        handle.getLocation(location);
+        int yaw = Math.round(location.getYaw() * 256 / 360f) & 0xFF;
+        record(POSITION, index << 8 | yaw, (int) Math.floor(location.getX() * POSITION_SCALE),
+                (int) Math.floor(location.getY() * POSITION_SCALE), (int) Math.floor(location.getZ() * POSITION_SCALE));
+    }
+
+    private void record(int type, int arg0, int arg1, int arg2, int arg3) {
+        if (!ended || type == END)
+            recorder.record(this, type, (int) (recorder.getCurrentTick() - startTick), arg0, arg1, arg2, arg3);
+    }
+
+    private int indexOf(Floor floor) {
+        for (int i = 0; i < floors.length; i++) {
+            if (floors[i] == floor)
+                return i;
+        }
+        return -1;
+    }
+
+    private int indexOf(UUID uuid) {
+        for (int i = 0; i < players.length; i++) {
+            if (players[i].getUniqueId().equals(uuid))
+                return i;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,516 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.replay;
+
+import net.lapismc.spleef.arena.GameState;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+
+import static net.lapismc.spleef.replay.ReplayFormat.*;
+
+/**
+ * A game read back from a replay file written by the {@link MatchRecorder}
+ * The events are kept in arrays ordered by tick, so the floors, players and arena state can be looked up at any tick
+ * without reading the file again. Nothing here needs the server, so replays can be read off the main thread
+ */
+public class MatchReplay {
+
+    private final long startedAt;
+    private final String arenaName;
+    private final UUID[] playerIds;
+    private final String[] playerNames;
+    private final String[] floorWorlds;
+    private final String[] floorMaterials;
+    private final long[][] floorPositions;
+    //Block breaks in the order they happened
+    private int[] breakTicks = new int[256], breakFloors = new int[256], breakOrdinals = new int[256];
+    private int breakCount;
+    //State changes in the order they happened
+    private int[] stateTicks = new int[8];
+    private GameState[] states = new GameState[8];
+    private int stateCount;
+    private final Track[] tracks;
+    private final int[] eliminationTicks;
+    private final boolean[] left;
+    private int winner = -1;
+    private int length;
+    private boolean complete;
+    private boolean missingEvents;
+
+    private MatchReplay(DataInputStream in, long size) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a replay file");
+        byte version = in.readByte();
+        if (version != VERSION)
+            throw new IOException("Replay version " + version + " can't be read by this version");
+        startedAt = in.readLong();
+        arenaName = in.readUTF();
+        int players = readCount(in, size);
+        playerIds = new UUID[players];
+        playerNames = new String[players];
+        for (int i = 0; i < players; i++) {
+            playerIds[i] = new UUID(in.readLong(), in.readLong());
+            playerNames[i] = in.readUTF();
+        }
+        int floors = readCount(in, size);
+        floorWorlds = new String[floors];
+        floorMaterials = new String[floors];
+        floorPositions = new long[floors][];
+        for (int i = 0; i < floors; i++) {
+            floorWorlds[i] = in.readUTF();
+            floorMaterials[i] = in.readUTF();
+            long[] positions = new long[readCount(in, size)];
+            long previous = 0;
+            for (int j = 0; j < positions.length; j++) {
+                previous += readSignedVarLong(in);
+                positions[j] = previous;
+            }
+            floorPositions[i] = positions;
+        }
+        tracks = new Track[players];
+        for (int i = 0; i < players; i++) {
+            tracks[i] = new Track();
+        }
+        eliminationTicks = new int[players];
+        Arrays.fill(eliminationTicks, -1);
+        left = new boolean[players];
+        readEvents(in);
+    }
+
+    /**
+     * Read a replay file
+     * A file from a game that was cut short, for example by a crash, is read up to the last complete event
+     *
+     * @param file The replay file
+     * @return the replay
+     * @throws IOException if the file can't be read, isn't a replay or refers to floors or players it doesn't have
+     */
+    public static MatchReplay read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return new MatchReplay(in, file.length());
+        }
+    }
+
+    private void readEvents(DataInputStream in) throws IOException {
+        int tick = 0;
+        int[] lastOrdinals = new int[floorPositions.length];
+        int[] lastX = new int[tracks.length], lastY = new int[tracks.length], lastZ = new int[tracks.length];
+        try {
+            while (true) {
+                int type = in.read();
+                if (type < 0)
+                    return;
+                tick += readVarInt(in);
+                switch (type) {
+                    case BLOCK_BREAK:
+                        int floor = readIndex(in, floorPositions.length);
+                        lastOrdinals[floor] += readSignedVarInt(in);
+                        if (lastOrdinals[floor] < 0 || lastOrdinals[floor] >= floorPositions[floor].length)
+                            throw new IOException("Corrupt replay, block " + lastOrdinals[floor] + " isn't on floor " + floor);
+                        addBreak(tick, floor, lastOrdinals[floor]);
+                        break;
+                    case POSITION:
+                        int player = readIndex(in, tracks.length);
+                        lastX[player] += readSignedVarInt(in);
+                        lastY[player] += readSignedVarInt(in);
+                        lastZ[player] += readSignedVarInt(in);
+                        tracks[player].add(tick, lastX[player], lastY[player], lastZ[player], in.readUnsignedByte());
+                        break;
+                    case ELIMINATED:
+                        int eliminated = readIndex(in, tracks.length);
+                        eliminationTicks[eliminated] = tick;
+                        left[eliminated] = in.readBoolean();
+                        break;
+                    case STATE:
+                        addState(tick, GameState.values()[readIndex(in, GameState.values().length)]);
+                        break;
+                    case END:
+                        winner = readIndex(in, tracks.length + 1) - 1;
+                        complete = true;
+                        length = tick;
+                        return;
+                    case DROPPED:
+                        missingEvents = true;
+                        break;
+                    default:
+                        throw new IOException("Unknown replay event " + type);
+                }
+                length = tick;
+            }
+        } catch (EOFException e) {
+            //The game was cut short while an event was being written, everything before it is kept
+        }
+    }
+
+    /**
+     * Read a player, floor or state index and check that it refers to something in the replay
+     */
+    private static int readIndex(InputStream in, int count) throws IOException {
+        int index = readVarInt(in);
+        if (index < 0 || index >= count)
+            throw new IOException("Corrupt replay, index " + index + " is out of range");
+        return index;
+    }
+
+    /**
+     * Read the number of players, floors or blocks in the header
+     * Each of them takes at least a byte, so a count larger than the file is corrupt and is rejected before anything
+     * is allocated for it
+     */
+    private static int readCount(InputStream in, long size) throws IOException {
+        int count = readVarInt(in);
+        if (count < 0 || count > size)
+            throw new IOException("Corrupt replay, count " + count + " doesn't fit in the file");
+        return count;
+    }
+
+    /**
+     * Get when the game started
+     *
+     * @return the start time in milliseconds since the epoch
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Get the name of the arena the game was played in
+     *
+     * @return the arena name
+     */
+    public String getArenaName() {
+        return arenaName;
+    }
+
+    /**
+     * Get the number of ticks from the start of the game to its last recorded event
+     *
+     * @return the length of the game in ticks
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Check if events were dropped while the game was recorded because the replay writer fell behind
+     * Broken blocks and player positions can then be missing from the replay
+     *
+     * @return true if the replay is missing events
+     */
+    public boolean isMissingEvents() {
+        return missingEvents;
+    }
+
+    /**
+     * Check if the game was recorded to its end, games cut short by the server stopping are incomplete
+     *
+     * @return true if the replay has an end record
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Get the number of players who were in the game when it started
+     *
+     * @return the number of players
+     */
+    public int getPlayerCount() {
+        return playerIds.length;
+    }
+
+    /**
+     * Get the UUID of a player
+     *
+     * @param player The index of the player
+     * @return the players UUID
+     */
+    public UUID getPlayerId(int player) {
+        return playerIds[player];
+    }
+
+    /**
+     * Get the name a player had when the game started
+     *
+     * @param player The index of the player
+     * @return the players name
+     */
+    public String getPlayerName(int player) {
+        return playerNames[player];
+    }
+
+    /**
+     * Find a player by name, ignoring case
+     *
+     * @param name The name of the player
+     * @return the index of the player, or -1 if they weren't in the game
+     */
+    public int getPlayerIndex(String name) {
+        for (int i = 0; i < playerNames.length; i++) {
+            if (playerNames[i].equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the player who won the game
+     *
+     * @return the index of the winner, or -1 if there was no winner or the game didn't finish
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    /**
+     * Get the tick a player was eliminated on
+     *
+     * @param player The index of the player
+     * @return the tick they were eliminated, or -1 if they never were
+     */
+    public int getEliminationTick(int player) {
+        return eliminationTicks[player];
+    }
+
+    /**
+     * Check if a player was eliminated by leaving the arena rather than falling
+     *
+     * @param player The index of the player
+     * @return true if the player left the game
+     */
+    public boolean hasLeft(int player) {
+        return left[player];
+    }
+
+    /**
+     * Get the last recorded position of a player at or before a tick
+     *
+     * @param player The index of the player
+     * @param tick   The tick to look up
+     * @return the position, or null if nothing was recorded for the player by that tick
+     */
+    public Position getPosition(int player, int tick) {
+        return tracks[player].get(tick);
+    }
+
+    /**
+     * Get the state of the arena at a tick
+     *
+     * @param tick The tick to look up
+     * @return the state, or null if no state had been recorded by that tick
+     */
+    public GameState getState(int tick) {
+        int index = upperBound(stateTicks, stateCount, tick) - 1;
+        return index < 0 ? null : states[index];
+    }
+
+    /**
+     * Get the number of floors in the arena
+     *
+     * @return the number of floors, the highest floor is first
+     */
+    public int getFloorCount() {
+        return floorPositions.length;
+    }
+
+    /**
+     * Get the name of the world a floor is in
+     *
+     * @param floor The index of the floor
+     * @return the world name
+     */
+    public String getFloorWorld(int floor) {
+        return floorWorlds[floor];
+    }
+
+    /**
+     * Get the material a floor is made of
+     *
+     * @param floor The index of the floor
+     * @return the material name
+     */
+    public String getFloorMaterial(int floor) {
+        return floorMaterials[floor];
+    }
+
+    /**
+     * Get the positions of a floors blocks, see {@link net.lapismc.spleef.util.BlockPositionSet#pack(int, int, int)}
+     *
+     * @param floor The index of the floor
+     * @return the packed block positions, indexed by ordinal
+     */
+    public long[] getFloorPositions(int floor) {
+        return floorPositions[floor].clone();
+    }
+
+    /**
+     * Rebuild a floor as it was at the end of a tick
+     *
+     * @param floor The index of the floor
+     * @param tick  The tick to rebuild
+     * @return the ordinals of the blocks that had been broken by the end of the tick
+     */
+    public BitSet getBrokenBlocks(int floor, int tick) {
+        BitSet broken = new BitSet(floorPositions[floor].length);
+        int end = upperBound(breakTicks, breakCount, tick);
+        for (int i = 0; i < end; i++) {
+            if (breakFloors[i] == floor)
+                broken.set(breakOrdinals[i]);
+        }
+        return broken;
+    }
+
+    private void addBreak(int tick, int floor, int ordinal) {
+        if (breakCount == breakTicks.length) {
+            breakTicks = Arrays.copyOf(breakTicks, breakCount * 2);
+            breakFloors = Arrays.copyOf(breakFloors, breakCount * 2);
+            breakOrdinals = Arrays.copyOf(breakOrdinals, breakCount * 2);
+        }
+        breakTicks[breakCount] = tick;
+        breakFloors[breakCount] = floor;
+        breakOrdinals[breakCount] = ordinal;
+        breakCount++;
+    }
+
+    private void addState(int tick, GameState state) {
+        if (stateCount == stateTicks.length) {
+            stateTicks = Arrays.copyOf(stateTicks, stateCount * 2);
+            states = Arrays.copyOf(states, stateCount * 2);
+        }
+        stateTicks[stateCount] = tick;
+        states[stateCount] = state;
+        stateCount++;
+    }
+
+    /**
+     * Find the number of entries with a tick at or before the given tick, the ticks must be sorted
+     */
+    private static int upperBound(int[] ticks, int count, int tick) {
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ticks[middle] <= tick)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * A recorded player position
+     */
+    public static class Position {
+
+        private final int tick;
+        private final double x, y, z;
+        private final float yaw;
+
+        private Position(int tick, double x, double y, double z, float yaw) {
+            this.tick = tick;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.yaw = yaw;
+        }
+
+        /**
+         * Get the tick this position was recorded on
+         *
+         * @return the tick
+         */
+        public int getTick() {
+            return tick;
+        }
+
+        /**
+         * Get the X coordinate, this is accurate to 1/32 of a block
+         *
+         * @return the X coordinate
+         */
+        public double getX() {
+            return x;
+        }
+
+        /**
+         * Get the Y coordinate, this is accurate to 1/32 of a block
+         *
+         * @return the Y coordinate
+         */
+        public double getY() {
+            return y;
+        }
+
+        /**
+         * Get the Z coordinate, this is accurate to 1/32 of a block
+         *
+         * @return the Z coordinate
+         */
+        public double getZ() {
+            return z;
+        }
+
+        /**
+         * Get the direction the player was facing, this is accurate to about 1.4 degrees
+         *
+         * @return the yaw of the player
+         */
+        public float getYaw() {
+            return yaw;
+        }
+
+    }
+
+    /**
+     * The sampled positions of one player
+     */
+    private static class Track {
+
+        private int[] ticks = new int[64], x = new int[64], y = new int[64], z = new int[64];
+        private byte[] yaw = new byte[64];
+        private int count;
+
+        private void add(int tick, int px, int py, int pz, int angle) {
+            if (count == ticks.length) {
+                ticks = Arrays.copyOf(ticks, count * 2);
+                x = Arrays.copyOf(x, count * 2);
+                y = Arrays.copyOf(y, count * 2);
+                z = Arrays.copyOf(z, count * 2);
+                yaw = Arrays.copyOf(yaw, count * 2);
+            }
+            ticks[count] = tick;
+            x[count] = px;
+            y[count] = py;
+            z[count] = pz;
+            yaw[count] = (byte) angle;
+            count++;
+        }
+
+        private Position get(int tick) {
+            int index = upperBound(ticks, count, tick) - 1;
+            if (index < 0)
+                return null;
+            return new Position(ticks[index], x[index] / (double) POSITION_SCALE, y[index] / (double) POSITION_SCALE,
+                    z[index] / (double) POSITION_SCALE, (yaw[index] & 0xFF) * 360f / 256);
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Constants and varint helpers shared by the replay writer and {@link MatchReplay}
+ * <p>
+ * A replay file starts with a header: the magic and version, the time the game started, the arena name,
+ * each player as their UUID and name, then each floor as its world, material and block positions in ordinal order.
+ * After the header comes one record per event, a type byte, the ticks since the previous event and the events values.
+ * Block ordinals and player positions are stored as zigzag varint deltas from the previous value for the same floor
+ * or player, so most events are only a few bytes. A file without an end record is from a game that was cut short,
+ * and a dropped record, which has no values, means events before it were lost because the writer fell behind
+ */
+final class ReplayFormat {
+
+    //"LSRP" followed by the format version
+    static final int MAGIC = 0x4C535250;
+    static final byte VERSION = 1;
+
+    //Event types, these are written to disk so they must never be renumbered
+    static final int BLOCK_BREAK = 1;
+    static final int POSITION = 2;
+    static final int ELIMINATED = 3;
+    static final int STATE = 4;
+    static final int END = 5;
+    static final int DROPPED = 6;
+
+    //Positions are stored in fixed point, 32 steps per block
+    static final int POSITION_SCALE = 32;
+
+    private ReplayFormat() {
+    }
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeSignedVarInt(OutputStream out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    static void writeSignedVarLong(OutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static int readVarInt(InputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Varint is too long");
+    }
+
+    static int readSignedVarInt(InputStream in) throws IOException {
+        int value = readVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long readSignedVarLong(InputStream in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
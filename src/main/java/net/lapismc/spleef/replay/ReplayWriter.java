@@ -0,0 +1,331 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.replay;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import static net.lapismc.spleef.replay.ReplayFormat.*;
+
+/**
+ * The background thread that drains the event ring buffer and streams each recording to its replay file
+ * Files are flushed after every batch, so a crash only loses the last moments of a game
+ * Old replays are deleted by this thread when it starts and whenever a game's file is closed, keeping at most
+ * the configured number of files and none older than the configured age
+ */
+class ReplayWriter implements Runnable, EventRing.Consumer {
+
+    //How long the writer sleeps when there are no events to write
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final Logger logger;
+    private final EventRing ring;
+    private final Thread thread;
+    private final File folder;
+    //The most replay files to keep, or 0 to keep any number
+    private final int maxFiles;
+    //How long replay files are kept for in milliseconds, or 0 to keep them forever
+    private final long maxAge;
+    //Headers of recordings that have started but don't have a file yet
+    private final Queue<Header> opened = new ConcurrentLinkedQueue<>();
+    //Recordings whose end event didn't fit in the ring buffer
+    private final Queue<Integer> closed = new ConcurrentLinkedQueue<>();
+    //Open replay files by recording id, only used by the writer thread
+    private final Map<Integer, Output> outputs = new HashMap<>();
+    private volatile boolean shutdown;
+    //Set when a file has been closed and old replays should be checked, only used by the writer thread
+    private boolean pruneNeeded = true;
+
+    ReplayWriter(Logger logger, EventRing ring, File folder, int maxFiles, long maxAge) {
+        this.logger = logger;
+        this.ring = ring;
+        this.folder = folder;
+        this.maxFiles = maxFiles;
+        this.maxAge = maxAge;
+        thread = new Thread(this, "LapisSpleef Replay Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Create the file for a recording, this must be called before any of its events are added to the ring buffer
+     *
+     * @param header The recordings header
+     */
+    void open(Header header) {
+        opened.add(header);
+    }
+
+    /**
+     * Close a recording once the events already in the ring buffer have been written
+     *
+     * @param id The id of the recording
+     */
+    void close(int id) {
+        closed.add(id);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Write every event in the ring buffer and close all files, this blocks until the writer thread has stopped
+     */
+    void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive())
+            logger.warning("Timed out waiting for replays to be written");
+    }
+
+    @Override
+    public void run() {
+        List<Integer> closing = new ArrayList<>();
+        while (true) {
+            boolean stopping = shutdown;
+            openPending();
+            //Closes are taken before draining, every event sent before the close is then part of this drain
+            Integer id;
+            while ((id = closed.poll()) != null)
+                closing.add(id);
+            int drained = ring.drain(this);
+            for (Integer closeId : closing)
+                closeOutput(closeId);
+            closing.clear();
+            if (drained > 0) {
+                for (Output output : new ArrayList<>(outputs.values()))
+                    output.flush();
+            }
+            if (pruneNeeded)
+                pruneReplays();
+            if (stopping && ring.isEmpty())
+                break;
+            if (drained == 0)
+                LockSupport.parkNanos(this, IDLE_NANOS);
+        }
+        //Games still running when the server stops are left without an end record
+        for (Integer closeId : new ArrayList<>(outputs.keySet()))
+            closeOutput(closeId);
+    }
+
+    @Override
+    public void accept(int recording, int type, int tick, int arg0, int arg1, int arg2, int arg3) {
+        Output output = outputs.get(recording);
+        if (output == null) {
+            //The header is always queued before the first event, so it is visible by now
+            openPending();
+            output = outputs.get(recording);
+            if (output == null)
+                return;
+        }
+        try {
+            output.write(type, tick, arg0, arg1, arg2, arg3);
+        } catch (IOException e) {
+            logger.warning("Failed to write replay " + output.file.getName() + ", the rest of the game won't be recorded: " + e);
+            closeOutput(recording);
+            return;
+        }
+        if (type == END)
+            closeOutput(recording);
+    }
+
+    private void openPending() {
+        Header header;
+        while ((header = opened.poll()) != null) {
+            try {
+                outputs.put(header.id, new Output(header));
+            } catch (IOException e) {
+                logger.warning("Failed to create replay " + header.file.getName() + ": " + e);
+            }
+        }
+    }
+
+    private void closeOutput(int id) {
+        Output output = outputs.remove(id);
+        if (output == null)
+            return;
+        try {
+            output.stream.close();
+        } catch (IOException e) {
+            logger.warning("Failed to close replay " + output.file.getName() + ": " + e);
+        }
+        pruneNeeded = true;
+    }
+
+    /**
+     * Delete the oldest replay files beyond the file limit and any older than the age limit
+     * Files of games that are still being recorded are never deleted
+     */
+    private void pruneReplays() {
+        pruneNeeded = false;
+        if (maxFiles <= 0 && maxAge <= 0)
+            return;
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".replay"));
+        if (files == null)
+            return;
+        Set<File> open = new HashSet<>();
+        for (Output output : outputs.values())
+            open.add(output.file);
+        //Newest first, so everything past the file limit is the oldest
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long cutoff = System.currentTimeMillis() - maxAge;
+        int kept = 0;
+        for (File file : files) {
+            if (open.contains(file))
+                continue;
+            if ((maxFiles > 0 && kept >= maxFiles) || (maxAge > 0 && file.lastModified() < cutoff)) {
+                if (!file.delete())
+                    logger.warning("Failed to delete old replay " + file.getName());
+            } else {
+                kept++;
+            }
+        }
+    }
+
+    /**
+     * The details of a game that are written at the start of its replay file
+     */
+    static class Header {
+
+        final int id;
+        final File file;
+        final long startedAt;
+        final String arena;
+        final UUID[] players;
+        final String[] names;
+        final String[] worlds;
+        final String[] materials;
+        final long[][] positions;
+
+        Header(int id, File file, long startedAt, String arena, UUID[] players, String[] names, String[] worlds,
+               String[] materials, long[][] positions) {
+            this.id = id;
+            this.file = file;
+            this.startedAt = startedAt;
+            this.arena = arena;
+            this.players = players;
+            this.names = names;
+            this.worlds = worlds;
+            this.materials = materials;
+            this.positions = positions;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(startedAt);
+            out.writeUTF(arena);
+            writeVarInt(out, players.length);
+            for (int i = 0; i < players.length; i++) {
+                out.writeLong(players[i].getMostSignificantBits());
+                out.writeLong(players[i].getLeastSignificantBits());
+                out.writeUTF(names[i]);
+            }
+            writeVarInt(out, worlds.length);
+            for (int i = 0; i < worlds.length; i++) {
+                out.writeUTF(worlds[i]);
+                out.writeUTF(materials[i]);
+                writeVarInt(out, positions[i].length);
+                //Positions are kept in ordinal order so block break events can refer to them by ordinal
+                long previous = 0;
+                for (long position : positions[i]) {
+                    writeSignedVarLong(out, position - previous);
+                    previous = position;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * An open replay file and the previous values that its events are delta encoded against
+     */
+    private static class Output {
+
+        private final File file;
+        private final DataOutputStream stream;
+        private final int[] lastOrdinals;
+        private final int[] lastX, lastY, lastZ;
+        private int lastTick;
+
+        private Output(Header header) throws IOException {
+            file = header.file;
+            Files.createDirectories(file.getParentFile().toPath());
+            stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+            header.write(stream);
+            lastOrdinals = new int[header.worlds.length];
+            lastX = new int[header.players.length];
+            lastY = new int[header.players.length];
+            lastZ = new int[header.players.length];
+        }
+
+        private void write(int type, int tick, int arg0, int arg1, int arg2, int arg3) throws IOException {
+            stream.writeByte(type);
+            writeVarInt(stream, tick - lastTick);
+            lastTick = tick;
+            switch (type) {
+                case BLOCK_BREAK:
+                    writeVarInt(stream, arg0);
+                    writeSignedVarInt(stream, arg1 - lastOrdinals[arg0]);
+                    lastOrdinals[arg0] = arg1;
+                    break;
+                case POSITION:
+                    //The player and their yaw share the first value
+                    int player = arg0 >>> 8 & 0xFFFF;
+                    writeVarInt(stream, player);
+                    writeSignedVarInt(stream, arg1 - lastX[player]);
+                    writeSignedVarInt(stream, arg2 - lastY[player]);
+                    writeSignedVarInt(stream, arg3 - lastZ[player]);
+                    stream.writeByte(arg0 & 0xFF);
+                    lastX[player] = arg1;
+                    lastY[player] = arg2;
+                    lastZ[player] = arg3;
+                    break;
+                case ELIMINATED:
+                    writeVarInt(stream, arg0);
+                    stream.writeBoolean(arg1 != 0);
+                    break;
+                case STATE:
+                case END:
+                    writeVarInt(stream, arg0);
+                    break;
+                case DROPPED:
+                    break;
+                default:
+                    throw new IOException("Unknown replay event " + type);
+            }
+        }
+
+        private void flush() {
+            try {
+                stream.flush();
+            } catch (IOException ignored) {
+                //The next write will fail and report the error
+            }
+        }
+
+    }
+
+}
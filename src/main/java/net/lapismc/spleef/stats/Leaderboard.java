@@ -0,0 +1,236 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+import java.util.*;
+
+/**
+ * An ordered leaderboard of players by score
+ * Players are kept in a treap where every node knows the size of its subtree, so updates, rank lookups
+ * and finding the player at a given rank are all O(log n) and nothing is re-sorted when it is queried
+ */
+public class Leaderboard {
+
+    private final Map<UUID, Double> scores = new HashMap<>();
+    private final Random random = new Random();
+    private Node root;
+
+    /**
+     * Set the score of a player, adding them to the leaderboard if they aren't already on it
+     *
+     * @param uuid  The UUID of the player
+     * @param score The players new score
+     */
+    public void update(UUID uuid, double score) {
+        Double previous = scores.put(uuid, score);
+        if (previous != null) {
+            if (previous == score)
+                return;
+            root = remove(root, previous, uuid);
+        }
+        root = insert(root, new Node(uuid, score, random.nextInt()));
+    }
+
+    /**
+     * Remove a player from the leaderboard
+     *
+     * @param uuid The UUID of the player
+     */
+    public void remove(UUID uuid) {
+        Double previous = scores.remove(uuid);
+        if (previous != null)
+            root = remove(root, previous, uuid);
+    }
+
+    /**
+     * Get the score of a player
+     *
+     * @param uuid The UUID of the player
+     * @return the players score, or null if they aren't on the leaderboard
+     */
+    public Double getScore(UUID uuid) {
+        return scores.get(uuid);
+    }
+
+    /**
+     * Get the rank of a player, the player with the highest score has rank 1
+     *
+     * @param uuid The UUID of the player
+     * @return the players rank, or -1 if they aren't on the leaderboard
+     */
+    public int getRank(UUID uuid) {
+        Double score = scores.get(uuid);
+        if (score == null)
+            return -1;
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            int comparison = compare(score, uuid, node);
+            if (comparison < 0) {
+                node = node.left;
+            } else if (comparison == 0) {
+                return rank + size(node.left) + 1;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the players at a range of ranks
+     *
+     * @param offset The number of players to skip, 0 starts at rank 1
+     * @param count  The maximum number of players to return
+     * @return the UUIDs of the players in rank order
+     */
+    public List<UUID> getRange(int offset, int count) {
+        List<UUID> range = new ArrayList<>();
+        int end = Math.min(offset + count, size());
+        for (int i = Math.max(offset, 0); i < end; i++) {
+            range.add(select(i).uuid);
+        }
+        return range;
+    }
+
+    /**
+     * Get the number of players on the leaderboard
+     *
+     * @return the number of players
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Find the node at an index in rank order
+     */
+    private Node select(int index) {
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private Node insert(Node node, Node inserted) {
+        if (node == null)
+            return inserted;
+        if (inserted.priority > node.priority) {
+            Node[] parts = split(node, inserted.score, inserted.uuid);
+            inserted.left = parts[0];
+            inserted.right = parts[1];
+            return resize(inserted);
+        }
+        if (compare(inserted.score, inserted.uuid, node) < 0) {
+            node.left = insert(node.left, inserted);
+        } else {
+            node.right = insert(node.right, inserted);
+        }
+        return resize(node);
+    }
+
+    private Node remove(Node node, double score, UUID uuid) {
+        if (node == null)
+            return null;
+        int comparison = compare(score, uuid, node);
+        if (comparison == 0)
+            return merge(node.left, node.right);
+        if (comparison < 0) {
+            node.left = remove(node.left, score, uuid);
+        } else {
+            node.right = remove(node.right, score, uuid);
+        }
+        return resize(node);
+    }
+
+    /**
+     * Split a subtree into the nodes ranked before the given key and the nodes ranked after it
+     */
+    private Node[] split(Node node, double score, UUID uuid) {
+        if (node == null)
+            return new Node[2];
+        if (compare(score, uuid, node) > 0) {
+            Node[] parts = split(node.right, score, uuid);
+            node.right = parts[0];
+            parts[0] = resize(node);
+            return parts;
+        }
+        Node[] parts = split(node.left, score, uuid);
+        node.left = parts[1];
+        parts[1] = resize(node);
+        return parts;
+    }
+
+    /**
+     * Join two subtrees where every node in the first is ranked before every node in the second
+     */
+    private Node merge(Node first, Node second) {
+        if (first == null)
+            return second;
+        if (second == null)
+            return first;
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            return resize(first);
+        }
+        second.left = merge(first, second.left);
+        return resize(second);
+    }
+
+    /**
+     * Compare a key to a node, higher scores are ranked first and ties are broken by UUID
+     */
+    private int compare(double score, UUID uuid, Node node) {
+        int comparison = Double.compare(node.score, score);
+        return comparison != 0 ? comparison : uuid.compareTo(node.uuid);
+    }
+
+    private Node resize(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static class Node {
+
+        private final UUID uuid;
+        private final double score;
+        private final int priority;
+        private int size = 1;
+        private Node left, right;
+
+        private Node(UUID uuid, double score, int priority) {
+            this.uuid = uuid;
+            this.score = score;
+            this.priority = priority;
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+import java.util.*;
+
+/**
+ * Keeps the leaderboards up to date in memory
+ * The leaderboards are filled from the stats backend on startup and then updated as games end,
+ * this class should only be used from the main thread
+ */
+public class LeaderboardManager {
+
+    //Players need to have played this many games before they appear on the win rate leaderboard
+    private final int minimumGamesForWinRate;
+    private final Map<UUID, PlayerStats> stats = new HashMap<>();
+    private final Map<LeaderboardType, Leaderboard> leaderboards = new EnumMap<>(LeaderboardType.class);
+    //Updates from games that ended before the leaderboards finished loading
+    private List<PlayerStats> pendingUpdates = new ArrayList<>();
+
+    /**
+     * Create empty leaderboards, they are filled once {@link #load(Collection)} is called
+     *
+     * @param minimumGamesForWinRate The number of games a player must play before they are ranked by win rate
+     */
+    public LeaderboardManager(int minimumGamesForWinRate) {
+        this.minimumGamesForWinRate = minimumGamesForWinRate;
+        for (LeaderboardType type : LeaderboardType.values()) {
+            leaderboards.put(type, new Leaderboard());
+        }
+    }
+
+    /**
+     * Fill the leaderboards with the stats of every player
+     *
+     * @param allStats The stats of every player loaded from the backend
+     */
+    public void load(Collection<PlayerStats> allStats) {
+        for (PlayerStats playerStats : allStats) {
+            set(playerStats);
+        }
+        List<PlayerStats> updates = pendingUpdates;
+        pendingUpdates = null;
+        applyUpdates(updates);
+    }
+
+    /**
+     * Check if the leaderboards have finished loading
+     *
+     * @return true if the leaderboards can be queried
+     */
+    public boolean isLoaded() {
+        return pendingUpdates == null;
+    }
+
+    /**
+     * Add the results of a game to the leaderboards
+     *
+     * @param updates The changes to each players stats
+     */
+    public void applyUpdates(Collection<PlayerStats> updates) {
+        if (pendingUpdates != null) {
+            pendingUpdates.addAll(updates);
+            return;
+        }
+        for (PlayerStats update : updates) {
+            PlayerStats current = stats.get(update.getUniqueId());
+            set(current == null ? update : current.add(update));
+        }
+    }
+
+    /**
+     * Get a page of a leaderboard
+     *
+     * @param type     The leaderboard to read
+     * @param page     The page to get, starting at 1
+     * @param pageSize The number of players per page
+     * @return the stats of the players on that page in rank order
+     */
+    public List<PlayerStats> getPage(LeaderboardType type, int page, int pageSize) {
+        List<PlayerStats> entries = new ArrayList<>();
+        for (UUID uuid : leaderboards.get(type).getRange((page - 1) * pageSize, pageSize)) {
+            entries.add(stats.get(uuid));
+        }
+        return entries;
+    }
+
+    /**
+     * Get the number of pages in a leaderboard
+     *
+     * @param type     The leaderboard to check
+     * @param pageSize The number of players per page
+     * @return the number of pages, at least 1
+     */
+    public int getPageCount(LeaderboardType type, int pageSize) {
+        return Math.max(1, (leaderboards.get(type).size() + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * Get the rank of a player on a leaderboard
+     *
+     * @param type The leaderboard to check
+     * @param uuid The UUID of the player
+     * @return the players rank starting at 1, or -1 if they aren't ranked
+     */
+    public int getRank(LeaderboardType type, UUID uuid) {
+        return leaderboards.get(type).getRank(uuid);
+    }
+
+    /**
+     * Get the current stats of a player
+     *
+     * @param uuid The UUID of the player
+     * @return the players stats, or null if they have never played
+     */
+    public PlayerStats getStats(UUID uuid) {
+        return stats.get(uuid);
+    }
+
+    private void set(PlayerStats playerStats) {
+        UUID uuid = playerStats.getUniqueId();
+        stats.put(uuid, playerStats);
+        for (Map.Entry<LeaderboardType, Leaderboard> entry : leaderboards.entrySet()) {
+            LeaderboardType type = entry.getKey();
+            if (type == LeaderboardType.winRate && playerStats.getGamesPlayed() < minimumGamesForWinRate)
+                continue;
+            entry.getValue().update(uuid, type.getScore(playerStats));
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+/**
+ * The leaderboards that are kept in memory for commands and holograms
+ */
+public enum LeaderboardType {
+
+    /**
+     * Players ranked by the number of games they have won
+     */
+    wins,
+    /**
+     * Players ranked by the percentage of their games that they have won
+     */
+    winRate,
+    /**
+     * Players ranked by the number of games they have played
+     */
+    gamesPlayed;
+
+    /**
+     * Calculate a players score on this leaderboard
+     *
+     * @param stats The players stats
+     * @return the players score
+     */
+    public double getScore(PlayerStats stats) {
+        switch (this) {
+            case wins:
+                return stats.getWins();
+            case winRate:
+                return stats.getGamesPlayed() == 0 ? 0 : stats.getWins() * 100d / stats.getGamesPlayed();
+            case gamesPlayed:
+                return stats.getGamesPlayed();
+            default:
+                throw new IllegalStateException("Unknown leaderboard " + this);
+        }
+    }
+
+    /**
+     * Format a score from this leaderboard for display
+     *
+     * @param score The score to format
+     * @return the score as it should be shown to players
+     */
+    public String format(double score) {
+        return this == winRate ? String.format("%.1f%%", score) : String.valueOf((long) score);
+    }
+
+    /**
+     * Find a leaderboard from its name, ignoring case
+     *
+     * @param name The name of the leaderboard
+     * @return the leaderboard with this name, or null if there isn't one
+     */
+    public static LeaderboardType fromName(String name) {
+        for (LeaderboardType type : values()) {
+            if (type.name().equalsIgnoreCase(name))
+                return type;
+        }
+        return null;
+    }
+
+}
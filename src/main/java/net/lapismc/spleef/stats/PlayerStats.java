@@ -0,0 +1,136 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+import java.util.UUID;
+
+/**
+ * The statistics stored for a single player
+ * This class is also used to describe changes to a players stats, where each value is the amount to add
+ */
+public class PlayerStats {
+
+    private final UUID uuid;
+    private final String username;
+    private final int gamesPlayed, wins, losses, abandoned;
+
+    /**
+     * Create a set of player stats
+     *
+     * @param uuid        The UUID of the player
+     * @param username    The last known name of the player, may be null if it isn't known
+     * @param gamesPlayed The number of games played
+     * @param wins        The number of games won
+     * @param losses      The number of games lost
+     * @param abandoned   The number of games left before they ended
+     */
+    public PlayerStats(UUID uuid, String username, int gamesPlayed, int wins, int losses, int abandoned) {
+        this.uuid = uuid;
+        this.username = username;
+        this.gamesPlayed = gamesPlayed;
+        this.wins = wins;
+        this.losses = losses;
+        this.abandoned = abandoned;
+    }
+
+    /**
+     * Get the UUID of the player these stats belong to
+     *
+     * @return the players UUID
+     */
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    /**
+     * Get the last known name of the player
+     *
+     * @return the players name, or null if it isn't known
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Get the value of a statistic
+     *
+     * @param type The statistic to get
+     * @return the value of that statistic
+     */
+    public int get(StatType type) {
+        switch (type) {
+            case gamesPlayed:
+                return gamesPlayed;
+            case wins:
+                return wins;
+            case losses:
+                return losses;
+            case abandoned:
+                return abandoned;
+            default:
+                throw new IllegalArgumentException("Unknown stat type " + type);
+        }
+    }
+
+    /**
+     * Get the number of games played
+     *
+     * @return the number of games played
+     */
+    public int getGamesPlayed() {
+        return gamesPlayed;
+    }
+
+    /**
+     * Get the number of games won
+     *
+     * @return the number of wins
+     */
+    public int getWins() {
+        return wins;
+    }
+
+    /**
+     * Get the number of games lost
+     *
+     * @return the number of losses
+     */
+    public int getLosses() {
+        return losses;
+    }
+
+    /**
+     * Get the number of games left before they ended
+     *
+     * @return the number of abandoned games
+     */
+    public int getAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * Add a change to these stats
+     *
+     * @param update The amounts to add, the username of the update replaces this one if it is set
+     * @return a new stats object with the update applied
+     */
+    public PlayerStats add(PlayerStats update) {
+        return new PlayerStats(uuid, update.username != null ? update.username : username, gamesPlayed + update.gamesPlayed,
+                wins + update.wins, losses + update.losses, abandoned + update.abandoned);
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * The default stats backend, stores stats in a local SQLite database with an index on every statistic
+ * The SQLite driver is shipped with the server so no extra dependencies are needed
+ */
+public class SQLiteStatsBackend implements StatsBackend {
+
+    private static final String UPDATE_SQL = "INSERT INTO player_stats (uuid, username, games_played, wins, losses, abandoned) "
+            + "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(uuid) DO UPDATE SET "
+            + "username = COALESCE(excluded.username, username), "
+            + "games_played = games_played + excluded.games_played, wins = wins + excluded.wins, "
+            + "losses = losses + excluded.losses, abandoned = abandoned + excluded.abandoned";
+    //Players already in the database are left alone, their stats may have changed since the import was first run
+    private static final String IMPORT_SQL = "INSERT INTO player_stats (uuid, username, games_played, wins, losses, abandoned) "
+            + "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(uuid) DO NOTHING";
+    private static final String SELECT_SQL = "SELECT uuid, username, games_played, wins, losses, abandoned FROM player_stats";
+
+    private final File databaseFile;
+    private Connection connection;
+
+    /**
+     * Create a backend that stores stats in the given file
+     *
+     * @param databaseFile The SQLite database file, it will be created if it doesn't exist
+     */
+    public SQLiteStatsBackend(File databaseFile) {
+        this.databaseFile = databaseFile;
+    }
+
+    @Override
+    public void open() throws StatsException {
+        try {
+            databaseFile.getParentFile().mkdirs();
+            connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                //WAL lets leaderboard reads continue while a game end is being written
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("CREATE TABLE IF NOT EXISTS player_stats (uuid TEXT PRIMARY KEY, username TEXT, "
+                        + "games_played INTEGER NOT NULL DEFAULT 0, wins INTEGER NOT NULL DEFAULT 0, "
+                        + "losses INTEGER NOT NULL DEFAULT 0, abandoned INTEGER NOT NULL DEFAULT 0)");
+                for (StatType type : StatType.values()) {
+                    statement.execute("CREATE INDEX IF NOT EXISTS player_stats_" + type.getColumn()
+                            + " ON player_stats (" + type.getColumn() + " DESC)");
+                }
+            }
+        } catch (SQLException e) {
+            throw new StatsException("Failed to open the stats database " + databaseFile.getName(), e);
+        }
+    }
+
+    @Override
+    public PlayerStats getStats(UUID uuid) throws StatsException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_SQL + " WHERE uuid = ?")) {
+            statement.setString(1, uuid.toString());
+            try (ResultSet results = statement.executeQuery()) {
+                return results.next() ? read(results) : null;
+            }
+        } catch (SQLException e) {
+            throw new StatsException("Failed to load stats for " + uuid, e);
+        }
+    }
+
+    @Override
+    public void applyUpdates(Collection<PlayerStats> updates) throws StatsException {
+        executeBatch(UPDATE_SQL, updates);
+    }
+
+    @Override
+    public void importStats(Collection<PlayerStats> stats) throws StatsException {
+        executeBatch(IMPORT_SQL, stats);
+    }
+
+    @Override
+    public List<PlayerStats> getTop(StatType type, int limit) throws StatsException {
+        List<PlayerStats> top = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_SQL + " ORDER BY "
+                + type.getColumn() + " DESC LIMIT ?")) {
+            statement.setInt(1, limit);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    top.add(read(results));
+                }
+            }
+        } catch (SQLException e) {
+            throw new StatsException("Failed to load the top players for " + type, e);
+        }
+        return top;
+    }
+
+    @Override
+    public void forEach(Consumer<PlayerStats> action) throws StatsException {
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery(SELECT_SQL)) {
+            while (results.next()) {
+                action.accept(read(results));
+            }
+        } catch (SQLException e) {
+            throw new StatsException("Failed to load player stats", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (connection != null)
+                connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Run a statement for every player in one transaction, so that either all rows are written or none are
+     */
+    private void executeBatch(String sql, Collection<PlayerStats> stats) throws StatsException {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (PlayerStats stat : stats) {
+                    statement.setString(1, stat.getUniqueId().toString());
+                    statement.setString(2, stat.getUsername());
+                    statement.setInt(3, stat.getGamesPlayed());
+                    statement.setInt(4, stat.getWins());
+                    statement.setInt(5, stat.getLosses());
+                    statement.setInt(6, stat.getAbandoned());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new StatsException("Failed to store stats for " + stats.size() + " players", e);
+        }
+    }
+
+    private PlayerStats read(ResultSet results) throws SQLException {
+        return new PlayerStats(UUID.fromString(results.getString("uuid")), results.getString("username"),
+                results.getInt("games_played"), results.getInt("wins"), results.getInt("losses"), results.getInt("abandoned"));
+    }
+
+}
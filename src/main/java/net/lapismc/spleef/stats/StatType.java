@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+/**
+ * The statistics that are tracked for every player
+ */
+public enum StatType {
+
+    /**
+     * The number of games a player has taken part in
+     */
+    gamesPlayed("games_played"),
+    /**
+     * The number of games a player has won
+     */
+    wins("wins"),
+    /**
+     * The number of games a player has lost
+     */
+    losses("losses"),
+    /**
+     * The number of games a player has left before they ended
+     */
+    abandoned("abandoned");
+
+    private final String column;
+
+    StatType(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Get the name of the database column that stores this statistic
+     *
+     * @return the column name
+     */
+    public String getColumn() {
+        return column;
+    }
+
+}
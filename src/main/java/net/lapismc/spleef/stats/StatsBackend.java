@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * A storage backend for player statistics
+ * Backends are only ever used from the stats thread of the {@link StatsManager}, so they don't need to be thread safe
+ */
+public interface StatsBackend {
+
+    /**
+     * Open the backend, creating any storage that doesn't exist yet
+     *
+     * @throws StatsException if the storage can't be opened
+     */
+    void open() throws StatsException;
+
+    /**
+     * Get the stats of a single player
+     *
+     * @param uuid The UUID of the player
+     * @return the players stats, or null if there are no stats stored for them
+     * @throws StatsException if the stats can't be read
+     */
+    PlayerStats getStats(UUID uuid) throws StatsException;
+
+    /**
+     * Add a batch of changes to the stored stats
+     * Either every update in the batch is stored or none are
+     *
+     * @param updates The changes to add, each value is added to the players current value
+     * @throws StatsException if the batch can't be stored
+     */
+    void applyUpdates(Collection<PlayerStats> updates) throws StatsException;
+
+    /**
+     * Store the stats of players that don't have any stored yet, this is used when migrating from another storage
+     * Players who already have stats are skipped, so running an import again never overwrites newer stats
+     *
+     * @param stats The stats to store
+     * @throws StatsException if the stats can't be stored
+     */
+    void importStats(Collection<PlayerStats> stats) throws StatsException;
+
+    /**
+     * Get the players with the highest value for a statistic
+     *
+     * @param type  The statistic to sort by
+     * @param limit The maximum number of players to return
+     * @return the top players, highest first
+     * @throws StatsException if the stats can't be read
+     */
+    List<PlayerStats> getTop(StatType type, int limit) throws StatsException;
+
+    /**
+     * Run an action for the stats of every stored player
+     *
+     * @param action The action to run for each player
+     * @throws StatsException if the stats can't be read
+     */
+    void forEach(Consumer<PlayerStats> action) throws StatsException;
+
+    /**
+     * Close the backend and release any resources it holds
+     */
+    void close();
+
+}
@@ -0,0 +1,34 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+/**
+ * Thrown when a stats backend fails to read or write stats
+ */
+public class StatsException extends Exception {
+
+    /**
+     * Create a stats exception
+     *
+     * @param message A description of what failed
+     * @param cause   The underlying error
+     */
+    public StatsException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.stats;
+
+import net.lapismc.spleef.LapisSpleef;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Handles reading and writing player statistics
+ * All backend access happens on a dedicated thread, so game ends and leaderboard queries never wait on the disk
+ */
+public class StatsManager {
+
+    //The number of players imported per transaction when migrating old player data files
+    private static final int MIGRATION_BATCH_SIZE = 500;
+
+    private final LapisSpleef plugin;
+    private final StatsBackend backend;
+    private final ExecutorService executor;
+    private final LeaderboardManager leaderboards;
+    //Player rows written and transactions committed, each commit syncs the database to disk
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    //Cleared if the backend fails to open, nothing is sent to it after that
+    private volatile boolean available = true;
+
+    /**
+     * Initialize the stats manager, this opens the configured backend, migrates stats from old player data files
+     * and then loads the leaderboards
+     * If the backend can't be opened the leaderboards start empty and stats are only kept in memory
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public StatsManager(LapisSpleef plugin) {
+        this.plugin = plugin;
+        backend = createBackend(plugin.getConfig().getString("Stats.Backend", "sqlite"));
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "LapisSpleef Stats"));
+        leaderboards = new LeaderboardManager(plugin.getConfig().getInt("Leaderboards.MinimumGamesForWinRate", 10));
+        executor.execute(() -> {
+            List<PlayerStats> allStats = new ArrayList<>();
+            try {
+                backend.open();
+            } catch (StatsException e) {
+                logError(e);
+                plugin.getLogger().severe("Player stats won't be saved until the stats database can be opened");
+                available = false;
+                //The leaderboards are still loaded so that updates queued for them don't build up forever
+                Bukkit.getScheduler().runTask(plugin, () -> leaderboards.load(allStats));
+                return;
+            }
+            try {
+                migrateLegacyStats();
+            } catch (StatsException e) {
+                logError(e);
+            }
+            try {
+                backend.forEach(allStats::add);
+            } catch (StatsException e) {
+                logError(e);
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> leaderboards.load(allStats));
+        });
+    }
+
+    /**
+     * Store the results of a game, all updates are written in a single transaction
+     * The leaderboards are updated straight away, this must be called from the main thread
+     *
+     * @param updates The changes to each players stats, each value is added to the players current value
+     */
+    public void recordGame(Collection<PlayerStats> updates) {
+        if (updates.isEmpty())
+            return;
+        List<PlayerStats> batch = new ArrayList<>(updates);
+        leaderboards.applyUpdates(batch);
+        if (!available)
+            return;
+        executor.execute(() -> {
+            //The backend may have failed to open after this update was queued
+            if (!available)
+                return;
+            try {
+                backend.applyUpdates(batch);
+                recordWrite(batch.size());
+            } catch (StatsException e) {
+                logError(e);
+            }
+        });
+    }
+
+    /**
+     * Get the in memory leaderboards, these are kept up to date as games end
+     *
+     * @return the leaderboard manager
+     */
+    public LeaderboardManager getLeaderboards() {
+        return leaderboards;
+    }
+
+    /**
+     * Load the stats of a player
+     *
+     * @param uuid The UUID of the player
+     * @return a future that completes with the players stats, or null if they have none
+     */
+    public CompletableFuture<PlayerStats> getStats(UUID uuid) {
+        return supply(() -> backend.getStats(uuid));
+    }
+
+    /**
+     * Load the players with the highest value for a statistic
+     *
+     * @param type  The statistic to sort by
+     * @param limit The maximum number of players to return
+     * @return a future that completes with the top players, highest first
+     */
+    public CompletableFuture<List<PlayerStats>> getTop(StatType type, int limit) {
+        return supply(() -> backend.getTop(type, limit));
+    }
+
+    /**
+     * Get the number of player stats rows written to the backend
+     *
+     * @return the number of rows written
+     */
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    /**
+     * Get the number of transactions committed to the backend, SQLite syncs the database on every commit
+     *
+     * @return the number of fsyncs
+     */
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    /**
+     * Write any queued updates and close the backend, this blocks until everything is stored
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+                plugin.getLogger().warning("Timed out waiting for player stats to be saved");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        backend.close();
+    }
+
+    private void recordWrite(int rows) {
+        writes.add(rows);
+        syncs.increment();
+    }
+
+    private StatsBackend createBackend(String type) {
+        if (!type.equalsIgnoreCase("sqlite"))
+            plugin.getLogger().warning("Unknown stats backend " + type + ", using sqlite instead");
+        return new SQLiteStatsBackend(new File(plugin.getDataFolder(), "stats.db"));
+    }
+
+    /**
+     * Import stats from the per player YAML files used by older versions
+     * This only runs once, a marker file is created once every file has been imported
+     */
+    private void migrateLegacyStats() throws StatsException {
+        File playerDataFolder = new File(plugin.getDataFolder(), "PlayerData");
+        File marker = new File(playerDataFolder, ".stats-migrated");
+        File[] files = playerDataFolder.listFiles((dir, name) -> name.endsWith(".yml"));
+        if (files == null || marker.exists())
+            return;
+        List<PlayerStats> batch = new ArrayList<>();
+        int migrated = 0;
+        for (File file : files) {
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(file.getName().substring(0, file.getName().length() - 4));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+            if (!yaml.contains("Stats"))
+                continue;
+            batch.add(new PlayerStats(uuid, yaml.getString("Username"), yaml.getInt("Stats.GamesPlayed"),
+                    yaml.getInt("Stats.Wins"), yaml.getInt("Stats.Losses"), yaml.getInt("Stats.Abandoned")));
+            if (batch.size() >= MIGRATION_BATCH_SIZE) {
+                backend.importStats(batch);
+                recordWrite(batch.size());
+                migrated += batch.size();
+                batch.clear();
+            }
+        }
+        backend.importStats(batch);
+        recordWrite(batch.size());
+        migrated += batch.size();
+        try {
+            marker.createNewFile();
+        } catch (IOException e) {
+            //Players already in the database are skipped, so migrating again won't overwrite their newer stats
+            plugin.getLogger().warning("Failed to create " + marker.getName() + ", player data files will be checked again next start");
+        }
+        plugin.getLogger().info("Migrated stats for " + migrated + " players from player data files");
+    }
+
+    private <T> CompletableFuture<T> supply(StatsCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (!available) {
+                future.completeExceptionally(new StatsException("The stats database isn't open", null));
+                return;
+            }
+            try {
+                future.complete(call.call());
+            } catch (StatsException e) {
+                logError(e);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void logError(StatsException e) {
+        plugin.getLogger().severe(e.getMessage());
+        plugin.getLogger().severe(String.valueOf(e.getCause()));
+    }
+
+    private interface StatsCall<T> {
+        T call() throws StatsException;
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Writes files on a background thread so that saving data never blocks the main thread
+ * Repeated writes to the same file are coalesced so only the latest contents are written,
+ * and every write goes to a temporary file that is then atomically moved over the original
+ */
+public class AsyncFileWriter {
+
+    private final Logger logger;
+    private final ExecutorService executor;
+    //Writes that have been requested but not yet started, by file
+    private final Map<File, PendingWrite> pending = new ConcurrentHashMap<>();
+    //Totals used to report how much disk activity the plugin causes
+    private final LongAdder requestedWrites = new LongAdder();
+    private final LongAdder completedWrites = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * Create a writer with its own background thread
+     *
+     * @param logger The logger that failed writes will be reported to
+     */
+    public AsyncFileWriter(Logger logger) {
+        this.logger = logger;
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "LapisSpleef File Writer"));
+    }
+
+    /**
+     * Queue the contents of a file to be written
+     * If a write for this file is already waiting, its contents are replaced and both callers share the same future
+     *
+     * @param file     The file to write
+     * @param contents The full contents the file should have
+     * @return a future that completes once the contents, or newer contents, are safely on disk
+     */
+    public CompletableFuture<Void> write(File file, String contents) {
+        requestedWrites.increment();
+        boolean[] queued = new boolean[1];
+        PendingWrite write = pending.compute(file, (f, existing) -> {
+            if (existing == null) {
+                queued[0] = true;
+                return new PendingWrite(contents);
+            }
+            existing.contents = contents;
+            return existing;
+        });
+        if (queued[0]) {
+            try {
+                executor.execute(() -> writePending(file));
+            } catch (RejectedExecutionException e) {
+                //The writer has been shut down, write it now rather than losing the data
+                writePending(file);
+            }
+        }
+        return write.future;
+    }
+
+    /**
+     * Get the contents that are waiting to be written to a file
+     * This should be used when loading a file so that data which hasn't reached the disk yet isn't lost
+     *
+     * @param file The file to check
+     * @return the contents that will be written, or null if there is no write waiting for this file
+     */
+    public String getPendingContents(File file) {
+        PendingWrite write = pending.get(file);
+        return write == null ? null : write.contents;
+    }
+
+    /**
+     * Get the number of times a write has been requested, including writes that were coalesced with a later one
+     *
+     * @return the number of calls to {@link #write(File, String)}
+     */
+    public long getRequestedWrites() {
+        return requestedWrites.sum();
+    }
+
+    /**
+     * Get the number of files that have actually been written to disk
+     *
+     * @return the number of completed writes
+     */
+    public long getCompletedWrites() {
+        return completedWrites.sum();
+    }
+
+    /**
+     * Get the number of bytes written to disk
+     *
+     * @return the total size of every completed write
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Stop the background thread and write everything that is still waiting
+     * This blocks until all data is on disk and should be called when the plugin is disabled
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+                logger.warning("Timed out waiting for queued data to be saved, saving the remaining files now");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //Anything left over is written on this thread
+        for (File file : new ArrayList<>(pending.keySet())) {
+            writePending(file);
+        }
+    }
+
+    private void writePending(File file) {
+        PendingWrite write = pending.remove(file);
+        if (write == null)
+            return;
+        try {
+            writeAtomically(file.toPath(), write.contents);
+            completedWrites.increment();
+            write.future.complete(null);
+        } catch (IOException e) {
+            logger.severe("Failed to save " + file.getName());
+            logger.severe(e.toString());
+            write.future.completeExceptionally(e);
+        }
+    }
+
+    private void writeAtomically(Path path, String contents) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8));
+            bytesWritten.add(buffer.remaining());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            //Make sure the data is on disk before it replaces the old file
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static class PendingWrite {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private volatile String contents;
+
+        private PendingWrite(String contents) {
+            this.contents = contents;
+        }
+
+    }
+
+}
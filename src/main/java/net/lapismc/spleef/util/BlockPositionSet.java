@@ -0,0 +1,280 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A compact set of block positions, each position is packed into a single long
+ * Positions are kept in insertion order so that every position has a stable ordinal (its index in the set)
+ * Lookups use an open addressing hash table of ordinals so no boxed objects are ever created
+ */
+public class BlockPositionSet {
+
+    //Bits used for each axis of a packed position, this matches the range of positions in a Minecraft world
+    private static final int X_BITS = 26, Z_BITS = 26, Y_BITS = 12;
+    private static final int Y_SHIFT = 0, Z_SHIFT = Y_BITS, X_SHIFT = Y_BITS + Z_BITS;
+    private static final long X_MASK = (1L << X_BITS) - 1, Z_MASK = (1L << Z_BITS) - 1, Y_MASK = (1L << Y_BITS) - 1;
+
+    //The packed positions in insertion order, the index of a position is its ordinal
+    private long[] positions;
+    //Hash table of ordinal + 1 for each position, 0 marks an empty slot
+    private int[] table;
+    private int size;
+
+    /**
+     * Create an empty set
+     */
+    public BlockPositionSet() {
+        this(16);
+    }
+
+    /**
+     * Create an empty set sized to hold the given number of positions without resizing
+     *
+     * @param expectedSize The number of positions you expect to add
+     */
+    public BlockPositionSet(int expectedSize) {
+        positions = new long[Math.max(expectedSize, 1)];
+        table = new int[tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * Pack block coordinates into a single long
+     *
+     * @param x The X coordinate of the block
+     * @param y The Y coordinate of the block
+     * @param z The Z coordinate of the block
+     * @return the packed position
+     */
+    public static long pack(int x, int y, int z) {
+        return ((x & X_MASK) << X_SHIFT) | ((z & Z_MASK) << Z_SHIFT) | ((y & Y_MASK) << Y_SHIFT);
+    }
+
+    /**
+     * Get the X coordinate from a packed position
+     *
+     * @param packed The packed position
+     * @return the X coordinate
+     */
+    public static int unpackX(long packed) {
+        return (int) (packed >> X_SHIFT);
+    }
+
+    /**
+     * Get the Y coordinate from a packed position
+     *
+     * @param packed The packed position
+     * @return the Y coordinate
+     */
+    public static int unpackY(long packed) {
+        return (int) (packed << (64 - Y_BITS - Y_SHIFT) >> (64 - Y_BITS));
+    }
+
+    /**
+     * Get the Z coordinate from a packed position
+     *
+     * @param packed The packed position
+     * @return the Z coordinate
+     */
+    public static int unpackZ(long packed) {
+        return (int) (packed << (64 - Z_BITS - Z_SHIFT) >> (64 - Z_BITS));
+    }
+
+    /**
+     * Add a position to the set, the position will be given the next ordinal
+     *
+     * @param packed The packed position to add
+     * @return true if the position was added, false if it was already in the set
+     */
+    public boolean add(long packed) {
+        if (indexOf(packed) >= 0)
+            return false;
+        if (size == positions.length)
+            positions = Arrays.copyOf(positions, size * 2);
+        //Grow the table if it would become more than half full
+        if ((size + 1) * 2 > table.length)
+            rehash(table.length * 2);
+        positions[size] = packed;
+        insert(packed, size);
+        size++;
+        return true;
+    }
+
+    /**
+     * Check if a position is in this set
+     *
+     * @param packed The packed position to check
+     * @return true if the position is in the set, otherwise false
+     */
+    public boolean contains(long packed) {
+        return indexOf(packed) >= 0;
+    }
+
+    /**
+     * Get the ordinal of a position in this set
+     *
+     * @param packed The packed position to find
+     * @return the ordinal of the position, or -1 if it isn't in the set
+     */
+    public int indexOf(long packed) {
+        int mask = table.length - 1;
+        int slot = hash(packed) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (positions[entry - 1] == packed)
+                return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the packed position with the given ordinal
+     *
+     * @param ordinal The ordinal of the position, must be less than {@link #size()}
+     * @return the packed position
+     */
+    public long get(int ordinal) {
+        if (ordinal < 0 || ordinal >= size)
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " is out of bounds for size " + size);
+        return positions[ordinal];
+    }
+
+    /**
+     * Get the number of positions in this set
+     *
+     * @return the number of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if this set has no positions
+     *
+     * @return true if the set is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get a copy of the packed positions in ordinal order
+     *
+     * @return an array of packed positions
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(positions, size);
+    }
+
+    /**
+     * Encode packed positions into a compact string for storing in config files
+     * The positions are sorted and stored as base64 varint deltas, neighbouring blocks on a floor only take a couple of bytes each
+     * The order of the positions is not kept
+     *
+     * @param positions The packed positions to encode
+     * @return the encoded positions
+     */
+    public static String encode(long[] positions) {
+        long[] sorted = positions.clone();
+        Arrays.sort(sorted);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sorted.length * 2 + 8);
+        writeVarLong(out, sorted.length);
+        long previous = 0;
+        for (long position : sorted) {
+            //Sorted deltas are never negative, the first delta may overflow but is still written as an unsigned value
+            writeVarLong(out, position - previous);
+            previous = position;
+        }
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * Decode positions that were encoded with {@link #encode(long[])}
+     *
+     * @param encoded The encoded positions
+     * @return the packed positions in sorted order
+     * @throws IllegalArgumentException if the string isn't a valid encoding
+     */
+    public static long[] decode(String encoded) {
+        byte[] bytes = Base64.getDecoder().decode(encoded);
+        int[] offset = new int[1];
+        long length = readVarLong(bytes, offset);
+        if (length < 0 || length > bytes.length)
+            throw new IllegalArgumentException("Invalid position count " + length);
+        long[] positions = new long[(int) length];
+        long previous = 0;
+        for (int i = 0; i < positions.length; i++) {
+            previous += readVarLong(bytes, offset);
+            positions[i] = previous;
+        }
+        return positions;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] bytes, int[] offset) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (offset[0] >= bytes.length)
+                throw new IllegalArgumentException("Encoded positions are truncated");
+            byte b = bytes[offset[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Encoded position is too long");
+    }
+
+    private void insert(long packed, int ordinal) {
+        int mask = table.length - 1;
+        int slot = hash(packed) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = ordinal + 1;
+    }
+
+    private void rehash(int newLength) {
+        table = new int[newLength];
+        for (int i = 0; i < size; i++) {
+            insert(positions[i], i);
+        }
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        //Keep the table at most half full so that probe chains stay short
+        int needed = Math.max(expectedSize, 1) * 2;
+        return Math.max(Integer.highestOneBit(needed - 1) << 1, 4);
+    }
+
+    private static int hash(long packed) {
+        //Mix the bits so that neighbouring blocks don't land in neighbouring slots
+        long h = packed * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -17,40 +17,47 @@
 package net.lapismc.spleef.util;
 
 import net.lapismc.spleef.LapisSpleef;
-import net.lapismc.spleef.arena.SpleefPlayer;
+import net.lapismc.spleef.arena.ArenaAudience;
+import net.lapismc.spleef.metrics.LatencyHistogram;
 import org.bukkit.Bukkit;
 import org.bukkit.boss.BarColor;
 import org.bukkit.boss.BarStyle;
 import org.bukkit.boss.BossBar;
-import org.bukkit.scheduler.BukkitTask;
-import org.ocpsoft.prettytime.PrettyTime;
+import org.bukkit.entity.Player;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 
 /**
  * A util class for managing BossBar progress/timer bars
+ * Bars are refreshed by the shared {@link CountdownService}, and only send updates to players when what they see changes
  */
 public class CountdownManager {
 
-    private final LapisSpleef plugin;
-    private final List<SpleefPlayer> players = new ArrayList<>();
+    //The boss bar is 182 pixels wide, so the client can't show progress more precisely than this
+    private static final int PROGRESS_STEPS = 182;
+
+    private final CountdownService service;
+    private final LatencyHistogram refreshTimer;
+    //The players who see the bar, null if the bar has no audience
+    private ArenaAudience audience;
     BossBar bar;
-    BukkitTask refreshTask;
     String text;
     Long startTime, endTime;
     private boolean isVisible = false;
+    //The values last sent to players, used to skip updates that wouldn't change anything
+    private String lastTitle;
+    private long lastSecondsRemaining = -1;
+    private double lastProgress = -1;
 
     /**
-     * Init the manager, needs the plugin to register tasks
+     * Init the manager, needs the plugin to access the shared countdown service
      *
      * @param plugin the LapisSpleef main class
      */
     public CountdownManager(LapisSpleef plugin) {
-        this.plugin = plugin;
+        this.service = plugin.getCountdownService();
+        refreshTimer = plugin.getMetrics().histogram("spleef_countdown_refresh_seconds", "Time spent refreshing a countdown boss bar");
         bar = Bukkit.createBossBar("", BarColor.BLUE, BarStyle.SOLID);
-        plugin.tasks.addShutdownTask(this::cancelRefreshTask);
     }
 
     /**
@@ -60,6 +67,8 @@ public class CountdownManager {
      */
     public void setText(String text) {
         this.text = text;
+        //Force the title to be rebuilt on the next refresh
+        lastSecondsRemaining = -1;
     }
 
     /**
@@ -70,20 +79,28 @@ public class CountdownManager {
     public void startCountdown(long length) {
         startTime = System.currentTimeMillis();
         endTime = startTime + length;
+        lastSecondsRemaining = -1;
         setVisible(true);
     }
 
     /**
-     * Add players to be able to see the boss bar
+     * Set the audience that will see the boss bar, the bar is shown to the whole audience when it becomes visible
      *
-     * @param players The players who should be added
+     * @param audience The audience who should see the bar
      */
-    public void addPlayers(List<SpleefPlayer> players) {
-        this.players.addAll(players);
-        if (isVisible) {
-            for (SpleefPlayer player : players)
-                bar.addPlayer(player.getBukkitPlayer());
-        }
+    public void setAudience(ArenaAudience audience) {
+        this.audience = audience;
+        if (isVisible && audience != null)
+            audience.showBossBar(bar);
+    }
+
+    /**
+     * Stop showing the boss bar to a player, e.g. when they leave the arena
+     *
+     * @param player The player who should no longer see the bar
+     */
+    public void removePlayer(Player player) {
+        bar.removePlayer(player);
     }
 
     /**
@@ -93,50 +110,71 @@ public class CountdownManager {
      */
     public void setVisible(boolean visible) {
         if (visible) {
-            cancelRefreshTask();
-            refreshTask = Bukkit.getScheduler().runTaskTimer(plugin, this::refresh, 1, 1);
+            service.register(this);
             isVisible = true;
             bar.setVisible(true);
-            for (SpleefPlayer player : players) {
-                bar.addPlayer(player.getBukkitPlayer());
-            }
+            if (audience != null)
+                audience.showBossBar(bar);
         } else {
-            cancelRefreshTask();
+            service.unregister(this);
             isVisible = false;
             bar.setVisible(false);
             bar.removeAll();
         }
     }
 
-    private void cancelRefreshTask() {
-        if (refreshTask != null && !refreshTask.isCancelled())
-            refreshTask.cancel();
+    /**
+     * Refresh the boss bar with new progress and time remaining text
+     */
+    public void refresh() {
+        refresh(System.currentTimeMillis());
     }
 
     /**
      * Refresh the boss bar with new progress and time remaining text
+     * The title and progress are only sent to players if they have changed since the last refresh
+     *
+     * @param now The current time in milliseconds
      */
-    public void refresh() {
+    void refresh(long now) {
+        long start = System.nanoTime();
+        update(now);
+        refreshTimer.recordSince(start);
+    }
+
+    private void update(long now) {
         //Set the text
         //Only set the text of we have text to set
         if (text != null) {
             //Don't append time remaining if it hasn't been set or if the countdown has ended
-            String prettyString = endTime != null && endTime > System.currentTimeMillis() ?
-                    new PrettyTime().format(new Date(endTime)) : "";
-            String msg = text + prettyString;
-            bar.setTitle(msg);
+            long secondsRemaining = endTime != null && endTime > now ? (endTime - now + 999) / 1000 : 0;
+            //The time remaining text only changes when a whole second passes, so only format it then
+            if (secondsRemaining != lastSecondsRemaining) {
+                lastSecondsRemaining = secondsRemaining;
+                String prettyString = secondsRemaining > 0 ? service.getPrettyTime().format(new Date(endTime)) : "";
+                String msg = text + prettyString;
+                if (!msg.equals(lastTitle)) {
+                    lastTitle = msg;
+                    bar.setTitle(msg);
+                }
+            }
         }
         //Only set the progress if we have the data to do so
         if (startTime != null && endTime != null) {
             //Set the progress
             long totalTime = endTime - startTime;
-            long amountPassed = System.currentTimeMillis() - startTime;
+            long amountPassed = now - startTime;
             //Calculate the progress
             double progress = (double) amountPassed / (double) totalTime;
             //Clamp the value between 0 - 1
             progress = Math.max(0, Math.min(1, progress));
-            //Set the progress on the bar
-            bar.setProgress(progress);
+            //Round to a whole pixel of the bar, smaller changes can't be seen by the client
+            progress = Math.round(progress * PROGRESS_STEPS) / (double) PROGRESS_STEPS;
+            //Set the progress on the bar if it has changed
+            if (progress != lastProgress) {
+                lastProgress = progress;
+                bar.setProgress(progress);
+            }
         }
     }
 
@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import net.lapismc.spleef.LapisSpleef;
+import org.ocpsoft.prettytime.PrettyTime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives every visible {@link CountdownManager} from a single game loop timer
+ * The timer only runs while at least one countdown is visible
+ */
+public class CountdownService {
+
+    private final LapisSpleef plugin;
+    private final List<CountdownManager> countdowns = new ArrayList<>();
+    //Shared formatter for the time remaining, creating one per refresh is expensive
+    private final PrettyTime prettyTime = new PrettyTime();
+    private TimingWheel.Timer timer;
+
+    /**
+     * Initialize the countdown service
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public CountdownService(LapisSpleef plugin) {
+        this.plugin = plugin;
+        plugin.tasks.addShutdownTask(this::stop);
+    }
+
+    /**
+     * Start refreshing a countdown every tick
+     *
+     * @param countdown The countdown to refresh
+     */
+    void register(CountdownManager countdown) {
+        if (countdowns.contains(countdown))
+            return;
+        countdowns.add(countdown);
+        if (timer == null)
+            timer = plugin.getGameLoop().scheduleRepeating(null, 1, 1, this::tick);
+    }
+
+    /**
+     * Stop refreshing a countdown
+     *
+     * @param countdown The countdown to stop refreshing
+     */
+    void unregister(CountdownManager countdown) {
+        countdowns.remove(countdown);
+        if (countdowns.isEmpty())
+            stop();
+    }
+
+    /**
+     * Get the shared formatter used for countdown text
+     *
+     * @return the PrettyTime instance
+     */
+    PrettyTime getPrettyTime() {
+        return prettyTime;
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (CountdownManager countdown : countdowns) {
+            countdown.refresh(now);
+        }
+    }
+
+    private void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.metrics.LatencyHistogram;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * The plugin wide game loop, every timed arena state transition and countdown runs from here
+ * Timers are kept in a {@link TimingWheel} that is advanced by a single task, the task only runs while timers are pending
+ * The time spent in each tick is recorded in the spleef_game_loop_tick_seconds histogram
+ */
+public class GameLoop {
+
+    private final LapisSpleef plugin;
+    private final TimingWheel wheel;
+    private final LatencyHistogram tickTimer;
+    private BukkitTask task;
+    private long lastTickNanos;
+
+    /**
+     * Initialize the game loop
+     *
+     * @param plugin The LapisSpleef main class
+     */
+    public GameLoop(LapisSpleef plugin) {
+        this.plugin = plugin;
+        wheel = new TimingWheel(plugin.getLogger());
+        tickTimer = plugin.getMetrics().histogram("spleef_game_loop_tick_seconds", "Time spent running game loop timers each tick");
+        plugin.tasks.addShutdownTask(this::stop);
+    }
+
+    /**
+     * Run a task once after a delay
+     *
+     * @param group The group the timer belongs to, or null if it should only be cancelled on its own
+     * @param delay The number of ticks to wait, at least 1
+     * @param task  The task to run
+     * @return the timer, this can be used to cancel the task
+     */
+    public TimingWheel.Timer schedule(TimingWheel.TimerGroup group, long delay, Runnable task) {
+        return scheduleRepeating(group, delay, 0, task);
+    }
+
+    /**
+     * Run a task every few ticks until it is cancelled
+     *
+     * @param group  The group the timer belongs to, or null if it should only be cancelled on its own
+     * @param delay  The number of ticks to wait before the first run, at least 1
+     * @param period The number of ticks between runs
+     * @param task   The task to run
+     * @return the timer, this can be used to cancel the task
+     */
+    public TimingWheel.Timer scheduleRepeating(TimingWheel.TimerGroup group, long delay, long period, Runnable task) {
+        TimingWheel.Timer timer = wheel.scheduleRepeating(group, delay, period, task);
+        if (this.task == null)
+            this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+        return timer;
+    }
+
+    /**
+     * Get the number of timers waiting to run
+     *
+     * @return the number of pending timers
+     */
+    public int getPendingTimers() {
+        return wheel.size();
+    }
+
+    /**
+     * Get how long the most recent tick of the loop took
+     *
+     * @return the time spent in the last tick in nanoseconds
+     */
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        wheel.advance();
+        lastTickNanos = System.nanoTime() - start;
+        tickTimer.recordSince(start);
+        if (wheel.isEmpty())
+            stop();
+    }
+
+    private void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+}
@@ -0,0 +1,408 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the inventories stored while players are in arenas
+ * Storing an inventory appends a snapshot record, restoring it appends a clear record, so joining and leaving
+ * only ever append a few hundred bytes instead of rewriting a data file
+ * <p>
+ * Records are written by a background thread which commits everything queued since its last write with a single fsync,
+ * so many players joining in the same tick share one disk flush. On startup the journal is read back, any snapshot
+ * without a matching clear is kept for recovery, and the file is compacted down to just those snapshots
+ * <p>
+ * Each record is its length, a CRC32 of its body, then the body: a type byte, the players UUID and for snapshots
+ * the {@link InventorySnapshot}. A torn record at the end of the file, left by a crash mid-write, is discarded.
+ * A damaged record anywhere else means later snapshots can't be read, so the original file is kept as .corrupt
+ * before the journal is rewritten, and if the file can't be read at all it is only ever appended to
+ */
+public class InventoryJournal {
+
+    //"LSIJ" followed by the format version
+    private static final int MAGIC = 0x4C53494A;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final byte SNAPSHOT = 1;
+    private static final byte CLEAR = 2;
+    //The journal is compacted once it grows past this size
+    private static final long COMPACT_SIZE = 1024 * 1024;
+
+    private final Logger logger;
+    private final Path path;
+    private final ExecutorService executor;
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    //Snapshots left in the journal by a crash, waiting for their players to join
+    private final Map<UUID, byte[]> recovered = new ConcurrentHashMap<>();
+    //The snapshots that have no clear record, only used by the writer thread to compact the journal
+    private final Map<UUID, byte[]> live = new HashMap<>();
+    private FileChannel channel;
+    private volatile boolean shutdown;
+    //Set when the journal couldn't be read, compacting would then drop the snapshots that weren't recovered
+    private boolean partial;
+    //Records appended and fsyncs made, including compactions, used to report disk activity
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+
+    /**
+     * Open the journal, recovering any snapshots that were never cleared
+     *
+     * @param logger The logger that errors will be reported to
+     * @param file   The journal file, it is created if it doesn't exist
+     */
+    public InventoryJournal(Logger logger, File file) {
+        this.logger = logger;
+        this.path = file.toPath();
+        Recovery result = recover();
+        live.putAll(recovered);
+        try {
+            if (result == Recovery.FAILED) {
+                partial = true;
+                channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } else {
+                if (result == Recovery.CORRUPT)
+                    Files.move(path, path.resolveSibling(path.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+                compact();
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to open the inventory journal, stored inventories won't survive a crash");
+            logger.severe(e.toString());
+        }
+        if (!recovered.isEmpty())
+            logger.info("Recovered " + recovered.size() + " stored inventories that were not restored before the server stopped");
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "LapisSpleef Inventory Journal"));
+    }
+
+    /**
+     * Append a snapshot of a players inventory
+     *
+     * @param uuid     The UUID of the player
+     * @param snapshot The encoded inventory, see {@link InventorySnapshot}
+     * @return a future that completes once the snapshot is safely on disk
+     */
+    public CompletableFuture<Void> append(UUID uuid, byte[] snapshot) {
+        return submit(new Record(SNAPSHOT, uuid, snapshot));
+    }
+
+    /**
+     * Append a record that a players stored inventory has been given back, it will no longer be recovered
+     *
+     * @param uuid The UUID of the player
+     * @return a future that completes once the record is on disk
+     */
+    public CompletableFuture<Void> clear(UUID uuid) {
+        recovered.remove(uuid);
+        return submit(new Record(CLEAR, uuid, null));
+    }
+
+    /**
+     * Check if a player has an inventory that was stored before a crash and not yet given back
+     *
+     * @param uuid The UUID of the player
+     * @return true if there is a recovered snapshot for this player
+     */
+    public boolean hasRecovered(UUID uuid) {
+        return recovered.containsKey(uuid);
+    }
+
+    /**
+     * Get the snapshot that was recovered for a player
+     * The snapshot stays recoverable until it is cleared, so a crash before the inventory is given back doesn't lose it
+     *
+     * @param uuid The UUID of the player
+     * @return the recovered snapshot, or null if there isn't one
+     */
+    public byte[] getRecovered(UUID uuid) {
+        return recovered.get(uuid);
+    }
+
+    /**
+     * Get the number of records written to the journal, including snapshots rewritten by compaction
+     *
+     * @return the number of records written
+     */
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    /**
+     * Get the number of times the journal has been synced to disk, each commit or compaction is one sync
+     *
+     * @return the number of fsyncs
+     */
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    /**
+     * Write everything that is queued and close the journal, this blocks until the records are on disk
+     */
+    public void shutdown() {
+        shutdown = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+                logger.warning("Timed out waiting for the inventory journal to be written");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //Anything left over is written on this thread
+        commit();
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            logger.warning("Failed to close the inventory journal: " + e);
+        }
+    }
+
+    private CompletableFuture<Void> submit(Record record) {
+        queue.add(record);
+        try {
+            executor.execute(this::commit);
+        } catch (RejectedExecutionException e) {
+            //The journal has been shut down, write it now rather than losing the record
+            commit();
+        }
+        return record.future;
+    }
+
+    /**
+     * Write every queued record with one fsync
+     * Commits are queued once per record, so later commits often find the queue already empty
+     */
+    private synchronized void commit() {
+        List<Record> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        if (batch.isEmpty())
+            return;
+        try {
+            if (channel == null)
+                throw new IOException("The inventory journal isn't open");
+            int size = 0;
+            for (Record record : batch)
+                size += record.size();
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (Record record : batch) {
+                record.writeTo(buffer);
+                if (record.type == SNAPSHOT)
+                    live.put(record.uuid, record.snapshot);
+                else
+                    live.remove(record.uuid);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+            writes.add(batch.size());
+            syncs.increment();
+            for (Record record : batch)
+                record.future.complete(null);
+        } catch (IOException e) {
+            logger.severe("Failed to write " + batch.size() + " records to the inventory journal");
+            logger.severe(e.toString());
+            for (Record record : batch)
+                record.future.completeExceptionally(e);
+            return;
+        }
+        if (!shutdown && !partial && channel != null) {
+            try {
+                if (channel.size() > COMPACT_SIZE)
+                    compact();
+            } catch (IOException e) {
+                logger.warning("Failed to compact the inventory journal: " + e);
+            }
+        }
+    }
+
+    /**
+     * Read the journal and keep the snapshots that were never cleared
+     * Reading stops at the first record that is incomplete or fails its checksum, this is only a torn write if the
+     * record is the last thing in the file
+     *
+     * @return whether the journal was read cleanly, was damaged part way through or couldn't be read
+     */
+    private Recovery recover() {
+        if (!Files.exists(path))
+            return Recovery.CLEAN;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            long size = Files.size(path);
+            long remaining = size;
+            if (remaining < HEADER_SIZE) {
+                logger.warning("Discarded an incomplete header in the inventory journal");
+                return Recovery.CLEAN;
+            }
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                logger.severe("The inventory journal " + path.getFileName() + " isn't a journal this version can read");
+                Files.move(path, path.resolveSibling(path.getFileName() + ".unreadable"), StandardCopyOption.REPLACE_EXISTING);
+                return Recovery.CLEAN;
+            }
+            remaining -= HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (remaining > 0) {
+                long offset = size - remaining;
+                //A crash while appending leaves a partial record, everything before it is still valid
+                if (remaining < 8) {
+                    logger.warning("Discarded an incomplete record at the end of the inventory journal");
+                    break;
+                }
+                int length = in.readInt();
+                int checksum = in.readInt();
+                remaining -= 8;
+                if (length < 17 || length > 16 * 1024 * 1024) {
+                    corrupt(offset, "invalid record length " + length);
+                    return Recovery.CORRUPT;
+                }
+                if (length > remaining) {
+                    logger.warning("Discarded an incomplete record at the end of the inventory journal");
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                remaining -= length;
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    if (remaining == 0) {
+                        logger.warning("Discarded an incomplete record at the end of the inventory journal");
+                        break;
+                    }
+                    corrupt(offset, "record checksum mismatch");
+                    return Recovery.CORRUPT;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                byte type = buffer.get();
+                UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+                if (type == SNAPSHOT) {
+                    byte[] snapshot = new byte[buffer.remaining()];
+                    buffer.get(snapshot);
+                    recovered.put(uuid, snapshot);
+                } else {
+                    recovered.remove(uuid);
+                }
+            }
+            return Recovery.CLEAN;
+        } catch (IOException e) {
+            logger.severe("Failed to read the inventory journal, some stored inventories may not be recovered");
+            logger.severe("The journal won't be compacted until it can be read, so the rest of it isn't lost");
+            logger.severe(e.toString());
+            return Recovery.FAILED;
+        }
+    }
+
+    private void corrupt(long offset, String reason) {
+        logger.severe("The inventory journal is damaged at byte " + offset + " (" + reason + "), stored inventories"
+                + " after it can't be recovered, the original has been kept as " + path.getFileName() + ".corrupt");
+    }
+
+    /**
+     * Rewrite the journal with only the live snapshots, then reopen it for appending
+     * The new journal is written to a temporary file that atomically replaces the old one
+     */
+    private void compact() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int size = HEADER_SIZE;
+        List<Record> records = new ArrayList<>();
+        for (Map.Entry<UUID, byte[]> entry : live.entrySet()) {
+            Record record = new Record(SNAPSHOT, entry.getKey(), entry.getValue());
+            records.add(record);
+            size += record.size();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).put(VERSION);
+        for (Record record : records)
+            record.writeTo(buffer);
+        buffer.flip();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+            writes.add(records.size());
+            syncs.increment();
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private enum Recovery {
+        //Every record was read, or only a torn record at the end of the file was dropped
+        CLEAN,
+        //A record before the end of the file is damaged, the records after it were not read
+        CORRUPT,
+        //The file couldn't be read, an unknown number of records were not read
+        FAILED
+    }
+
+    private static class Record {
+
+        private final byte type;
+        private final UUID uuid;
+        private final byte[] snapshot;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Record(byte type, UUID uuid, byte[] snapshot) {
+            this.type = type;
+            this.uuid = uuid;
+            this.snapshot = snapshot;
+        }
+
+        private int bodySize() {
+            return 1 + 16 + (snapshot == null ? 0 : snapshot.length);
+        }
+
+        private int size() {
+            return 8 + bodySize();
+        }
+
+        private void writeTo(ByteBuffer buffer) {
+            ByteBuffer body = ByteBuffer.allocate(bodySize());
+            body.put(type).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+            if (snapshot != null)
+                body.put(snapshot);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            buffer.putInt(body.capacity()).putInt((int) crc.getValue()).put(body.array());
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * A compact binary encoding of an inventory's contents
+ * Runs of empty slots are stored as a count, items without meta are stored as their material name and amount,
+ * and only items with meta fall back to Bukkit's object serialization
+ */
+public final class InventorySnapshot {
+
+    //A run of empty slots, followed by the length of the run
+    private static final byte EMPTY_RUN = 0;
+    //An item with no meta, followed by its material name and amount
+    private static final byte PLAIN = 1;
+    //An item with meta, followed by the length of its serialized form and the serialized bytes
+    private static final byte SERIALIZED = 2;
+
+    private InventorySnapshot() {
+    }
+
+    /**
+     * Encode the contents of an inventory
+     *
+     * @param items The inventory contents, null entries are empty slots
+     * @return the encoded snapshot
+     * @throws IOException if an item with meta can't be serialized
+     */
+    public static byte[] encode(ItemStack[] items) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + items.length * 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(items.length);
+        int i = 0;
+        while (i < items.length) {
+            ItemStack item = items[i];
+            if (isEmpty(item)) {
+                int run = 0;
+                while (i < items.length && isEmpty(items[i]) && run < 255) {
+                    run++;
+                    i++;
+                }
+                out.writeByte(EMPTY_RUN);
+                out.writeByte(run);
+                continue;
+            }
+            if (!item.hasItemMeta()) {
+                out.writeByte(PLAIN);
+                out.writeUTF(item.getType().name());
+                out.writeByte(item.getAmount());
+            } else {
+                ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+                try (BukkitObjectOutputStream objectOut = new BukkitObjectOutputStream(serialized)) {
+                    objectOut.writeObject(item);
+                }
+                out.writeByte(SERIALIZED);
+                out.writeInt(serialized.size());
+                serialized.writeTo(out);
+            }
+            i++;
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a snapshot back into inventory contents
+     * Items whose material no longer exists are left out rather than failing the whole inventory
+     *
+     * @param snapshot The encoded snapshot
+     * @return the inventory contents
+     * @throws IOException if the snapshot is malformed
+     */
+    public static ItemStack[] decode(byte[] snapshot) throws IOException {
+        return decode(snapshot, null);
+    }
+
+    /**
+     * Decode a snapshot back into inventory contents, collecting the names of any materials that no longer exist
+     * The slots of those items are left empty, so callers should check the list before giving the inventory back
+     *
+     * @param snapshot The encoded snapshot
+     * @param missing  The list that unknown material names are added to, or null to ignore them
+     * @return the inventory contents
+     * @throws IOException if the snapshot is malformed
+     */
+    public static ItemStack[] decode(byte[] snapshot, List<String> missing) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        ItemStack[] items = new ItemStack[in.readUnsignedShort()];
+        int i = 0;
+        while (i < items.length) {
+            byte type = in.readByte();
+            switch (type) {
+                case EMPTY_RUN:
+                    i += in.readUnsignedByte();
+                    break;
+                case PLAIN:
+                    String name = in.readUTF();
+                    Material material = Material.getMaterial(name);
+                    int amount = in.readUnsignedByte();
+                    if (material == null && missing != null)
+                        missing.add(name);
+                    items[i++] = material == null ? null : new ItemStack(material, amount);
+                    break;
+                case SERIALIZED:
+                    byte[] serialized = new byte[in.readInt()];
+                    in.readFully(serialized);
+                    try (BukkitObjectInputStream objectIn = new BukkitObjectInputStream(new ByteArrayInputStream(serialized))) {
+                        items[i++] = (ItemStack) objectIn.readObject();
+                    } catch (ClassNotFoundException | ClassCastException e) {
+                        throw new IOException("Stored item in slot " + i + " is not an ItemStack", e);
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown slot type " + type + " in inventory snapshot");
+            }
+        }
+        return items;
+    }
+
+    private static boolean isEmpty(ItemStack item) {
+        return item == null || item.getType() == Material.AIR || item.getAmount() <= 0;
+    }
+
+}
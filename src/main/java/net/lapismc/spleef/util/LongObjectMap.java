@@ -0,0 +1,164 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A hash map from primitive long keys to objects
+ * This uses open addressing with linear probing so that lookups never box the key
+ *
+ * @param <V> The type of the values stored in this map, values cannot be null
+ */
+public class LongObjectMap<V> {
+
+    private long[] keys;
+    //A null value marks an empty slot
+    private Object[] values;
+    private int size;
+
+    /**
+     * Create an empty map
+     */
+    public LongObjectMap() {
+        keys = new long[16];
+        values = new Object[16];
+    }
+
+    /**
+     * Get the value stored for a key
+     *
+     * @param key The key to look up
+     * @return the value stored for this key, or null if there isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * Store a value for a key, replacing any existing value
+     *
+     * @param key   The key to store the value against
+     * @param value The value to store, must not be null
+     */
+    public void put(long key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("LongObjectMap doesn't support null values");
+        int slot = find(key);
+        if (slot >= 0) {
+            values[slot] = value;
+            return;
+        }
+        //Keep the table at most half full so that probe chains stay short
+        if ((size + 1) * 2 > keys.length)
+            resize(keys.length * 2);
+        insert(key, value);
+        size++;
+    }
+
+    /**
+     * Remove the value stored for a key
+     *
+     * @param key The key to remove
+     * @return the value that was removed, or null if there wasn't one
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = find(key);
+        if (slot < 0)
+            return null;
+        V removed = (V) values[slot];
+        int mask = keys.length - 1;
+        //Shift later entries of the probe chain back so that lookups don't stop at the gap
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Get the number of entries in this map
+     *
+     * @return the number of keys with values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Run an action for every entry in this map
+     *
+     * @param action The action to run with each key and value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Long, V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null)
+                action.accept(keys[i], (V) values[i]);
+        }
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long key, Object value) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private void resize(int newLength) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[newLength];
+        values = new Object[newLength];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null)
+                insert(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
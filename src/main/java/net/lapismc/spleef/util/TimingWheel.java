@@ -0,0 +1,242 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hierarchical timing wheel measured in ticks
+ * Scheduling and cancelling a timer are O(1), and advancing one tick only touches the timers that are due,
+ * plus the occasional cascade of a higher level slot down to the level below it
+ * <p>
+ * There are {@value #LEVELS} levels of {@value #SLOTS} slots, each slot of a level covers a full turn of the level below,
+ * so the wheel can hold timers up to 64^4 ticks (about 9 days) away, later timers wait in the last level until they fit
+ */
+public class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELAY = (1L << (BITS * LEVELS)) - 1;
+
+    private final Logger logger;
+    //The head of each slots list, heads are sentinel timers so that unlinking never needs to check for the ends
+    private final Timer[][] wheel = new Timer[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Create an empty wheel
+     *
+     * @param logger The logger that exceptions thrown by timers are reported to
+     */
+    public TimingWheel(Logger logger) {
+        this.logger = logger;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Timer head = new Timer(null, null, 0);
+                head.next = head;
+                head.previous = head;
+                wheel[level][slot] = head;
+            }
+        }
+    }
+
+    /**
+     * Run a task once after a delay
+     *
+     * @param group The group the timer belongs to, or null if it should only be cancelled on its own
+     * @param delay The number of ticks to wait, at least 1
+     * @param task  The task to run
+     * @return the timer, this can be used to cancel the task
+     */
+    public Timer schedule(TimerGroup group, long delay, Runnable task) {
+        return scheduleRepeating(group, delay, 0, task);
+    }
+
+    /**
+     * Run a task repeatedly
+     *
+     * @param group  The group the timer belongs to, or null if it should only be cancelled on its own
+     * @param delay  The number of ticks to wait before the first run, at least 1
+     * @param period The number of ticks between runs, 0 to only run once
+     * @param task   The task to run
+     * @return the timer, this can be used to cancel the task
+     */
+    public Timer scheduleRepeating(TimerGroup group, long delay, long period, Runnable task) {
+        Timer timer = new Timer(group, task, period);
+        timer.deadline = currentTick + Math.max(1, delay);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Move the wheel forward one tick and run every timer that is due
+     */
+    public void advance() {
+        currentTick++;
+        //Higher levels cascade first so their timers can land in the level 0 slot being run this tick
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((currentTick & ((1L << (BITS * level)) - 1)) == 0)
+                cascade(level, (int) ((currentTick >>> (BITS * level)) & (SLOTS - 1)));
+        }
+        Timer head = wheel[0][(int) (currentTick & (SLOTS - 1))];
+        while (head.next != head) {
+            Timer timer = head.next;
+            unlink(timer);
+            if (timer.group != null && timer.generation != timer.group.generation)
+                continue;
+            if (timer.period > 0) {
+                timer.deadline = currentTick + timer.period;
+                place(timer);
+                size++;
+            }
+            try {
+                timer.task.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "A game loop task threw an exception", e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of ticks the wheel has advanced
+     *
+     * @return the current tick
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Get the number of timers waiting in the wheel
+     * Timers whose group was cancelled are counted until their slot is reached
+     *
+     * @return the number of pending timers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if there are no timers waiting
+     *
+     * @return true if the wheel is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void cascade(int level, int slot) {
+        Timer head = wheel[level][slot];
+        while (head.next != head) {
+            Timer timer = head.next;
+            unlink(timer);
+            //Timers from cancelled groups are dropped here instead of being carried down another level
+            if (timer.group != null && timer.generation != timer.group.generation)
+                continue;
+            size++;
+            place(timer);
+        }
+    }
+
+    private void place(Timer timer) {
+        long deadline = Math.min(timer.deadline, currentTick + MAX_DELAY);
+        int level = 0;
+        //Find the lowest level that will reach the deadlines slot before it has turned all the way around
+        while (level < LEVELS - 1 && (deadline >>> (BITS * level)) - (currentTick >>> (BITS * level)) >= SLOTS) {
+            level++;
+        }
+        //Overdue timers go in the slot being run now
+        int slot = (int) ((Math.max(deadline, currentTick) >>> (BITS * level)) & (SLOTS - 1));
+        Timer head = wheel[level][slot];
+        timer.previous = head.previous;
+        timer.next = head;
+        head.previous.next = timer;
+        head.previous = timer;
+        timer.wheel = this;
+    }
+
+    private void unlink(Timer timer) {
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.next = null;
+        timer.previous = null;
+        timer.wheel = null;
+        size--;
+    }
+
+    /**
+     * A task waiting in the wheel
+     */
+    public static class Timer {
+
+        private final TimerGroup group;
+        private final long generation;
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private Timer next, previous;
+        //The wheel this timer is linked into, null once it has run or been cancelled
+        private TimingWheel wheel;
+
+        private Timer(TimerGroup group, Runnable task, long period) {
+            this.group = group;
+            this.generation = group == null ? 0 : group.generation;
+            this.task = task;
+            this.period = period;
+        }
+
+        /**
+         * Stop this timer from running, this unlinks it from its slot in O(1)
+         */
+        public void cancel() {
+            if (wheel != null)
+                wheel.unlink(this);
+        }
+
+        /**
+         * Check if this timer will still run
+         *
+         * @return true if the timer is waiting in the wheel and its group hasn't been cancelled
+         */
+        public boolean isPending() {
+            return wheel != null && (group == null || generation == group.generation);
+        }
+
+    }
+
+    /**
+     * A set of timers that can all be cancelled at once, e.g. every timer belonging to an arena
+     * Cancelling a group is O(1) however many timers it has, they are dropped when their slot is reached
+     */
+    public static class TimerGroup {
+
+        private long generation;
+
+        /**
+         * Cancel every timer that was scheduled in this group, timers scheduled afterwards are not affected
+         */
+        public void cancelAll() {
+            generation++;
+        }
+
+    }
+
+}
@@ -0,0 +1,375 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.simulation;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.arena.Arena;
+import net.lapismc.spleef.arena.ArenaFixtures;
+import net.lapismc.spleef.arena.Floor;
+import net.lapismc.spleef.arena.GameState;
+import net.lapismc.spleef.fixtures.FakePlayer;
+import net.lapismc.spleef.fixtures.FakePlugin;
+import net.lapismc.spleef.fixtures.FakeServer;
+import net.lapismc.spleef.fixtures.FakeWorld;
+import net.lapismc.spleef.metrics.LatencyHistogram;
+import net.lapismc.spleef.metrics.Metric;
+import org.bukkit.Location;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a full round of games on a fake server and reports what each phase costs the main thread
+ * Players log in and queue, matchmaking fills the arenas and starts their games, players break blocks for a while,
+ * then they are eliminated one at a time until every game has ended and every floor has regenerated
+ * <p>
+ * Options are passed as --name=value, see {@link Options} for the defaults
+ */
+public class LoadSimulation {
+
+    //Distance between arenas along the X axis, far enough that break effects from one arena don't reach the next
+    private static final int ARENA_SPACING = 200;
+    //Phases that wait for the plugin give up after this many ticks, five minutes of game time
+    private static final int MAX_PHASE_TICKS = 20 * 60 * 5;
+
+    private final Options options;
+    private final Random random;
+    private final FakeServer server;
+    private final FakeWorld world;
+    private final LapisSpleef plugin;
+    private final List<Arena> arenas = new ArrayList<>();
+    private final List<FakePlayer> players = new ArrayList<>();
+    //The players still standing in each arena, as far as the simulation has driven them
+    private final Map<Arena, List<FakePlayer>> alive = new HashMap<>();
+    private final List<PhaseReport> phases = new ArrayList<>();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private PhaseReport phase;
+    private long phaseWrites, phaseSyncs, phaseBlockChanges, phaseMessages, phaseEffects;
+
+    private LoadSimulation(Options options, File dataFolder) {
+        this.options = options;
+        random = new Random(options.seed);
+        server = FakeServer.start();
+        world = server.createWorld("world");
+        int perArena = (options.players + options.arenas - 1) / options.arenas;
+        Map<String, Object> config = new HashMap<>();
+        config.put("Matchmaking.MinPlayers", 2);
+        config.put("Matchmaking.MaxPlayers", perArena);
+        config.put("Matchmaking.StartDelay", 5);
+        //Every player fits in the arenas that are built, so instances would only add noise
+        config.put("Instances.MaxInstances", 0);
+        plugin = FakePlugin.create(dataFolder, config);
+        for (int i = 0; i < options.arenas; i++) {
+            arenas.add(ArenaFixtures.build(plugin, world, "arena" + i, i * ARENA_SPACING, 0,
+                    options.floors, options.blocksPerFloor));
+        }
+    }
+
+    /**
+     * Run the simulation and print the report
+     *
+     * @param args Options as --name=value
+     * @throws IOException if the data folder or report can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        File dataFolder = Files.createTempDirectory("lapisspleef-simulation").toFile();
+        String report = new LoadSimulation(options, dataFolder).run();
+        System.out.println(report);
+        if (options.output != null) {
+            File output = new File(options.output);
+            if (output.getParentFile() != null)
+                Files.createDirectories(output.getParentFile().toPath());
+            Files.write(output.toPath(), report.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private String run() {
+        join();
+        start();
+        breakStorm();
+        eliminate();
+        regenerate();
+        //Shutting down waits for the file writer, so every requested write has been written or coalesced
+        plugin.onDisable();
+        return report();
+    }
+
+    /**
+     * Players log in and join the matchmaking queue, a few each tick
+     */
+    private void join() {
+        beginPhase("join");
+        InetAddress address = InetAddress.getLoopbackAddress();
+        Location spawn = new Location(world.getWorld(), 0, 80, -ARENA_SPACING);
+        int next = 0;
+        while (next < options.players || plugin.getMatchmaking().getQueueSize() > 0) {
+            List<FakePlayer> joining = new ArrayList<>();
+            for (int end = Math.min(next + options.joinsPerTick, options.players); next < end; next++) {
+                String name = "Player" + next;
+                FakePlayer player = server.addPlayer(name, world, spawn);
+                player.fillInventory(20);
+                //Pre-login is fired off the main thread on a real server, so it isn't part of the tick
+                server.callEvent(new AsyncPlayerPreLoginEvent(name, address, player.getUniqueId()));
+                joining.add(player);
+            }
+            players.addAll(joining);
+            tick(() -> joining.forEach(player -> plugin.getMatchmaking().enqueue(player.getUniqueId())));
+            if (phase.getTicks() > MAX_PHASE_TICKS)
+                throw new IllegalStateException("Players were still queued after " + MAX_PHASE_TICKS + " ticks");
+        }
+        endPhase();
+    }
+
+    /**
+     * Wait for every arena with enough players to finish its start countdown
+     */
+    private void start() {
+        beginPhase("start");
+        tickUntil(() -> arenas.stream().allMatch(arena -> arena.getPlayers().size() < arena.getMinPlayers()
+                || arena.getGameState() == GameState.playing), "games to start");
+        for (Arena arena : arenas) {
+            if (arena.getGameState() != GameState.playing)
+                continue;
+            List<FakePlayer> standing = new ArrayList<>();
+            arena.getPlayers().forEach(member -> standing.add(findPlayer(member.getUniqueId())));
+            alive.put(arena, standing);
+        }
+        endPhase();
+    }
+
+    /**
+     * Every player breaks random blocks on the top floor of their arena each tick
+     */
+    private void breakStorm() {
+        beginPhase("break storm");
+        for (int i = 0; i < options.stormTicks; i++) {
+            tick(() -> alive.forEach((arena, standing) -> {
+                Floor floor = arena.getFloors().get(0);
+                for (FakePlayer player : standing) {
+                    for (int b = 0; b < options.breaksPerTick; b++) {
+                        server.callEvent(new BlockBreakEvent(floor.getBlock(random.nextInt(floor.getSize())), player.getPlayer()));
+                    }
+                }
+            }));
+        }
+        endPhase();
+    }
+
+    /**
+     * One player in each arena falls below the elimination height each tick until every game has a winner
+     */
+    private void eliminate() {
+        beginPhase("eliminations");
+        tickUntil(() -> {
+            alive.forEach((arena, standing) -> {
+                if (standing.size() <= 1)
+                    return;
+                FakePlayer player = standing.remove(random.nextInt(standing.size()));
+                Location from = player.getLocation();
+                Location to = from.clone();
+                to.setY(arena.getEliminationHeight() - 1);
+                player.teleport(to);
+                server.callEvent(new PlayerMoveEvent(player.getPlayer(), from, to));
+            });
+            return arenas.stream().noneMatch(arena -> arena.getGameState() == GameState.playing);
+        }, "games to end");
+        endPhase();
+    }
+
+    /**
+     * Wait for every arena to regenerate its floors and return to its lobby
+     */
+    private void regenerate() {
+        beginPhase("regeneration");
+        tickUntil(() -> arenas.stream().allMatch(arena -> arena.getGameState() == GameState.waiting), "floors to regenerate");
+        endPhase();
+    }
+
+    private void tick(Runnable actions) {
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        actions.run();
+        server.getScheduler().tick();
+        long nanos = System.nanoTime() - start;
+        phase.recordTick(nanos, threads.getCurrentThreadAllocatedBytes() - allocated);
+    }
+
+    /**
+     * Tick until a condition is met, the condition is checked at the start of each tick and counts towards it
+     */
+    private void tickUntil(BooleanSupplier condition, String waitingFor) {
+        boolean[] done = new boolean[1];
+        while (!done[0]) {
+            tick(() -> done[0] = condition.getAsBoolean());
+            if (phase.getTicks() > MAX_PHASE_TICKS)
+                throw new IllegalStateException("Gave up waiting for " + waitingFor + " after " + MAX_PHASE_TICKS + " ticks");
+        }
+    }
+
+    private void beginPhase(String name) {
+        phase = new PhaseReport(name);
+        phases.add(phase);
+        phaseWrites = totalWrites();
+        phaseSyncs = totalSyncs();
+        phaseBlockChanges = world.getBlockChanges();
+        phaseMessages = totalMessages();
+        phaseEffects = totalEffects();
+    }
+
+    private void endPhase() {
+        phase.setTotals(totalWrites() - phaseWrites, totalSyncs() - phaseSyncs, world.getBlockChanges() - phaseBlockChanges,
+                totalMessages() - phaseMessages, totalEffects() - phaseEffects);
+    }
+
+    /**
+     * Every write the plugin makes to disk: player data files, inventory journal records and stats rows
+     */
+    private long totalWrites() {
+        return plugin.getFileWriter().getRequestedWrites() + plugin.getInventoryJournal().getWrites()
+                + plugin.getStatsManager().getWrites();
+    }
+
+    /**
+     * Every fsync the plugin makes, each completed file write, journal commit and stats transaction is one
+     */
+    private long totalSyncs() {
+        return plugin.getFileWriter().getCompletedWrites() + plugin.getInventoryJournal().getSyncs()
+                + plugin.getStatsManager().getSyncs();
+    }
+
+    private long totalMessages() {
+        return players.stream().mapToLong(FakePlayer::getMessages).sum();
+    }
+
+    private long totalEffects() {
+        return players.stream().mapToLong(FakePlayer::getEffects).sum();
+    }
+
+    private FakePlayer findPlayer(UUID uuid) {
+        for (FakePlayer player : players) {
+            if (player.getUniqueId().equals(uuid))
+                return player;
+        }
+        throw new IllegalStateException("Arena member " + uuid + " isn't a simulated player");
+    }
+
+    private String report() {
+        StringBuilder out = new StringBuilder();
+        out.append("LapisSpleef load simulation: ").append(options).append('\n');
+        out.append("Tick times and allocations are for the main thread, writes are file writer requests,\n"
+                + "inventory journal records and stats rows, fsyncs are completed files, journal commits and stats transactions\n\n");
+        out.append(PhaseReport.header()).append('\n');
+        for (PhaseReport report : phases) {
+            out.append(report.toRow()).append('\n');
+        }
+        out.append(String.format("%nFile writer: %d writes requested, %d files written, %.1f KB written%n",
+                plugin.getFileWriter().getRequestedWrites(), plugin.getFileWriter().getCompletedWrites(),
+                plugin.getFileWriter().getBytesWritten() / 1024d));
+        out.append(String.format("Inventory journal: %d records, %d fsyncs. Stats: %d rows, %d transactions%n",
+                plugin.getInventoryJournal().getWrites(), plugin.getInventoryJournal().getSyncs(),
+                plugin.getStatsManager().getWrites(), plugin.getStatsManager().getSyncs()));
+        out.append("\nHot path latencies (p50 / p99 / max in microseconds, count)\n");
+        Map<String, LatencyHistogram> combined = new TreeMap<>();
+        for (Metric metric : plugin.getMetrics().getMetrics()) {
+            //Per arena metrics are listed once, from the first arena, to keep the report short
+            if (metric instanceof LatencyHistogram && (metric.getArena() == null || metric.getArena().equals("arena0")))
+                combined.put(metric.getName(), (LatencyHistogram) metric);
+        }
+        combined.forEach((name, histogram) -> out.append(String.format("  %-36s %9.1f %9.1f %9.1f %9d%n", name,
+                histogram.getPercentile(50) / 1000d, histogram.getPercentile(99) / 1000d, histogram.getMax() / 1000d,
+                histogram.getCount())));
+        return out.toString();
+    }
+
+    /**
+     * The size of the simulation
+     */
+    static class Options {
+
+        int arenas = 50;
+        int players = 800;
+        int floors = 3;
+        int blocksPerFloor = 2500;
+        int joinsPerTick = 20;
+        int stormTicks = 200;
+        int breaksPerTick = 2;
+        long seed = 42;
+        String output;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("="))
+                    throw new IllegalArgumentException("Options must be passed as --name=value, got " + arg);
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (name) {
+                    case "arenas":
+                        options.arenas = Integer.parseInt(value);
+                        break;
+                    case "players":
+                        options.players = Integer.parseInt(value);
+                        break;
+                    case "floors":
+                        options.floors = Integer.parseInt(value);
+                        break;
+                    case "blocksPerFloor":
+                        options.blocksPerFloor = Integer.parseInt(value);
+                        break;
+                    case "joinsPerTick":
+                        options.joinsPerTick = Integer.parseInt(value);
+                        break;
+                    case "stormTicks":
+                        options.stormTicks = Integer.parseInt(value);
+                        break;
+                    case "breaksPerTick":
+                        options.breaksPerTick = Integer.parseInt(value);
+                        break;
+                    case "seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "output":
+                        options.output = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + name);
+                }
+            }
+            return options;
+        }
+
+        @Override
+        public String toString() {
+            return arenas + " arenas, " + players + " players, " + floors + " floors of " + blocksPerFloor + " blocks, "
+                    + joinsPerTick + " joins per tick, " + stormTicks + " storm ticks at " + breaksPerTick
+                    + " breaks per player per tick, seed " + seed;
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.simulation;
+
+import java.util.Arrays;
+
+/**
+ * The measurements of one phase of a simulation
+ * Tick times and allocations only cover the main thread, the same thread that counts towards server MSPT
+ */
+class PhaseReport {
+
+    //A tick that takes longer than this would lower the servers TPS
+    private static final long TICK_BUDGET_NANOS = 50_000_000L;
+
+    private final String name;
+    private long[] tickNanos = new long[256];
+    private int ticks;
+    private long allocatedBytes;
+    private long fileWrites;
+    private long syncs;
+    private long blockChanges;
+    private long messages;
+    private long effects;
+
+    PhaseReport(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record one simulated tick
+     *
+     * @param nanos          How long the tick took
+     * @param allocatedBytes The bytes allocated by the main thread during the tick
+     */
+    void recordTick(long nanos, long allocatedBytes) {
+        if (ticks == tickNanos.length)
+            tickNanos = Arrays.copyOf(tickNanos, ticks * 2);
+        tickNanos[ticks++] = nanos;
+        this.allocatedBytes += allocatedBytes;
+    }
+
+    /**
+     * Set the totals that are measured across the whole phase
+     *
+     * @param fileWrites   Writes to disk, from the file writer, inventory journal and stats backend
+     * @param syncs        Fsyncs made by the file writer, inventory journal and stats backend
+     * @param blockChanges Blocks changed in the world
+     * @param messages     Messages and titles sent to players
+     * @param effects      Particles and sounds sent to players
+     */
+    void setTotals(long fileWrites, long syncs, long blockChanges, long messages, long effects) {
+        this.fileWrites = fileWrites;
+        this.syncs = syncs;
+        this.blockChanges = blockChanges;
+        this.messages = messages;
+        this.effects = effects;
+    }
+
+    int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Format this phase as a row of the report table
+     *
+     * @return the row, matching {@link #header()}
+     */
+    String toRow() {
+        long[] sorted = Arrays.copyOf(tickNanos, ticks);
+        Arrays.sort(sorted);
+        long overBudget = Arrays.stream(sorted).filter(nanos -> nanos > TICK_BUDGET_NANOS).count();
+        return String.format("%-14s %7d %9.3f %9.3f %9.3f %6d %11.1f %9.1f %8d %8d %9d %9d %9d", name, ticks,
+                millis(percentile(sorted, 50)), millis(percentile(sorted, 99)), millis(ticks == 0 ? 0 : sorted[ticks - 1]),
+                overBudget, allocatedBytes / 1048576d, ticks == 0 ? 0 : allocatedBytes / 1024d / ticks,
+                fileWrites, syncs, blockChanges, messages, effects);
+    }
+
+    /**
+     * Get the header of the report table
+     *
+     * @return the column names
+     */
+    static String header() {
+        return String.format("%-14s %7s %9s %9s %9s %6s %11s %9s %8s %8s %9s %9s %9s", "phase", "ticks", "p50 ms",
+                "p99 ms", "max ms", ">50ms", "alloc MB", "KB/tick", "writes", "fsyncs", "blocks", "messages", "effects");
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+}
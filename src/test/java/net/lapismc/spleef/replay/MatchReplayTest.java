@@ -0,0 +1,184 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.replay;
+
+import net.lapismc.spleef.arena.GameState;
+import net.lapismc.spleef.util.BlockPositionSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static net.lapismc.spleef.replay.ReplayFormat.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes replays through the replay writer thread and checks that {@link MatchReplay} reads back the same game,
+ * and that cut short or damaged files are reported as such
+ */
+class MatchReplayTest {
+
+    private static final int RECORDING = 7;
+
+    private final Logger logger = Logger.getLogger("MatchReplayTest");
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private final long[] floor = {BlockPositionSet.pack(0, 64, 0), BlockPositionSet.pack(1, 64, 0),
+            BlockPositionSet.pack(0, 64, 1), BlockPositionSet.pack(1, 64, 1)};
+
+    @TempDir
+    File folder;
+
+    @Test
+    void gameIsReadBack() throws IOException {
+        File file = record(true);
+        MatchReplay replay = MatchReplay.read(file);
+        assertEquals("arena", replay.getArenaName());
+        assertEquals(1234L, replay.getStartedAt());
+        assertTrue(replay.isComplete());
+        assertFalse(replay.isMissingEvents());
+        assertEquals(60, replay.getLength());
+        assertEquals(2, replay.getPlayerCount());
+        assertEquals(alice, replay.getPlayerId(0));
+        assertEquals("Bob", replay.getPlayerName(1));
+        assertArrayEquals(floor, replay.getFloorPositions(0));
+        assertEquals(GameState.starting, replay.getState(0));
+        assertEquals(GameState.playing, replay.getState(25));
+        assertEquals(1, replay.getBrokenBlocks(0, 30).cardinality());
+        assertTrue(replay.getBrokenBlocks(0, 45).get(3));
+        assertEquals(2, replay.getBrokenBlocks(0, 60).cardinality());
+        MatchReplay.Position position = replay.getPosition(1, 40);
+        assertEquals(40, position.getTick());
+        assertEquals(1.5, position.getX(), 1 / 32d);
+        assertEquals(65, position.getY(), 1 / 32d);
+        assertEquals(-2.25, position.getZ(), 1 / 32d);
+        assertEquals(50, replay.getEliminationTick(1));
+        assertFalse(replay.hasLeft(1));
+        assertEquals(0, replay.getWinner());
+    }
+
+    @Test
+    void cutShortGameKeepsEarlierEvents() throws IOException {
+        File file = record(false);
+        MatchReplay replay = MatchReplay.read(file);
+        assertFalse(replay.isComplete());
+        assertEquals(-1, replay.getWinner());
+        assertEquals(2, replay.getBrokenBlocks(0, Integer.MAX_VALUE).cardinality());
+        //A torn final record is ignored
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertFalse(MatchReplay.read(file).isComplete());
+    }
+
+    @Test
+    void droppedEventsAreReported() throws IOException {
+        EventRing ring = new EventRing(64);
+        ReplayWriter writer = new ReplayWriter(logger, ring, folder, 0, 0);
+        File file = new File(folder, "dropped.replay");
+        writer.open(header(file));
+        ring.offer(RECORDING, BLOCK_BREAK, 1, 0, 0, 0, 0);
+        ring.offer(RECORDING, DROPPED, 5, 0, 0, 0, 0);
+        ring.offer(RECORDING, BLOCK_BREAK, 5, 0, 1, 0, 0);
+        ring.offer(RECORDING, END, 6, 0, 0, 0, 0);
+        writer.shutdown();
+        MatchReplay replay = MatchReplay.read(file);
+        assertTrue(replay.isMissingEvents());
+        assertTrue(replay.isComplete());
+        assertEquals(2, replay.getBrokenBlocks(0, 6).cardinality());
+    }
+
+    @Test
+    void outOfRangeIndexIsCorrupt() throws IOException {
+        File file = new File(folder, "corrupt.replay");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            header(file).write(out);
+            //A block break on floor 3 of an arena with one floor
+            out.writeByte(BLOCK_BREAK);
+            writeVarInt(out, 1);
+            writeVarInt(out, 3);
+            writeSignedVarInt(out, 0);
+        }
+        assertThrows(IOException.class, () -> MatchReplay.read(file));
+    }
+
+    @Test
+    void hugeCountIsCorrupt() throws IOException {
+        File file = new File(folder, "huge.replay");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(0);
+            out.writeUTF("arena");
+            writeVarInt(out, Integer.MAX_VALUE);
+        }
+        assertThrows(IOException.class, () -> MatchReplay.read(file));
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        File file = new File(folder, "other.replay");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeUTF("not a replay");
+        }
+        assertThrows(IOException.class, () -> MatchReplay.read(file));
+    }
+
+    @Test
+    void oldReplaysArePruned() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            File old = new File(folder, "old-" + i + ".replay");
+            assertTrue(old.createNewFile());
+            assertTrue(old.setLastModified(System.currentTimeMillis() - (i + 1) * 60_000L));
+        }
+        ReplayWriter writer = new ReplayWriter(logger, new EventRing(64), folder, 3, 0);
+        writer.shutdown();
+        assertTrue(new File(folder, "old-0.replay").exists());
+        assertTrue(new File(folder, "old-2.replay").exists());
+        assertFalse(new File(folder, "old-3.replay").exists());
+        assertFalse(new File(folder, "old-4.replay").exists());
+    }
+
+    private File record(boolean finish) {
+        EventRing ring = new EventRing(64);
+        ReplayWriter writer = new ReplayWriter(logger, ring, folder, 0, 0);
+        File file = new File(folder, "arena-1234.replay");
+        writer.open(header(file));
+        ring.offer(RECORDING, STATE, 0, GameState.starting.ordinal(), 0, 0, 0);
+        ring.offer(RECORDING, STATE, 20, GameState.playing.ordinal(), 0, 0, 0);
+        ring.offer(RECORDING, BLOCK_BREAK, 30, 0, 2, 0, 0);
+        ring.offer(RECORDING, POSITION, 40, 1 << 8 | 64, 48, 65 * POSITION_SCALE, -72);
+        ring.offer(RECORDING, BLOCK_BREAK, 45, 0, 3, 0, 0);
+        ring.offer(RECORDING, ELIMINATED, 50, 1, 0, 0, 0);
+        if (finish)
+            ring.offer(RECORDING, END, 60, 1, 0, 0, 0);
+        writer.shutdown();
+        return file;
+    }
+
+    private ReplayWriter.Header header(File file) {
+        return new ReplayWriter.Header(RECORDING, file, 1234L, "arena", new UUID[]{alice, bob}, new String[]{"Alice", "Bob"},
+                new String[]{"world"}, new String[]{"SNOW_BLOCK"}, new long[][]{floor});
+    }
+
+}
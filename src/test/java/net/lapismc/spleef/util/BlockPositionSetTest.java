@@ -0,0 +1,90 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that packed positions and the encoding used in arena files survive a round trip
+ */
+class BlockPositionSetTest {
+
+    @Test
+    void packKeepsCoordinatesAtTheLimits() {
+        int[][] coordinates = {{0, 0, 0}, {-30_000_000, -64, -30_000_000}, {30_000_000, 319, 30_000_000}, {-1, -1, -1}};
+        for (int[] c : coordinates) {
+            long packed = BlockPositionSet.pack(c[0], c[1], c[2]);
+            assertEquals(c[0], BlockPositionSet.unpackX(packed));
+            assertEquals(c[1], BlockPositionSet.unpackY(packed));
+            assertEquals(c[2], BlockPositionSet.unpackZ(packed));
+        }
+    }
+
+    @Test
+    void encodeDecodeReturnsSortedPositions() {
+        Random random = new Random(42);
+        long[] positions = new long[1000];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = BlockPositionSet.pack(random.nextInt(2000) - 1000, random.nextInt(100) - 64, random.nextInt(2000) - 1000);
+        }
+        long[] decoded = BlockPositionSet.decode(BlockPositionSet.encode(positions));
+        long[] sorted = positions.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(sorted, decoded);
+    }
+
+    @Test
+    void encodeDecodeEmpty() {
+        assertArrayEquals(new long[0], BlockPositionSet.decode(BlockPositionSet.encode(new long[0])));
+    }
+
+    @Test
+    void decodeRejectsTruncatedData() {
+        String encoded = BlockPositionSet.encode(new long[]{BlockPositionSet.pack(1, 2, 3), BlockPositionSet.pack(400, 5, -600)});
+        byte[] bytes = Base64.getDecoder().decode(encoded);
+        String truncated = Base64.getEncoder().encodeToString(Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IllegalArgumentException.class, () -> BlockPositionSet.decode(truncated));
+    }
+
+    @Test
+    void decodeRejectsImpossibleCount() {
+        //A count of 2^31 - 1 with no positions after it
+        String encoded = Base64.getEncoder().encodeToString(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+        assertThrows(IllegalArgumentException.class, () -> BlockPositionSet.decode(encoded));
+    }
+
+    @Test
+    void setFindsOrdinals() {
+        BlockPositionSet set = new BlockPositionSet();
+        long first = BlockPositionSet.pack(10, 64, 10);
+        long second = BlockPositionSet.pack(-10, 64, -10);
+        assertTrue(set.add(first));
+        assertTrue(set.add(second));
+        assertFalse(set.add(first));
+        assertEquals(0, set.indexOf(first));
+        assertEquals(1, set.indexOf(second));
+        assertEquals(-1, set.indexOf(BlockPositionSet.pack(0, 0, 0)));
+        assertEquals(second, set.get(1));
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks what the inventory journal recovers after the server stops with inventories still stored,
+ * including journals left with a torn last record or a damaged record part way through
+ */
+class InventoryJournalTest {
+
+    //The magic and version at the start of the file
+    private static final int HEADER_SIZE = 5;
+    //The length and checksum before each record body
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Logger logger = Logger.getLogger("InventoryJournalTest");
+    private final UUID first = UUID.randomUUID();
+    private final UUID second = UUID.randomUUID();
+    private final UUID third = UUID.randomUUID();
+
+    @TempDir
+    File folder;
+
+    @Test
+    void uncleanedSnapshotsAreRecovered() {
+        File file = new File(folder, "journal.dat");
+        InventoryJournal journal = new InventoryJournal(logger, file);
+        journal.append(first, new byte[]{1, 2, 3}).join();
+        journal.append(second, new byte[]{4, 5}).join();
+        journal.clear(second).join();
+        journal.shutdown();
+
+        InventoryJournal reopened = new InventoryJournal(logger, file);
+        assertArrayEquals(new byte[]{1, 2, 3}, reopened.getRecovered(first));
+        assertFalse(reopened.hasRecovered(second));
+        reopened.shutdown();
+    }
+
+    @Test
+    void laterSnapshotReplacesEarlier() {
+        File file = new File(folder, "journal.dat");
+        InventoryJournal journal = new InventoryJournal(logger, file);
+        journal.append(first, new byte[]{1}).join();
+        journal.append(first, new byte[]{2}).join();
+        journal.shutdown();
+
+        InventoryJournal reopened = new InventoryJournal(logger, file);
+        assertArrayEquals(new byte[]{2}, reopened.getRecovered(first));
+        reopened.shutdown();
+    }
+
+    @Test
+    void tornLastRecordIsDiscarded() throws Exception {
+        File file = new File(folder, "journal.dat");
+        InventoryJournal journal = new InventoryJournal(logger, file);
+        journal.append(first, new byte[]{1, 2, 3}).join();
+        journal.append(second, new byte[]{4, 5, 6}).join();
+        journal.shutdown();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+
+        InventoryJournal reopened = new InventoryJournal(logger, file);
+        assertArrayEquals(new byte[]{1, 2, 3}, reopened.getRecovered(first));
+        assertFalse(reopened.hasRecovered(second));
+        assertFalse(new File(folder, "journal.dat.corrupt").exists());
+        reopened.shutdown();
+    }
+
+    @Test
+    void damagedRecordKeepsTheOriginalFile() throws Exception {
+        File file = new File(folder, "journal.dat");
+        InventoryJournal journal = new InventoryJournal(logger, file);
+        journal.append(first, new byte[]{1, 2, 3}).join();
+        journal.append(second, new byte[]{4, 5, 6}).join();
+        journal.append(third, new byte[]{7, 8, 9}).join();
+        journal.shutdown();
+        //Flip a byte in the body of the second record, the records around it are intact
+        int recordSize = RECORD_HEADER_SIZE + 1 + 16 + 3;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long offset = HEADER_SIZE + recordSize + RECORD_HEADER_SIZE + 2;
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 0xFF);
+        }
+        byte[] damaged = Files.readAllBytes(file.toPath());
+
+        InventoryJournal reopened = new InventoryJournal(logger, file);
+        assertArrayEquals(new byte[]{1, 2, 3}, reopened.getRecovered(first));
+        File corrupt = new File(folder, "journal.dat.corrupt");
+        assertTrue(corrupt.exists(), "the damaged journal should be kept");
+        assertArrayEquals(damaged, Files.readAllBytes(corrupt.toPath()));
+        reopened.shutdown();
+    }
+
+    @Test
+    void unknownFileIsMovedAside() throws Exception {
+        File file = new File(folder, "journal.dat");
+        Files.write(file.toPath(), new byte[]{'n', 'o', 't', ' ', 'a', ' ', 'j', 'o', 'u', 'r', 'n', 'a', 'l'});
+
+        InventoryJournal journal = new InventoryJournal(logger, file);
+        assertFalse(journal.hasRecovered(first));
+        assertTrue(new File(folder, "journal.dat.unreadable").exists());
+        journal.append(first, new byte[]{1}).join();
+        journal.shutdown();
+
+        InventoryJournal reopened = new InventoryJournal(logger, file);
+        assertArrayEquals(new byte[]{1}, reopened.getRecovered(first));
+        reopened.shutdown();
+    }
+
+}
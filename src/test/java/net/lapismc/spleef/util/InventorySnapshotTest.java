@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.util;
+
+import net.lapismc.spleef.fixtures.FakeServer;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that inventories survive being encoded and that damaged snapshots are reported rather than misread
+ */
+class InventorySnapshotTest {
+
+    @BeforeEach
+    void startServer() {
+        //ItemStack needs a server to check for item meta
+        FakeServer.start();
+    }
+
+    @Test
+    void roundTripKeepsSlotsAndAmounts() throws IOException {
+        ItemStack[] items = new ItemStack[41];
+        items[0] = new ItemStack(Material.DIAMOND_SWORD, 1);
+        items[1] = new ItemStack(Material.COBBLESTONE, 64);
+        items[8] = new ItemStack(Material.TORCH, 12);
+        items[40] = new ItemStack(Material.BREAD, 3);
+        ItemStack[] decoded = InventorySnapshot.decode(InventorySnapshot.encode(items));
+        assertEquals(items.length, decoded.length);
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] == null) {
+                assertNull(decoded[i], "slot " + i);
+            } else {
+                assertEquals(items[i].getType(), decoded[i].getType(), "slot " + i);
+                assertEquals(items[i].getAmount(), decoded[i].getAmount(), "slot " + i);
+            }
+        }
+    }
+
+    @Test
+    void longRunsOfEmptySlots() throws IOException {
+        ItemStack[] items = new ItemStack[600];
+        items[599] = new ItemStack(Material.ARROW, 16);
+        ItemStack[] decoded = InventorySnapshot.decode(InventorySnapshot.encode(items));
+        assertEquals(600, decoded.length);
+        assertEquals(Material.ARROW, decoded[599].getType());
+        assertEquals(1, Arrays.stream(decoded).filter(item -> item != null).count());
+    }
+
+    @Test
+    void unknownMaterialsAreReported() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(2);
+        out.writeByte(1);
+        out.writeUTF("NOT_A_REAL_MATERIAL");
+        out.writeByte(5);
+        out.writeByte(1);
+        out.writeUTF(Material.BREAD.name());
+        out.writeByte(2);
+        List<String> missing = new ArrayList<>();
+        ItemStack[] decoded = InventorySnapshot.decode(bytes.toByteArray(), missing);
+        assertEquals(List.of("NOT_A_REAL_MATERIAL"), missing);
+        assertNull(decoded[0]);
+        assertEquals(Material.BREAD, decoded[1].getType());
+    }
+
+    @Test
+    void truncatedSnapshotFails() throws IOException {
+        ItemStack[] items = {new ItemStack(Material.COBBLESTONE, 64), new ItemStack(Material.BREAD, 3)};
+        byte[] snapshot = InventorySnapshot.encode(items);
+        assertThrows(EOFException.class, () -> InventorySnapshot.decode(Arrays.copyOf(snapshot, snapshot.length - 2)));
+    }
+
+    @Test
+    void unknownSlotTypeFails() {
+        assertThrows(IOException.class, () -> InventorySnapshot.decode(new byte[]{0, 1, 9}));
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef;
+
+/**
+ * Reaches into plugin startup that isn't public, for the fixtures that enable the plugin on a fake server
+ */
+public final class PluginFixtures {
+
+    private PluginFixtures() {
+    }
+
+    /**
+     * Create every component of the plugin exactly as {@link LapisSpleef#onEnable()} does
+     *
+     * @param plugin The plugin, its config, logger, data folder and LapisCore fields must already be set
+     */
+    public static void initComponents(LapisSpleef plugin) {
+        plugin.initComponents();
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.arena;
+
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.fixtures.FakeWorld;
+import net.lapismc.spleef.fixtures.Stubs;
+import org.bukkit.Location;
+import org.bukkit.Material;
+
+/**
+ * Builds arenas for benchmarks and simulations, and reaches into arena state that has no public setter
+ */
+public final class ArenaFixtures {
+
+    //Vertical distance between the floors of a built arena
+    public static final int FLOOR_SPACING = 10;
+    //The Y level of the highest floor of a built arena
+    public static final int TOP_FLOOR_Y = 100;
+
+    private ArenaFixtures() {
+    }
+
+    /**
+     * Build an arena of stacked square snow floors and register it with the arena manager
+     * The lobby is above the arena and the arena is left in the waiting state
+     *
+     * @param plugin         The plugin to build the arena for
+     * @param world          The world to build the floors in
+     * @param name           The name of the arena
+     * @param centerX        The X coordinate of the centre of the floors
+     * @param centerZ        The Z coordinate of the centre of the floors
+     * @param floorCount     The number of floors
+     * @param blocksPerFloor The number of blocks in each floor, rounded up to a whole square
+     * @return the new arena
+     */
+    public static Arena build(LapisSpleef plugin, FakeWorld world, String name, int centerX, int centerZ,
+                              int floorCount, int blocksPerFloor) {
+        Arena arena = new Arena(plugin, name);
+        for (int i = 0; i < floorCount; i++) {
+            int y = TOP_FLOOR_Y - i * FLOOR_SPACING;
+            long[] positions = world.fillSquare(centerX, y, centerZ, blocksPerFloor, Material.SNOW_BLOCK);
+            arena.addFloor(new Floor(arena, world.getWorld(), positions, Material.SNOW_BLOCK));
+        }
+        arena.setLobbySpawn(new Location(world.getWorld(), centerX, TOP_FLOOR_Y + 20, centerZ));
+        arena.setSpectateLocation(new Location(world.getWorld(), centerX, TOP_FLOOR_Y + 10, centerZ));
+        arena.setEliminationHeight(TOP_FLOOR_Y - floorCount * FLOOR_SPACING);
+        plugin.getArenaManager().addArena(arena);
+        setGameState(arena, GameState.waiting);
+        return arena;
+    }
+
+    /**
+     * Set the game state of an arena without running any of the transitions
+     *
+     * @param arena The arena to change
+     * @param state The new game state
+     */
+    public static void setGameState(Arena arena, GameState state) {
+        arena.gameState = state;
+    }
+
+    /**
+     * Mark every player in an arena as still being in the game, without starting it
+     *
+     * @param arena The arena whose players should be alive
+     */
+    public static void setAllAlive(Arena arena) {
+        arena.getAlivePlayers().clear();
+        arena.getAlivePlayers().addAll(arena.players);
+    }
+
+    /**
+     * Put a player in an arena without storing their inventory or teleporting them
+     * This is for benchmarks that need arena members but shouldn't measure joining
+     *
+     * @param arena  The arena to add the player to
+     * @param player The player to add
+     */
+    public static void addMember(Arena arena, SpleefPlayer player) {
+        arena.players.add(player);
+        arena.getAudience().add(player.getBukkitPlayer());
+        arena.getPlugin().getArenaManager().setPlayerArena(player.getUniqueId(), arena);
+    }
+
+    /**
+     * Start recording a replay of an arena as if its game had just started
+     *
+     * @param arena The arena to record
+     */
+    public static void startRecording(Arena arena) {
+        Stubs.setField(arena, "recording", arena.getPlugin().getMatchRecorder().start(arena));
+    }
+
+    /**
+     * Create the listener that routes events to arenas, without registering it
+     *
+     * @param plugin The plugin whose arena manager should be used
+     * @return a new arena listener
+     */
+    public static ArenaListener createListener(LapisSpleef plugin) {
+        return new ArenaListener(plugin.getArenaManager());
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.fixtures;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import java.util.*;
+
+/**
+ * An online player that can be moved around a {@link FakeWorld}
+ * Messages, particles and sounds sent to the player are counted rather than delivered
+ */
+public class FakePlayer {
+
+    //The number of slots in a players inventory, including armour and the off hand
+    private static final int INVENTORY_SIZE = 41;
+
+    private final UUID uuid;
+    private final String name;
+    private final Player player;
+    private final PlayerInventory inventory;
+    private ItemStack[] contents = new ItemStack[INVENTORY_SIZE];
+    //The item held in the main hand, kept apart from the contents so filling the inventory doesn't change the tool
+    private ItemStack mainHand;
+    private final FakeWorld world;
+    private Location location;
+    private long messages;
+    private long effects;
+
+    /**
+     * Create a player standing at a location
+     *
+     * @param name     The name of the player
+     * @param world    The world the player is in
+     * @param location Where the player is standing
+     */
+    public FakePlayer(String name, FakeWorld world, Location location) {
+        this.uuid = UUID.nameUUIDFromBytes(("FakePlayer:" + name).getBytes());
+        this.name = name;
+        this.world = world;
+        this.location = location.clone();
+        Map<String, Stubs.Handler> inventoryHandlers = new HashMap<>();
+        inventoryHandlers.put("getContents", args -> contents.clone());
+        inventoryHandlers.put("getStorageContents", args -> Arrays.copyOf(contents, 36));
+        inventoryHandlers.put("getSize", args -> INVENTORY_SIZE);
+        inventoryHandlers.put("getItemInMainHand", args -> mainHand);
+        inventoryHandlers.put("setItemInMainHand", args -> {
+            mainHand = (ItemStack) args[0];
+            return null;
+        });
+        inventoryHandlers.put("setContents", args -> {
+            ItemStack[] items = (ItemStack[]) args[0];
+            contents = Arrays.copyOf(items == null ? new ItemStack[0] : items, INVENTORY_SIZE);
+            return null;
+        });
+        inventoryHandlers.put("clear", args -> {
+            contents = new ItemStack[INVENTORY_SIZE];
+            return null;
+        });
+        inventoryHandlers.put("addItem", args -> {
+            for (ItemStack item : (ItemStack[]) args[0]) {
+                for (int i = 0; i < 36; i++) {
+                    if (contents[i] == null) {
+                        contents[i] = item;
+                        break;
+                    }
+                }
+            }
+            return new HashMap<Integer, ItemStack>();
+        });
+        inventory = Stubs.stub(PlayerInventory.class, "FakeInventory{" + name + "}", inventoryHandlers);
+        Map<String, Stubs.Handler> handlers = new HashMap<>();
+        handlers.put("getUniqueId", args -> uuid);
+        handlers.put("getName", args -> name);
+        handlers.put("getDisplayName", args -> name);
+        handlers.put("isOnline", args -> true);
+        handlers.put("getWorld", args -> this.world.getWorld());
+        handlers.put("getLocation", args -> {
+            if (args == null || args.length == 0 || args[0] == null)
+                return this.location.clone();
+            //Fill in the given location like Entity#getLocation(Location)
+            Location out = (Location) args[0];
+            out.setWorld(this.location.getWorld());
+            out.setX(this.location.getX());
+            out.setY(this.location.getY());
+            out.setZ(this.location.getZ());
+            out.setYaw(this.location.getYaw());
+            out.setPitch(this.location.getPitch());
+            return out;
+        });
+        handlers.put("getInventory", args -> inventory);
+        handlers.put("teleport", args -> {
+            teleport((Location) args[0]);
+            return true;
+        });
+        handlers.put("sendMessage", args -> {
+            messages++;
+            return null;
+        });
+        handlers.put("sendTitle", args -> {
+            messages++;
+            return null;
+        });
+        handlers.put("spawnParticle", args -> {
+            effects++;
+            return null;
+        });
+        handlers.put("playSound", args -> {
+            effects++;
+            return null;
+        });
+        handlers.put("hasPermission", args -> true);
+        player = Stubs.stub(Player.class, "FakePlayer{" + name + "}", handlers);
+    }
+
+    /**
+     * Get the Bukkit player backed by this fake player
+     *
+     * @return the player stub
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Get the UUID of this player
+     *
+     * @return the players UUID
+     */
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    /**
+     * Get the name of this player
+     *
+     * @return the players name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get where the player is standing
+     *
+     * @return a copy of the players location
+     */
+    public Location getLocation() {
+        return location.clone();
+    }
+
+    /**
+     * Move the player without firing any events
+     *
+     * @param location The new location of the player
+     */
+    public void teleport(Location location) {
+        this.location = location.clone();
+    }
+
+    /**
+     * Fill the players inventory with a mix of stacked and single items, like a player who has been playing for a while
+     *
+     * @param slots The number of slots to fill, up to the size of the inventory
+     */
+    public void fillInventory(int slots) {
+        Material[] materials = {Material.DIAMOND_SWORD, Material.COBBLESTONE, Material.OAK_PLANKS, Material.BREAD,
+                Material.TORCH, Material.IRON_PICKAXE, Material.ARROW, Material.BOW, Material.SNOW_BLOCK};
+        for (int i = 0; i < Math.min(slots, INVENTORY_SIZE); i++) {
+            Material material = materials[i % materials.length];
+            contents[i] = new ItemStack(material, Math.min(material.getMaxStackSize(), 1 + i));
+        }
+    }
+
+    /**
+     * Get the number of chat messages and titles sent to this player
+     *
+     * @return the message count
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * Get the number of particles and sounds sent to this player
+     *
+     * @return the effect count
+     */
+    public long getEffects() {
+        return effects;
+    }
+
+}
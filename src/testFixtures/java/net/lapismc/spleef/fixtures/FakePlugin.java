@@ -0,0 +1,122 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.fixtures;
+
+import net.lapismc.lapiscore.LapisCoreConfiguration;
+import net.lapismc.lapiscore.LapisCoreTasks;
+import net.lapismc.spleef.LapisSpleef;
+import net.lapismc.spleef.PluginFixtures;
+import net.lapismc.spleef.metrics.MetricsRegistry;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Builds a working LapisSpleef instance on a {@link FakeServer}
+ * JavaPlugin can only be constructed by the server's plugin loader, so the plugin is allocated without running
+ * its constructor, the fields JavaPlugin and LapisCore would set are filled in, then the plugins own components are
+ * created by the same code as {@link LapisSpleef#onEnable()}
+ * The command isn't registered since there is no command map
+ */
+public final class FakePlugin {
+
+    private static final Objenesis OBJENESIS = new ObjenesisStd();
+
+    private FakePlugin() {
+    }
+
+    /**
+     * Create and enable the plugin with the default config
+     *
+     * @param dataFolder The folder for player data and stats
+     * @return the enabled plugin
+     */
+    public static LapisSpleef create(File dataFolder) {
+        return create(dataFolder, Map.of());
+    }
+
+    /**
+     * Create and enable the plugin
+     *
+     * @param dataFolder The folder for player data and stats
+     * @param overrides  Config values to use instead of the defaults, keyed by path
+     * @return the enabled plugin
+     */
+    public static LapisSpleef create(File dataFolder, Map<String, Object> overrides) {
+        LapisSpleef plugin = OBJENESIS.newInstance(LapisSpleef.class);
+        YamlConfiguration config = loadResource("config.yml");
+        overrides.forEach(config::set);
+        Stubs.setField(plugin, "newConfig", config);
+        Stubs.setField(plugin, "dataFolder", dataFolder);
+        Stubs.setField(plugin, "logger", Logger.getLogger("LapisSpleef"));
+        Stubs.setField(plugin, "description", new PluginDescriptionFile("LapisSpleef", "fake", LapisSpleef.class.getName()));
+        Stubs.setField(plugin, "metrics", new MetricsRegistry());
+        plugin.config = createMessages();
+        plugin.tasks = construct(LapisCoreTasks.class, plugin);
+        PluginFixtures.initComponents(plugin);
+        return plugin;
+    }
+
+    /**
+     * Build the message config from the plugins messages.yml without touching the data folder
+     * This relies on the field names of LapisCoreConfiguration, since its constructor writes files from the plugin jar
+     */
+    private static LapisCoreConfiguration createMessages() {
+        LapisCoreConfiguration messages = OBJENESIS.newInstance(LapisCoreConfiguration.class);
+        Stubs.setField(messages, "messages", loadResource("messages.yml"));
+        Stubs.setField(messages, "primaryColor", ChatColor.GOLD.toString());
+        Stubs.setField(messages, "secondaryColor", ChatColor.RED.toString());
+        return messages;
+    }
+
+    /**
+     * Construct a class with a no argument constructor or one that takes the plugin, or allocate it if there is neither
+     */
+    private static <T> T construct(Class<T> type, LapisSpleef plugin) {
+        for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+            Class<?>[] parameters = constructor.getParameterTypes();
+            try {
+                constructor.setAccessible(true);
+                if (parameters.length == 0)
+                    return type.cast(constructor.newInstance());
+                if (parameters.length == 1 && parameters[0].isInstance(plugin))
+                    return type.cast(constructor.newInstance(plugin));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to construct " + type.getName(), e);
+            }
+        }
+        return OBJENESIS.newInstance(type);
+    }
+
+    private static YamlConfiguration loadResource(String name) {
+        InputStream stream = LapisSpleef.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null)
+            throw new IllegalStateException(name + " is missing from the plugin resources");
+        return YamlConfiguration.loadConfiguration(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.fixtures;
+
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+
+/**
+ * A scheduler that only runs tasks when it is told to advance a tick
+ * Async tasks are run on the next tick as well, so that every run is deterministic
+ * Tasks can be scheduled from any thread, since plugin code schedules main thread work from its background threads
+ * The time spent in each tick is recorded so that callers can report tick times
+ */
+public class FakeScheduler {
+
+    private final BukkitScheduler scheduler;
+    private final PriorityQueue<ScheduledTask> tasks = new PriorityQueue<>(
+            Comparator.comparingLong((ScheduledTask task) -> task.nextRun).thenComparingLong(task -> task.id));
+    private long currentTick;
+    private int nextId = 1;
+    private long lastTickNanos;
+
+    /**
+     * Create a scheduler at tick 0
+     */
+    public FakeScheduler() {
+        Map<String, Stubs.Handler> handlers = new HashMap<>();
+        handlers.put("runTask", args -> schedule((Runnable) args[1], 0, -1));
+        handlers.put("runTaskAsynchronously", args -> schedule((Runnable) args[1], 0, -1));
+        handlers.put("runTaskLater", args -> schedule((Runnable) args[1], (long) args[2], -1));
+        handlers.put("runTaskLaterAsynchronously", args -> schedule((Runnable) args[1], (long) args[2], -1));
+        handlers.put("runTaskTimer", args -> schedule((Runnable) args[1], (long) args[2], (long) args[3]));
+        handlers.put("runTaskTimerAsynchronously", args -> schedule((Runnable) args[1], (long) args[2], (long) args[3]));
+        handlers.put("cancelTask", args -> {
+            synchronized (tasks) {
+                tasks.removeIf(task -> task.id == (int) args[0]);
+            }
+            return null;
+        });
+        handlers.put("cancelTasks", args -> {
+            synchronized (tasks) {
+                tasks.clear();
+            }
+            return null;
+        });
+        scheduler = Stubs.stub(BukkitScheduler.class, "FakeScheduler", handlers);
+    }
+
+    /**
+     * Get the Bukkit scheduler backed by this fake scheduler
+     *
+     * @return the scheduler stub
+     */
+    public BukkitScheduler getScheduler() {
+        return scheduler;
+    }
+
+    private BukkitTask schedule(Runnable runnable, long delay, long period) {
+        ScheduledTask task;
+        synchronized (tasks) {
+            task = new ScheduledTask(nextId++, runnable, currentTick + Math.max(1, delay), period);
+            tasks.add(task);
+        }
+        Map<String, Stubs.Handler> handlers = new HashMap<>();
+        handlers.put("getTaskId", args -> task.id);
+        handlers.put("isCancelled", args -> task.cancelled);
+        handlers.put("cancel", args -> {
+            synchronized (tasks) {
+                task.cancelled = true;
+                tasks.remove(task);
+            }
+            return null;
+        });
+        return Stubs.stub(BukkitTask.class, "FakeTask{" + task.id + "}", handlers);
+    }
+
+    /**
+     * Run every task that is due in the next tick
+     * Tasks scheduled for the next tick by a task in this tick wait until the following tick, like the real server
+     */
+    public void tick() {
+        long start = System.nanoTime();
+        synchronized (tasks) {
+            currentTick++;
+        }
+        while (true) {
+            ScheduledTask task;
+            synchronized (tasks) {
+                if (tasks.isEmpty() || tasks.peek().nextRun > currentTick)
+                    break;
+                task = tasks.poll();
+            }
+            task.runnable.run();
+            synchronized (tasks) {
+                if (task.period > 0 && !task.cancelled) {
+                    task.nextRun = currentTick + task.period;
+                    tasks.add(task);
+                }
+            }
+        }
+        lastTickNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Run a number of ticks
+     *
+     * @param ticks The number of ticks to run
+     */
+    public void tick(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            tick();
+        }
+    }
+
+    /**
+     * Get the number of ticks that have been run
+     *
+     * @return the current tick
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Get how long the most recent tick took to run its tasks
+     *
+     * @return the tick time in nanoseconds
+     */
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /**
+     * Get the number of tasks waiting to run
+     *
+     * @return the number of scheduled tasks
+     */
+    public int getPendingTasks() {
+        synchronized (tasks) {
+            return tasks.size();
+        }
+    }
+
+    private static class ScheduledTask {
+
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private long nextRun;
+        private boolean cancelled;
+
+        private ScheduledTask(int id, Runnable runnable, long nextRun, long period) {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextRun = nextRun;
+            this.period = period;
+        }
+
+    }
+
+}
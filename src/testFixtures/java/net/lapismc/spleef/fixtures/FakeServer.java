@@ -0,0 +1,241 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.fixtures;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.boss.BossBar;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.plugin.PluginManager;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * A server with no network or disk, installed as the Bukkit server so that plugin code can run outside Minecraft
+ * Bukkit only allows the server to be set once per JVM, so there is a single instance that is reset between runs
+ */
+public class FakeServer {
+
+    private static FakeServer instance;
+
+    private final Logger logger = Logger.getLogger("FakeServer");
+    private final Map<UUID, FakePlayer> players = new LinkedHashMap<>();
+    private final Map<String, FakeWorld> worlds = new LinkedHashMap<>();
+    private final List<RegisteredHandler> handlers = new ArrayList<>();
+    private FakeScheduler scheduler = new FakeScheduler();
+
+    private FakeServer() {
+        Map<String, Stubs.Handler> pluginManagerHandlers = new HashMap<>();
+        pluginManagerHandlers.put("registerEvents", args -> {
+            registerEvents((Listener) args[0]);
+            return null;
+        });
+        pluginManagerHandlers.put("callEvent", args -> {
+            callEvent((Event) args[0]);
+            return null;
+        });
+        PluginManager pluginManager = Stubs.stub(PluginManager.class, "FakePluginManager", pluginManagerHandlers);
+        Map<String, Stubs.Handler> serverHandlers = new HashMap<>();
+        serverHandlers.put("getName", args -> "FakeServer");
+        serverHandlers.put("getVersion", args -> "fake");
+        serverHandlers.put("getBukkitVersion", args -> "1.20.2-R0.1-SNAPSHOT");
+        serverHandlers.put("getLogger", args -> logger);
+        serverHandlers.put("isPrimaryThread", args -> true);
+        serverHandlers.put("getScheduler", args -> scheduler.getScheduler());
+        serverHandlers.put("getPluginManager", args -> pluginManager);
+        serverHandlers.put("getOnlinePlayers", args -> {
+            List<Player> online = new ArrayList<>();
+            for (FakePlayer player : players.values())
+                online.add(player.getPlayer());
+            return online;
+        });
+        serverHandlers.put("getPlayer", args -> {
+            FakePlayer player = args[0] instanceof UUID ? players.get(args[0]) : getPlayerByName((String) args[0]);
+            return player == null ? null : player.getPlayer();
+        });
+        serverHandlers.put("getPlayerExact", args -> {
+            FakePlayer player = getPlayerByName((String) args[0]);
+            return player == null ? null : player.getPlayer();
+        });
+        serverHandlers.put("getWorld", args -> {
+            FakeWorld world = args[0] instanceof String ? worlds.get(args[0]) : null;
+            return world == null ? null : world.getWorld();
+        });
+        serverHandlers.put("getWorlds", args -> {
+            List<World> list = new ArrayList<>();
+            for (FakeWorld world : worlds.values())
+                list.add(world.getWorld());
+            return list;
+        });
+        serverHandlers.put("createBossBar", args -> Stubs.stub(BossBar.class, "FakeBossBar", new HashMap<>()));
+        //ItemStack asks the item factory whether an item has meta, items made outside a real server never do
+        ItemFactory[] itemFactory = new ItemFactory[1];
+        Map<String, Stubs.Handler> itemFactoryHandlers = new HashMap<>();
+        itemFactoryHandlers.put("equals", args -> args.length == 2 ? args[0] == args[1] : itemFactory[0] == args[0]);
+        itemFactory[0] = Stubs.stub(ItemFactory.class, "FakeItemFactory", itemFactoryHandlers);
+        serverHandlers.put("getItemFactory", args -> itemFactory[0]);
+        Bukkit.setServer(Stubs.stub(Server.class, "FakeServer", serverHandlers));
+    }
+
+    /**
+     * Get the fake server, installing it as the Bukkit server the first time this is called
+     * The server is reset every time it is returned, so each caller starts with no players, worlds or tasks
+     *
+     * @return the fake server
+     */
+    public static synchronized FakeServer start() {
+        if (instance == null)
+            instance = new FakeServer();
+        instance.reset();
+        return instance;
+    }
+
+    private void reset() {
+        players.clear();
+        worlds.clear();
+        handlers.clear();
+        scheduler = new FakeScheduler();
+    }
+
+    /**
+     * Get the scheduler that runs the tasks of this server
+     *
+     * @return the fake scheduler
+     */
+    public FakeScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Create a world and add it to the server
+     *
+     * @param name The name of the world
+     * @return the new world
+     */
+    public FakeWorld createWorld(String name) {
+        FakeWorld world = new FakeWorld(name);
+        worlds.put(name, world);
+        return world;
+    }
+
+    /**
+     * Add an online player to the server, no join event is fired
+     *
+     * @param name     The name of the player
+     * @param world    The world the player is in
+     * @param location Where the player is standing
+     * @return the new player
+     */
+    public FakePlayer addPlayer(String name, FakeWorld world, Location location) {
+        FakePlayer player = new FakePlayer(name, world, location);
+        players.put(player.getUniqueId(), player);
+        world.addPlayer(player.getPlayer());
+        return player;
+    }
+
+    /**
+     * Remove a player from the server, no quit event is fired
+     *
+     * @param player The player who has left
+     */
+    public void removePlayer(FakePlayer player) {
+        players.remove(player.getUniqueId());
+        for (FakeWorld world : worlds.values())
+            world.removePlayer(player.getPlayer());
+    }
+
+    /**
+     * Get every online player
+     *
+     * @return the online players
+     */
+    public Collection<FakePlayer> getPlayers() {
+        return Collections.unmodifiableCollection(players.values());
+    }
+
+    private FakePlayer getPlayerByName(String name) {
+        for (FakePlayer player : players.values()) {
+            if (player.getName().equalsIgnoreCase(name))
+                return player;
+        }
+        return null;
+    }
+
+    /**
+     * Register the event handlers of a listener, this is called through the Bukkit plugin manager
+     *
+     * @param listener The listener to register
+     */
+    public void registerEvents(Listener listener) {
+        for (Method method : listener.getClass().getMethods()) {
+            EventHandler annotation = method.getAnnotation(EventHandler.class);
+            if (annotation == null || method.getParameterCount() != 1)
+                continue;
+            handlers.add(new RegisteredHandler(listener, method, annotation));
+        }
+        handlers.sort(Comparator.comparingInt(handler -> handler.annotation.priority().getSlot()));
+    }
+
+    /**
+     * Call an event on every registered handler that accepts it, in priority order
+     *
+     * @param event The event to call
+     * @param <T>   The type of event
+     * @return the event, so that callers can check if it was cancelled
+     */
+    public <T extends Event> T callEvent(T event) {
+        for (RegisteredHandler handler : handlers) {
+            if (!handler.method.getParameterTypes()[0].isInstance(event))
+                continue;
+            if (handler.annotation.ignoreCancelled() && event instanceof Cancellable && ((Cancellable) event).isCancelled())
+                continue;
+            try {
+                handler.method.invoke(handler.listener, event);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Handler " + handler.method + " threw an exception", e.getCause());
+            }
+        }
+        return event;
+    }
+
+    private static class RegisteredHandler {
+
+        private final Listener listener;
+        private final Method method;
+        private final EventHandler annotation;
+
+        private RegisteredHandler(Listener listener, Method method, EventHandler annotation) {
+            this.listener = listener;
+            this.method = method;
+            this.annotation = annotation;
+        }
+
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.fixtures;
+
+import net.lapismc.spleef.util.BlockPositionSet;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+/**
+ * An in-memory world, block types are kept in a map and every other block is air
+ * Blocks handed out by the world read and write that map, and block changes are counted so callers can measure them
+ */
+public class FakeWorld {
+
+    private final String name;
+    private final UUID uuid = UUID.randomUUID();
+    private final Map<Long, Material> types = new HashMap<>();
+    private final List<Player> players = new ArrayList<>();
+    private final World world;
+    private long blockChanges;
+
+    /**
+     * Create an empty world
+     *
+     * @param name The name of the world
+     */
+    public FakeWorld(String name) {
+        this.name = name;
+        Map<String, Stubs.Handler> handlers = new HashMap<>();
+        handlers.put("getName", args -> name);
+        handlers.put("getUID", args -> uuid);
+        handlers.put("getMinHeight", args -> -64);
+        handlers.put("getMaxHeight", args -> 320);
+        handlers.put("getPlayers", args -> new ArrayList<>(players));
+        handlers.put("getBlockAt", args -> {
+            if (args.length == 1) {
+                Location location = (Location) args[0];
+                return getBlock(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+            }
+            return getBlock((int) args[0], (int) args[1], (int) args[2]);
+        });
+        world = Stubs.stub(World.class, "FakeWorld{" + name + "}", handlers);
+    }
+
+    /**
+     * Get the Bukkit world backed by this fake world
+     *
+     * @return the world stub
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Get the block at a position, a new block object is created for each call like the real server does
+     *
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @param z The Z coordinate
+     * @return the block stub
+     */
+    public Block getBlock(int x, int y, int z) {
+        long key = BlockPositionSet.pack(x, y, z);
+        Map<String, Stubs.Handler> handlers = new HashMap<>();
+        handlers.put("getX", args -> x);
+        handlers.put("getY", args -> y);
+        handlers.put("getZ", args -> z);
+        handlers.put("getWorld", args -> world);
+        handlers.put("getLocation", args -> new Location(world, x, y, z));
+        handlers.put("getType", args -> getType(x, y, z));
+        handlers.put("isEmpty", args -> getType(x, y, z) == Material.AIR);
+        handlers.put("setType", args -> {
+            setType(key, (Material) args[0]);
+            return null;
+        });
+        return Stubs.stub(Block.class, "FakeBlock{" + x + "," + y + "," + z + "}", handlers);
+    }
+
+    /**
+     * Get the type of the block at a position
+     *
+     * @param x The X coordinate
+     * @param y The Y coordinate
+     * @param z The Z coordinate
+     * @return the block type, air if it has never been set
+     */
+    public Material getType(int x, int y, int z) {
+        return types.getOrDefault(BlockPositionSet.pack(x, y, z), Material.AIR);
+    }
+
+    /**
+     * Set the type of the block at a position
+     *
+     * @param x    The X coordinate
+     * @param y    The Y coordinate
+     * @param z    The Z coordinate
+     * @param type The new block type
+     */
+    public void setType(int x, int y, int z, Material type) {
+        setType(BlockPositionSet.pack(x, y, z), type);
+    }
+
+    private void setType(long key, Material type) {
+        blockChanges++;
+        if (type == Material.AIR)
+            types.remove(key);
+        else
+            types.put(key, type);
+    }
+
+    /**
+     * Fill a horizontal square of blocks, this is how benchmarks and simulations build floors
+     *
+     * @param centerX The X coordinate of the centre of the square
+     * @param y       The Y coordinate of the square
+     * @param centerZ The Z coordinate of the centre of the square
+     * @param size    The number of blocks in the square, rounded up to a whole square
+     * @param type    The block type to fill with
+     * @return the packed positions of the blocks that were filled, in row order
+     */
+    public long[] fillSquare(int centerX, int y, int centerZ, int size, Material type) {
+        int side = (int) Math.ceil(Math.sqrt(size));
+        long[] positions = new long[side * side];
+        int i = 0;
+        for (int dx = 0; dx < side; dx++) {
+            for (int dz = 0; dz < side; dz++) {
+                int x = centerX - side / 2 + dx;
+                int z = centerZ - side / 2 + dz;
+                setType(x, y, z, type);
+                positions[i++] = BlockPositionSet.pack(x, y, z);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Get the number of times a block type has been changed in this world
+     *
+     * @return the number of block changes
+     */
+    public long getBlockChanges() {
+        return blockChanges;
+    }
+
+    /**
+     * Add a player to the list of players in this world
+     *
+     * @param player The player that is now in this world
+     */
+    void addPlayer(Player player) {
+        players.add(player);
+    }
+
+    /**
+     * Remove a player from the list of players in this world
+     *
+     * @param player The player that has left this world
+     */
+    void removePlayer(Player player) {
+        players.remove(player);
+    }
+
+    /**
+     * Get the name of this world
+     *
+     * @return the world name
+     */
+    public String getName() {
+        return name;
+    }
+
+}
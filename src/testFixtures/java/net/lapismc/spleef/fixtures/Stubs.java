@@ -0,0 +1,125 @@
+/*
+ *    Copyright 2023 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.spleef.fixtures;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Helpers for building stub implementations of Bukkit interfaces with {@link Proxy}
+ * Bukkit interfaces have hundreds of methods, stubs only answer the ones the plugin uses and return defaults for the rest
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * Create a stub of an interface
+     * Methods with a handler in the map call it, every other method returns null, 0 or false
+     * equals, hashCode and toString use the identity of the proxy
+     *
+     * @param type     The interface to implement
+     * @param name     The name returned by toString, useful when debugging
+     * @param handlers Handlers keyed by method name
+     * @param <T>      The interface type
+     * @return the stub
+     */
+    public static <T> T stub(Class<T> type, String name, Map<String, Handler> handlers) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Handler methodHandler = handlers.get(method.getName());
+            if (methodHandler != null)
+                return methodHandler.invoke(args == null ? new Object[0] : args);
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return name;
+                default:
+                    return defaultValue(method);
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (!returnType.isPrimitive() || returnType == void.class)
+            return null;
+        if (returnType == boolean.class)
+            return false;
+        if (returnType == char.class)
+            return '\0';
+        if (returnType == long.class)
+            return 0L;
+        if (returnType == float.class)
+            return 0f;
+        if (returnType == double.class)
+            return 0d;
+        if (returnType == int.class)
+            return 0;
+        if (returnType == short.class)
+            return (short) 0;
+        return (byte) 0;
+    }
+
+    /**
+     * Set a field by name, searching the class hierarchy of the target
+     * Used to wire up objects whose constructors can't run outside a real server
+     *
+     * @param target The object to modify
+     * @param name   The name of the field
+     * @param value  The new value
+     */
+    public static void setField(Object target, String name, Object value) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException ignored) {
+                //Check the superclass
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Failed to set " + name + " on " + target.getClass().getName(), e);
+            }
+        }
+        throw new IllegalArgumentException(target.getClass().getName() + " has no field named " + name);
+    }
+
+    /**
+     * A stubbed method
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * Handle a call to the method
+         *
+         * @param args The arguments passed to the method, never null
+         * @return the return value of the method
+         */
+        Object invoke(Object[] args);
+
+    }
+
+}